@@ -45,4 +45,22 @@ public class ChatModelRouter {
         // 未知模型，回退默认
         return defaultChatModel;
     }
+
+    /**
+     * 规范化模型 key：返回实际选中的模型对应的 key，未知或未配置的模型归为 default。
+     * 用作指标标签等需要有限取值的场合（用户传入的 key 不可直接使用）。
+     */
+    public String resolveKey(String key) {
+        ChatModel model = get(key);
+        if (model != null && model == kimiK2ChatModel) {
+            return "kimi-k2";
+        }
+        if (model != null && model == qwen3CoderPlusChatModel) {
+            return "qwen3-coder-plus";
+        }
+        if (model != null && model == deepseekChatModel) {
+            return "deepseek";
+        }
+        return "default";
+    }
 }
@@ -0,0 +1,38 @@
+package com.sumo.agent.config;
+
+import com.sumo.agent.rag.CachingVectorStore;
+import com.sumo.agent.rag.VectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * 向量存储检索缓存配置
+ * 用 {@link CachingVectorStore} 包装按 agent.rag.type 选中的存储实现，并设为主要的 VectorStore，
+ * 注入 VectorStore 的地方自动经过缓存；底层存储仍是独立的 Bean，其生命周期回调不受影响。
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "agent.rag.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class VectorStoreCacheConfig {
+
+    @Value("${agent.rag.cache.max-entries:1024}")
+    private int maxEntries;
+
+    @Value("${agent.rag.cache.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${agent.rag.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Bean
+    @Primary  // 设置为主要的VectorStore
+    public CachingVectorStore cachingVectorStore(VectorStore vectorStore) {
+        log.info("🗃️ 启用向量检索缓存: {} -> 最多 {} 条, {} 字节, TTL {}s",
+            vectorStore.getClass().getSimpleName(), maxEntries, maxBytes, ttlSeconds);
+        return new CachingVectorStore(vectorStore, maxEntries, maxBytes, ttlSeconds * 1000);
+    }
+}
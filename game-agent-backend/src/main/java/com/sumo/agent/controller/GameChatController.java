@@ -4,17 +4,27 @@
  */
 package com.sumo.agent.controller;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.sumo.agent.core.GameArtifact;
 import com.sumo.agent.core.GameGeneratorAgent;
+import com.sumo.agent.core.GenerationTimings;
+import com.sumo.agent.service.BatchGenerationService;
+import com.sumo.agent.template.HtmlContent;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -30,6 +40,9 @@ public class GameChatController {
     @Autowired
     private GameGeneratorAgent gameGeneratorAgent;
     
+    @Autowired
+    private BatchGenerationService batchGenerationService;
+    
     /**
      * 生成游戏
      */
@@ -55,48 +68,107 @@ public class GameChatController {
             
             if (result.success()) {
                 // 业务数据
-                response.setGameData(result.gameData());
+                GameArtifact artifact = result.artifact();
+                response.setGameData(artifact);
                 response.setConfig(result.config());
                 response.setAgentName(result.agentName());
 
-                // 提取Agent来源与模型名（用于前端卡片展示）
-                String agentSource = "system";
-                String modelName = null;
-                boolean generatedByLLM = false;
-
-                if (result.gameData() instanceof Map<?, ?> m) {
-                    Object genFlag = m.get("generatedByLLM");
-                    if (genFlag instanceof Boolean b) {
-                        generatedByLLM = b;
-                    } else {
-                        // 回退：从嵌套的 gameData.generated 识别（通用Agent）
-                        Object inner = m.get("gameData");
-                        if (inner instanceof Map<?, ?> innerMap) {
-                            Object g = innerMap.get("generated");
-                            generatedByLLM = Boolean.TRUE.equals(g);
-                        }
-                    }
-                    Object mn = m.get("modelName");
-                    if (mn instanceof String s && !s.isBlank()) {
-                        modelName = s;
-                    }
-                }
-
-                agentSource = generatedByLLM ? "llm" : "system";
-
-                response.setGeneratedByLLM(generatedByLLM);
-                response.setAgentSource(agentSource);
-                response.setModelName(modelName);
+                // Agent来源与模型名（用于前端卡片展示）
+                response.setGeneratedByLLM(artifact.generatedByLLM());
+                response.setAgentSource(artifact.generatedByLLM() ? "llm" : "system");
+                response.setModelName(artifact.modelName());
                 response.setMessage("游戏生成成功！");
             } else {
                 response.setError(result.error());
                 response.setMessage("游戏生成失败: " + result.error());
             }
+            if (GenerationTimings.isRequested(request.getOptions())) {
+                response.setTimings(result.timings());
+            }
             
             return response;
         });
     }
     
+    /**
+     * 生成游戏并直接返回页面（text/html）
+     * 页面直接写入响应输出流（Servlet 异步写出），不经过JSON字符串转义和整页拷贝；游戏类型与种子放在响应头中
+     */
+    @PostMapping(value = "/generate/html", produces = MediaType.TEXT_HTML_VALUE)
+    public Mono<ResponseEntity<StreamingResponseBody>> generateGameHtml(@RequestBody GameRequest request) {
+        log.info("📨 收到游戏页面生成请求: {}", request.getUserInput());
+        
+        String sessionId = request.getSessionId() != null ? request.getSessionId() : UUID.randomUUID().toString();
+        
+        return Mono.fromCallable(() -> {
+            GameGeneratorAgent.GameGenerationResult result =
+                gameGeneratorAgent.generateGame(request.getUserInput(), sessionId, request.getOptions());
+            
+            if (!result.success()) {
+                byte[] error = String.valueOf(result.error()).getBytes(StandardCharsets.UTF_8);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                    .body(out -> out.write(error));
+            }
+            
+            GameArtifact artifact = result.artifact();
+            HtmlContent html = artifact.html();
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                .contentLength(artifact.contentLength())
+                .eTag("\"" + artifact.contentHash() + "\"")
+                .header("X-Session-Id", sessionId)
+                .header("X-Game-Type", artifact.type())
+                .header("X-Game-Source", artifact.source().name().toLowerCase());
+            if (artifact.seed() != null) {
+                response.header("X-Game-Seed", artifact.seed().toString());
+            }
+            if (GenerationTimings.isRequested(request.getOptions()) && result.timings() != null) {
+                response.header("Server-Timing", serverTiming(result.timings()));
+            }
+            
+            StreamingResponseBody body = html::writeTo;
+            return response.body(body);
+        });
+    }
+    
+    /**
+     * 分阶段耗时转为 Server-Timing 响应头，浏览器开发者工具可直接展示
+     */
+    private static String serverTiming(Map<String, Double> timings) {
+        StringBuilder header = new StringBuilder();
+        timings.forEach((stage, millis) -> {
+            if (!header.isEmpty()) {
+                header.append(", ");
+            }
+            header.append(stage).append(";dur=").append(millis);
+        });
+        return header.toString();
+    }
+    
+    /**
+     * 批量生成游戏
+     * 按 Agent/模型 分组并行执行，每完成一个游戏推送一个 item 事件，最后推送 completed 汇总；
+     * 支持 NDJSON（application/x-ndjson）与 SSE（text/event-stream）
+     */
+    @PostMapping(value = "/generate/batch",
+                 produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<BatchGenerationService.BatchEvent> generateBatch(@RequestBody BatchRequest request) {
+        int size = request.getUserInputs() != null ? request.getUserInputs().size() : 0;
+        log.info("📨 收到批量游戏生成请求: {} 个, 保存: {}", size, request.isSave());
+        
+        String sessionId = request.getSessionId() != null ? request.getSessionId() : UUID.randomUUID().toString();
+        
+        return Flux.defer(() -> batchGenerationService.generate(
+                request.getUserInputs(), sessionId, request.getOptions(), request.isSave()))
+            .onErrorResume(IllegalArgumentException.class, e -> {
+                BatchGenerationService.BatchEvent event = new BatchGenerationService.BatchEvent();
+                event.setType("error");
+                event.setError(e.getMessage());
+                return Flux.just(event);
+            });
+    }
+    
     /**
      * SSE流式生成游戏
      */
@@ -171,6 +243,17 @@ public class GameChatController {
         private Map<String, Object> options;
     }
     
+    /**
+     * 批量生成请求
+     */
+    @Data
+    public static class BatchRequest {
+        private List<String> userInputs;
+        private String sessionId;
+        private Map<String, Object> options;
+        private boolean save;   // 是否在全部完成后保存成功的游戏
+    }
+    
     /**
      * 游戏生成响应
      */
@@ -186,6 +269,8 @@ public class GameChatController {
         private String modelName;     // 若为llm，包含模型名
         private Boolean generatedByLLM;
         private String error;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Map<String, Double> timings;   // 分阶段耗时（毫秒），options.timings=true 时返回
     }
     
     /**
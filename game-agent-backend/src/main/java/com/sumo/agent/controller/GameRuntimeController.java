@@ -0,0 +1,62 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.controller;
+
+import com.sumo.agent.template.GameRuntimeAssets;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+
+/**
+ * 游戏运行时资源控制器
+ * 提供内置游戏共享的 CSS/JS，地址中带内容版本号：
+ * - 版本号与当前内容一致：返回一年的不可变缓存
+ * - 版本号已过期（资源更新后打开旧的已保存游戏）：返回当前内容但不缓存，保证旧页面仍能运行
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/game/runtime")
+@CrossOrigin(origins = "*")
+public class GameRuntimeController {
+
+    @Autowired
+    private GameRuntimeAssets runtimeAssets;
+
+    @GetMapping("/{version}/{name:.+}")
+    public ResponseEntity<byte[]> getAsset(@PathVariable String version,
+                                           @PathVariable String name,
+                                           @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        GameRuntimeAssets.Asset asset = runtimeAssets.get(name);
+        if (asset == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        String etag = "\"" + asset.version() + "\"";
+        if (!asset.version().equals(version)) {
+            log.debug("运行时资源版本已过期: {} {} -> {}", name, version, asset.version());
+            return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .contentType(MediaType.parseMediaType(asset.contentType()))
+                .body(asset.content());
+        }
+
+        CacheControl immutable = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(immutable).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+            .cacheControl(immutable)
+            .eTag(etag)
+            .contentType(MediaType.parseMediaType(asset.contentType()))
+            .body(asset.content());
+    }
+}
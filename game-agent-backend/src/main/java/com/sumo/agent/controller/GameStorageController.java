@@ -82,6 +82,7 @@ public class GameStorageController {
                 gameMap.put("theme", game.getTheme());
                 gameMap.put("fileName", game.getFileName());
                 gameMap.put("fileSize", game.getFileSize());
+                gameMap.put("seed", game.getSeed());
                 // 将LocalDateTime转换为字符串
                 if (game.getCreatedAt() != null) {
                     gameMap.put("createdAt", game.getCreatedAt().toString());
@@ -0,0 +1,56 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.controller;
+
+import com.sumo.agent.template.StaticGameRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 预置静态游戏控制器
+ * 直接返回内存中的页面字节，客户端支持时返回启动时预先压缩好的 gzip 版本。
+ * 文件可能被热更新，因此使用 no-cache + ETag 协商缓存。
+ */
+@RestController
+@RequestMapping("/api/game/static")
+@CrossOrigin(origins = "*")
+public class StaticGameController {
+
+    @Autowired
+    private StaticGameRegistry staticGames;
+
+    @GetMapping("/{name}")
+    public ResponseEntity<byte[]> getGame(@PathVariable String name,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        StaticGameRegistry.StaticGame game = staticGames.find(name);
+        if (game == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        String etag = "\"" + game.version() + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(CacheControl.noCache()).eTag(etag).build();
+        }
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .eTag(etag)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8));
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(game.gzipped());
+        }
+        return response.body(game.content());
+    }
+}
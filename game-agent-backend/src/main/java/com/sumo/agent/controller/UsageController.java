@@ -0,0 +1,67 @@
+package com.sumo.agent.controller;
+
+import com.sumo.agent.prompt.PromptRegistry;
+import com.sumo.agent.service.TokenUsageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 大模型用量控制器
+ * 查询 token 用量（累计/当日/按模型/按会话）、预算配置与各提示词模板的固定 token 开销
+ */
+@RestController
+@RequestMapping("/api/usage")
+@CrossOrigin(origins = "*")
+public class UsageController {
+
+    @Autowired
+    private TokenUsageService tokenUsageService;
+
+    @Autowired
+    private PromptRegistry promptRegistry;
+
+    /**
+     * 用量汇总
+     */
+    @GetMapping
+    public ResponseEntity<?> getSummary() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", tokenUsageService.getSummary());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 单个会话的用量与剩余预算
+     */
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<?> getSessionUsage(@PathVariable String sessionId) {
+        Map<String, Object> usage = tokenUsageService.getSessionUsage(sessionId);
+
+        Map<String, Object> response = new HashMap<>();
+        if (usage == null) {
+            response.put("success", false);
+            response.put("error", "会话没有用量记录");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        response.put("success", true);
+        response.put("data", usage);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 提示词模板：各版本静态部分的 token 数、使用次数与 A/B 配置
+     */
+    @GetMapping("/prompts")
+    public ResponseEntity<?> getPromptStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", promptRegistry.getStats());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -7,6 +7,7 @@ package com.sumo.agent.core;
 import lombok.Data;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Agent执行上下文
@@ -15,6 +16,16 @@ import java.util.Map;
 @Data
 public class AgentContext {
     
+    /**
+     * 随机种子属性（options.seed），可复现的Agent用相同的 (配置, 种子) 生成相同的游戏
+     */
+    public static final String ATTR_SEED = "seed";
+    
+    /**
+     * 种子上限 2^53，保证前端 JSON 数字能精确往返
+     */
+    private static final long SEED_BOUND = 1L << 53;
+    
     /**
      * 会话ID
      */
@@ -28,7 +39,7 @@ public class AgentContext {
     /**
      * Agent执行结果
      */
-    private Object result;
+    private GameArtifact result;
     
     /**
      * 是否执行成功
@@ -41,10 +52,15 @@ public class AgentContext {
     private String error;
     
     /**
-     * 开始时间
+     * 开始时间（System.nanoTime）
      */
     private long startTime;
     
+    /**
+     * 分阶段耗时
+     */
+    private GenerationTimings timings = new GenerationTimings();
+    
     /**
      * 扩展参数
      */
@@ -76,4 +92,31 @@ public class AgentContext {
     public boolean hasAttribute(String key) {
         return attributes.containsKey(key);
     }
+    
+    /**
+     * 获取随机种子，支持数字或数字字符串，未指定时返回 null
+     *
+     * @throws IllegalArgumentException 种子不是整数
+     */
+    public Long getSeed() {
+        Object value = attributes.get(ATTR_SEED);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的随机种子: " + value);
+        }
+    }
+    
+    /**
+     * 生成新的随机种子
+     */
+    public static long newSeed() {
+        return ThreadLocalRandom.current().nextLong(SEED_BOUND);
+    }
 }
\ No newline at end of file
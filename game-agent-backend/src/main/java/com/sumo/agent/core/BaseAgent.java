@@ -44,6 +44,38 @@ public abstract class BaseAgent {
         return AgentPriority.MEDIUM;
     }
     
+    /**
+     * 是否需要知识库上下文
+     * 返回true时，主Agent会在执行前组装RAG知识并放入上下文属性 ragContext
+     * 
+     * @return 默认不需要
+     */
+    public boolean requiresKnowledgeContext() {
+        return false;
+    }
+    
+    /**
+     * 是否可按种子复现
+     * 返回true时，相同的 (GameConfig, 种子) 必定生成相同的游戏，
+     * 结果中带 seed，保存时可以只存配置与种子，读取时重新渲染
+     * 
+     * @return 默认不可复现
+     */
+    public boolean isReproducible() {
+        return false;
+    }
+    
+    /**
+     * 可复现游戏的渲染版本（默认运行时模式）
+     * 模板、运行时资源或按种子生成内容的逻辑变化时必须随之变化，
+     * 只保存种子的游戏据此判断重新渲染的结果是否还与保存时一致
+     * 
+     * @return 默认 null，表示无法判断，保存时保留HTML
+     */
+    public String getRenderVersion() {
+        return null;
+    }
+    
     /**
      * Agent前置处理
      * 
@@ -51,7 +83,7 @@ public abstract class BaseAgent {
      */
     protected void preHandle(AgentContext context) {
         log.info("🚀 开始执行Agent: {}", getName());
-        context.setStartTime(System.currentTimeMillis());
+        context.setStartTime(System.nanoTime());
     }
     
     /**
@@ -60,20 +92,25 @@ public abstract class BaseAgent {
      * @param context 执行上下文
      */
     protected void postHandle(AgentContext context) {
-        long duration = System.currentTimeMillis() - context.getStartTime();
+        long duration = (System.nanoTime() - context.getStartTime()) / 1_000_000;
         log.info("✅ Agent执行完成: {}, 耗时: {}ms", getName(), duration);
     }
     
     /**
      * 模板方法，定义执行流程
+     * 整个执行过程记为 agent 阶段，子类可在 execute 中用 context.getTimings() 记录更细的阶段
      * 
      * @param context 执行上下文
      */
     public final void run(AgentContext context) {
+        GenerationTimings timings = context.getTimings();
+        timings.setAgent(this);
         try {
-            preHandle(context);
-            execute(context);
-            postHandle(context);
+            timings.record(GenerationTimings.STAGE_AGENT, () -> {
+                preHandle(context);
+                execute(context);
+                postHandle(context);
+            });
         } catch (Exception e) {
             handleError(context, e);
         }
@@ -0,0 +1,140 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.sumo.agent.template.HtmlContent;
+import lombok.Builder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * 游戏生成产物
+ * 所有Agent统一返回该结果：页面内容 + 来源信息 + Agent特有的游戏数据。
+ * 字节数与内容哈希在创建时计算一次，缓存、存储去重、流式输出直接使用，不必再检查页面内容。
+ *
+ * @param html 页面内容
+ * @param contentLength 页面 UTF-8 字节数（自动计算）
+ * @param contentHash 页面 SHA-256（十六进制）；已知时传入以跳过计算（如预置静态游戏）
+ * @param type 游戏类型标识，如 math / memory / universal / traffic_safety
+ * @param source 页面来源
+ * @param modelName 大模型生成时的模型名
+ * @param seed 可复现游戏的随机种子
+ * @param config 可复现游戏的配置，与 seed 一起可重新生成同一页面
+ * @param runtime 运行时资源模式（inline / external），非模板页面为 null
+ * @param gameData Agent特有的游戏数据（题目、标题等）
+ * @param extras 其他附加字段，序列化时平铺输出
+ */
+@Builder
+@JsonSerialize(using = GameArtifact.Serializer.class)
+public record GameArtifact(
+    HtmlContent html,
+    long contentLength,
+    String contentHash,
+    String type,
+    Source source,
+    String modelName,
+    Long seed,
+    GameConfig config,
+    String runtime,
+    Object gameData,
+    Map<String, Object> extras
+) {
+
+    /**
+     * 页面来源
+     */
+    public enum Source {
+        /** 内置模板渲染 */
+        TEMPLATE,
+        /** 预置静态页面 */
+        STATIC,
+        /** 大模型实时生成 */
+        LLM
+    }
+
+    public GameArtifact {
+        if (html == null || source == null) {
+            throw new IllegalArgumentException("GameArtifact 缺少 html 或 source");
+        }
+        contentLength = html.contentLength();
+        if (contentHash == null) {
+            contentHash = sha256(html);
+        }
+    }
+
+    public boolean generatedByLLM() {
+        return source == Source.LLM;
+    }
+
+    private static String sha256(HtmlContent html) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+                html.writeTo(out);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 按固定字段顺序输出，页面内容流式转义；字段与旧的 Map 结果保持一致，前端无需修改
+     */
+    static class Serializer extends StdSerializer<GameArtifact> {
+
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(GameArtifact.class);
+        }
+
+        @Override
+        public void serialize(GameArtifact artifact, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName("html");
+            provider.defaultSerializeValue(artifact.html(), gen);
+            gen.writeStringField("type", artifact.type());
+            gen.writeStringField("source", artifact.source().name().toLowerCase());
+            gen.writeBooleanField("generatedByLLM", artifact.generatedByLLM());
+            if (artifact.modelName() != null) {
+                gen.writeStringField("modelName", artifact.modelName());
+            }
+            if (artifact.seed() != null) {
+                gen.writeNumberField("seed", artifact.seed());
+            }
+            if (artifact.config() != null) {
+                provider.defaultSerializeField("config", artifact.config(), gen);
+            }
+            if (artifact.runtime() != null) {
+                gen.writeStringField("runtime", artifact.runtime());
+            }
+            if (artifact.gameData() != null) {
+                provider.defaultSerializeField("gameData", artifact.gameData(), gen);
+            }
+            gen.writeNumberField("contentLength", artifact.contentLength());
+            gen.writeStringField("contentHash", artifact.contentHash());
+            if (artifact.extras() != null) {
+                for (Map.Entry<String, Object> entry : artifact.extras().entrySet()) {
+                    provider.defaultSerializeField(entry.getKey(), entry.getValue(), gen);
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+}
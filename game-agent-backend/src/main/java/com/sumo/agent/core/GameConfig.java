@@ -4,14 +4,18 @@
  */
 package com.sumo.agent.core;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * 游戏配置类
  */
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class GameConfig {
     
     /**
@@ -5,6 +5,9 @@
 package com.sumo.agent.core;
 
 import com.sumo.agent.analyzer.IntentAnalyzer;
+import com.sumo.agent.metrics.GameMetrics;
+import com.sumo.agent.rag.KnowledgeContextAssembler;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -24,6 +27,15 @@ public class GameGeneratorAgent {
     @Autowired
     private IntentAnalyzer intentAnalyzer;
     
+    @Autowired(required = false)
+    private KnowledgeContextAssembler knowledgeContextAssembler;
+    
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry;
+    
+    @Autowired(required = false)
+    private GameMetrics gameMetrics;
+    
     /**
      * 注册的子Agent
      */
@@ -43,48 +55,148 @@ public class GameGeneratorAgent {
     public GameGenerationResult generateGame(String userInput, String sessionId, Map<String, Object> options) {
         log.info("🎮 开始生成游戏，用户输入: {}", userInput);
         
+        try {
+            return execute(plan(userInput, sessionId, options));
+        } catch (Exception e) {
+            log.error("❌ 游戏生成失败", e);
+            return GameGenerationResult.failure(e.getMessage());
+        }
+    }
+    
+    /**
+     * 生成计划：完成意图分析、配置构建与Agent选择，但不执行Agent
+     * 批量生成时先为所有请求制定计划，再按 Agent/模型 分组调度执行
+     *
+     * @throws IllegalStateException 未找到合适的Agent
+     */
+    public GenerationPlan plan(String userInput, String sessionId, Map<String, Object> options) {
         // 创建上下文
         AgentContext context = new AgentContext();
         context.setSessionId(sessionId);
         context.setUserInput(userInput);
+        context.setTimings(new GenerationTimings(observationRegistry));
+        if (options != null) {
+            options.forEach(context::setAttribute);
+        }
+        
+        // 1. 分析用户意图
+        GameIntent intent = context.getTimings().record(GenerationTimings.STAGE_INTENT,
+            () -> intentAnalyzer.analyze(userInput));
+        log.info("🔍 识别意图: {}", intent);
+        
+        // 2. 构建游戏配置
+        GameConfig config = buildGameConfig(intent);
+        context.setGameConfig(config);
+        
+        // 3. 选择合适的Agent
+        BaseAgent selectedAgent = selectAgent(config.getGameType());
+        if (selectedAgent == null) {
+            throw new IllegalStateException("未找到合适的游戏生成Agent");
+        }
+        
+        context.getTimings().setAgent(selectedAgent);
+        log.info("👉 选择Agent: {}", selectedAgent.getName());
+        return new GenerationPlan(context, selectedAgent);
+    }
+    
+    /**
+     * 执行生成计划
+     */
+    public GameGenerationResult execute(GenerationPlan plan) {
+        AgentContext context = plan.context();
+        BaseAgent selectedAgent = plan.agent();
+        
+        // 4. 组装知识上下文（仅对需要的Agent）
+        assembleKnowledgeContext(context, selectedAgent);
+        
+        // 5. 执行Agent
+        selectedAgent.run(context);
+        
+        // 6. 返回结果
+        Map<String, Double> timings = context.getTimings().toMillis();
+        log.info("⏱️ 生成阶段耗时(ms): {}", timings);
+        if (gameMetrics != null) {
+            GameArtifact artifact = context.getResult();
+            gameMetrics.recordGeneration(selectedAgent.getClass().getSimpleName(),
+                artifact != null ? artifact.type() : null,
+                artifact != null ? artifact.source().name().toLowerCase() : null,
+                context.isSuccess());
+        }
+        if (context.isSuccess()) {
+            return GameGenerationResult.success(
+                requireResult(context, selectedAgent),
+                context.getGameConfig(),
+                selectedAgent.getName()
+            ).withTimings(timings);
+        } else {
+            return GameGenerationResult.failure(context.getError()).withTimings(timings);
+        }
+    }
+    
+    /**
+     * 按配置与种子重新生成游戏，用于只保存了 (配置, 种子) 的游戏
+     * 跳过意图分析，只支持可复现的Agent（{@link BaseAgent#isReproducible()}）
+     */
+    public GameGenerationResult replay(GameConfig config, long seed, Map<String, Object> options) {
+        BaseAgent agent = config.getGameType() != null ? selectAgent(config.getGameType()) : null;
+        if (agent == null || !agent.isReproducible()) {
+            return GameGenerationResult.failure("该游戏类型不支持按种子复现: " + config.getGameType());
+        }
+        
+        AgentContext context = new AgentContext();
         if (options != null) {
             options.forEach(context::setAttribute);
         }
+        context.setAttribute(AgentContext.ATTR_SEED, seed);
+        context.setGameConfig(config);
         
+        agent.run(context);
+        if (!context.isSuccess()) {
+            return GameGenerationResult.failure(context.getError());
+        }
+        return GameGenerationResult.success(requireResult(context, agent), config, agent.getName());
+    }
+    
+    private static GameArtifact requireResult(AgentContext context, BaseAgent agent) {
+        if (context.getResult() == null) {
+            throw new IllegalStateException("Agent未返回游戏产物: " + agent.getName());
+        }
+        return context.getResult();
+    }
+    
+    /**
+     * 是否可按种子复现该类型的游戏
+     */
+    public boolean isReproducible(GameConfig.GameType gameType) {
+        BaseAgent agent = gameType != null ? selectAgent(gameType) : null;
+        return agent != null && agent.isReproducible();
+    }
+    
+    /**
+     * 游戏类型当前的渲染版本（{@link BaseAgent#getRenderVersion()}），不可复现时为 null
+     */
+    public String renderVersion(GameConfig.GameType gameType) {
+        BaseAgent agent = gameType != null ? selectAgent(gameType) : null;
+        return agent != null && agent.isReproducible() ? agent.getRenderVersion() : null;
+    }
+    
+    /**
+     * 组装知识上下文
+     * 失败时仅记录日志，不影响游戏生成
+     */
+    private void assembleKnowledgeContext(AgentContext context, BaseAgent agent) {
+        if (knowledgeContextAssembler == null || !agent.requiresKnowledgeContext()) {
+            return;
+        }
         try {
-            // 1. 分析用户意图
-            GameIntent intent = intentAnalyzer.analyze(userInput);
-            log.info("🔍 识别意图: {}", intent);
-            
-            // 2. 构建游戏配置
-            GameConfig config = buildGameConfig(intent);
-            context.setGameConfig(config);
-            
-            // 3. 选择合适的Agent
-            BaseAgent selectedAgent = selectAgent(config.getGameType());
-            if (selectedAgent == null) {
-                throw new RuntimeException("未找到合适的游戏生成Agent");
-            }
-            
-            log.info("👉 选择Agent: {}", selectedAgent.getName());
-            
-            // 4. 执行Agent
-            selectedAgent.run(context);
-            
-            // 5. 返回结果
-            if (context.isSuccess()) {
-                return GameGenerationResult.success(
-                    context.getResult(),
-                    config,
-                    selectedAgent.getName()
-                );
-            } else {
-                return GameGenerationResult.failure(context.getError());
+            KnowledgeContextAssembler.AssembledContext knowledge = context.getTimings().record(
+                GenerationTimings.STAGE_RAG, () -> knowledgeContextAssembler.assemble(context.getGameConfig()));
+            if (!knowledge.text().isEmpty()) {
+                context.setAttribute("ragContext", knowledge.text());
             }
-            
+            context.setAttribute("ragPromptTokens", knowledge.tokens());
         } catch (Exception e) {
-            log.error("❌ 游戏生成失败", e);
-            return GameGenerationResult.failure(e.getMessage());
+            log.warn("知识上下文组装失败，跳过RAG: {}", e.getMessage());
         }
     }
     
@@ -170,22 +282,47 @@ public class GameGeneratorAgent {
         AgentPriority priority
     ) {}
     
+    /**
+     * 生成计划
+     */
+    public record GenerationPlan(AgentContext context, BaseAgent agent) {
+        
+        public GameConfig config() {
+            return context.getGameConfig();
+        }
+        
+        /**
+         * 调度通道：相同 Agent 与模型（options.model）的任务共享并发上限
+         */
+        public String lane() {
+            Object model = context.getAttribute("model");
+            return agent.getName() + "@" + (model != null ? model : "default");
+        }
+    }
+    
     /**
      * 游戏生成结果
+     *
+     * @param timings 分阶段耗时（毫秒），见 {@link GenerationTimings}
      */
     public record GameGenerationResult(
         boolean success,
-        Object gameData,
+        GameArtifact artifact,
         GameConfig config,
         String agentName,
-        String error
+        String error,
+        Map<String, Double> timings
     ) {
-        public static GameGenerationResult success(Object gameData, GameConfig config, String agentName) {
-            return new GameGenerationResult(true, gameData, config, agentName, null);
+        public static GameGenerationResult success(GameArtifact artifact, GameConfig config, String agentName) {
+            return new GameGenerationResult(true, artifact, config, agentName, null, null);
         }
         
         public static GameGenerationResult failure(String error) {
-            return new GameGenerationResult(false, null, null, null, error);
+            return new GameGenerationResult(false, null, null, null, error, null);
+        }
+        
+        public GameGenerationResult withTimings(Map<String, Double> timings) {
+            return new GameGenerationResult(success, artifact, config, agentName, error, timings);
         }
     }
     
@@ -0,0 +1,115 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.core;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 单次游戏生成的分阶段耗时
+ * 每个阶段（意图分析、RAG、提示词、模型调用、HTML清理等）用 System.nanoTime 计时，
+ * 同时作为 Micrometer Observation（game.generation.stage，标签 stage/agent）上报：
+ * 注册表配置了指标处理器时导出为计时器，配置了追踪时形成嵌套的 span，
+ * 模型调用阶段内 ChatModel 自身的观测会成为它的子 span。
+ *
+ * 阶段可以嵌套（如 agent 包含 prompt/model/cleanup），因此各阶段耗时之和不等于总耗时。
+ */
+public class GenerationTimings {
+
+    public static final String OBSERVATION_NAME = "game.generation.stage";
+
+    /**
+     * 请求选项：options.timings=true 时在响应中返回分阶段耗时
+     */
+    public static final String OPTION_TIMINGS = "timings";
+
+    public static final String STAGE_INTENT = "intent";
+    public static final String STAGE_RAG = "rag";
+    public static final String STAGE_AGENT = "agent";
+    public static final String STAGE_PROMPT = "prompt";
+    public static final String STAGE_MODEL = "model";
+    public static final String STAGE_CLEANUP = "cleanup";
+
+    private final ObservationRegistry registry;
+    private final long createdAt = System.nanoTime();
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private volatile String agent = "none";
+
+    /**
+     * 只计时、不上报（单独运行Agent、复现游戏时使用）
+     */
+    public GenerationTimings() {
+        this(null);
+    }
+
+    public GenerationTimings(ObservationRegistry registry) {
+        this.registry = registry != null ? registry : ObservationRegistry.NOOP;
+    }
+
+    /**
+     * 请求是否要求返回分阶段耗时
+     */
+    public static boolean isRequested(Map<String, Object> options) {
+        Object value = options != null ? options.get(OPTION_TIMINGS) : null;
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * 设置之后各阶段上报的 agent 标签
+     */
+    public void setAgent(BaseAgent agent) {
+        this.agent = agent.getClass().getSimpleName();
+    }
+
+    /**
+     * 执行并记录一个阶段，异常原样抛出（观测中标记为错误）
+     */
+    public <T> T record(String stage, Supplier<T> action) {
+        Observation observation = Observation.createNotStarted(OBSERVATION_NAME, registry)
+            .contextualName(stage)
+            .lowCardinalityKeyValue("stage", stage)
+            .lowCardinalityKeyValue("agent", agent);
+        long start = System.nanoTime();
+        try {
+            return observation.observe(action);
+        } finally {
+            add(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String stage, Runnable action) {
+        record(stage, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 各阶段耗时（毫秒，保留一位小数），按首次出现顺序；total 为从创建到现在的耗时
+     */
+    public synchronized Map<String, Double> toMillis() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        stages.forEach((stage, nanos) -> millis.put(stage, toMillis(nanos)));
+        millis.put("total", toMillis(System.nanoTime() - createdAt));
+        return millis;
+    }
+
+    private synchronized void add(String stage, long nanos) {
+        stages.merge(stage, nanos, Long::sum);
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+
+    @Override
+    public String toString() {
+        return toMillis().toString();
+    }
+}
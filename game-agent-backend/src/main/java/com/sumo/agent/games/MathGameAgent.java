@@ -7,12 +7,17 @@ package com.sumo.agent.games;
 import com.sumo.agent.core.AgentContext;
 import com.sumo.agent.core.AgentPriority;
 import com.sumo.agent.core.BaseAgent;
+import com.sumo.agent.core.GameArtifact;
 import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.template.GameRuntimeAssets;
+import com.sumo.agent.template.GameTemplateRenderer;
+import com.sumo.agent.template.HtmlContent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.thymeleaf.TemplateEngine;
-import org.thymeleaf.context.Context;
 
 import java.util.*;
 
@@ -23,28 +28,89 @@ import java.util.*;
 @Component("mathAgent")
 public class MathGameAgent extends BaseAgent {
     
+    private static final String TEMPLATE = "math-game";
+    
+    /**
+     * 按种子生成内容的逻辑版本，题目生成逻辑变化（同一种子结果不同）时递增
+     */
+    private static final int GENERATOR_VERSION = 1;
+    
+    /**
+     * 预热的数字范围，与 getMaxNumber 的取值一致
+     */
+    private static final int[] MAX_NUMBERS = {5, 10, 20, 100};
+    
     @Autowired
-    private TemplateEngine templateEngine;
+    private GameTemplateRenderer templateRenderer;
+    
+    @Value("${agent.game.pool.enabled:true}")
+    private boolean poolEnabled;
+    
+    @Value("${agent.game.pool.size:8}")
+    private int poolSize;
+    
+    /**
+     * 题目变体池，按 (数字范围, 难度) 预生成题目；标题等随请求变化的内容在渲染时填入
+     */
+    private VariantPool<VariantKey, MathVariant> variantPool;
+    
+    /**
+     * 变体键：决定题目随机内容的配置
+     */
+    record VariantKey(int maxNumber, GameConfig.DifficultyLevel difficulty) {}
+    
+    /**
+     * 题目变体，由种子完整决定
+     *
+     * @param questionsJson 预先序列化的题目JSON，渲染时直接填入模板
+     */
+    record MathVariant(long seed, List<MathQuestion> questions, String questionsJson) {}
+    
+    @PostConstruct
+    public void init() {
+        variantPool = new VariantPool<>("math", poolSize, this::generateVariant);
+        if (poolEnabled) {
+            List<VariantKey> keys = new ArrayList<>();
+            for (int maxNumber : MAX_NUMBERS) {
+                for (GameConfig.DifficultyLevel difficulty : GameConfig.DifficultyLevel.values()) {
+                    keys.add(new VariantKey(maxNumber, difficulty));
+                }
+            }
+            variantPool.prewarm(keys);
+            log.info("🎲 数学游戏变体池预热: {} 个配置 x {} 个变体", keys.size(), poolSize);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        variantPool.shutdown();
+    }
     
     @Override
     public void execute(AgentContext context) {
         GameConfig config = context.getGameConfig();
         log.info("🔢 生成数学游戏: {}", config.getTitle());
         
+        // 取出预生成的题目变体；指定 options.seed 时按种子生成，不经过变体池
+        MathVariant variant = takeVariant(config, context.getSeed());
+        
         // 生成游戏数据
-        MathGameData gameData = generateGameData(config);
+        MathGameData gameData = generateGameData(config, variant);
         
-        // 渲染HTML模板
-        String gameHtml = renderGameTemplate(gameData, config);
+        // 渲染HTML模板（options.runtime = inline | external）
+        GameRuntimeAssets.Mode runtime = templateRenderer.resolveMode(context.getAttribute("runtime"));
+        HtmlContent gameHtml = renderGameTemplate(gameData, variant.questionsJson(), runtime);
         
         // 设置结果
-        Map<String, Object> result = new HashMap<>();
-        result.put("html", gameHtml);
-        result.put("gameData", gameData);
-        result.put("type", "math");
-        result.put("generatedByLLM", false);
-        
-        context.setResult(result);
+        context.setResult(GameArtifact.builder()
+            .html(gameHtml)
+            .type("math")
+            .source(GameArtifact.Source.TEMPLATE)
+            .seed(variant.seed())
+            .config(config)
+            .runtime(runtime.name().toLowerCase())
+            .gameData(gameData)
+            .build());
         context.setSuccess(true);
     }
     
@@ -63,17 +129,56 @@ public class MathGameAgent extends BaseAgent {
         return AgentPriority.HIGH;
     }
     
+    @Override
+    public boolean isReproducible() {
+        return true;
+    }
+    
+    @Override
+    public String getRenderVersion() {
+        return GENERATOR_VERSION + "-" + templateRenderer.getTemplate(TEMPLATE, templateRenderer.resolveMode(null)).getVersion();
+    }
+    
+    /**
+     * 获取变体统计信息
+     */
+    public Map<String, Object> getPoolStats() {
+        return variantPool.getStats();
+    }
+    
+    /**
+     * 取出题目变体：指定种子或池关闭时现场生成
+     */
+    private MathVariant takeVariant(GameConfig config, Long seed) {
+        VariantKey key = new VariantKey(getMaxNumber(config.getAgeGroup()), config.getDifficulty());
+        if (seed != null) {
+            return variantPool.generate(key, seed);
+        }
+        if (!poolEnabled) {
+            return variantPool.generate(key, AgentContext.newSeed());
+        }
+        return variantPool.take(key);
+    }
+    
+    /**
+     * 按种子生成题目变体
+     */
+    private MathVariant generateVariant(VariantKey key, long seed) {
+        List<MathQuestion> questions = generateQuestions(key.maxNumber(), key.difficulty(), new SplittableRandom(seed));
+        return new MathVariant(seed, questions, convertQuestionsToJson(questions));
+    }
+    
     /**
      * 生成游戏数据
      */
-    private MathGameData generateGameData(GameConfig config) {
+    private MathGameData generateGameData(GameConfig config, MathVariant variant) {
         MathGameData data = new MathGameData();
         data.setTitle(config.getTitle() != null ? config.getTitle() : "数学小英雄");
         data.setTheme(config.getTheme() != null ? config.getTheme() : "adventure");
         
-        // 根据年龄组和难度生成题目
-        List<MathQuestion> questions = generateQuestions(config);
-        data.setQuestions(questions);
+        // 根据年龄组和难度生成的题目
+        data.setQuestions(variant.questions());
+        data.setSeed(variant.seed());
         
         // 设置游戏参数
         data.setTimeLimit(config.isTimerEnabled() ? 60 : 0);
@@ -86,19 +191,15 @@ public class MathGameAgent extends BaseAgent {
     /**
      * 生成数学题目
      */
-    private List<MathQuestion> generateQuestions(GameConfig config) {
+    private List<MathQuestion> generateQuestions(int maxNumber, GameConfig.DifficultyLevel difficulty, SplittableRandom random) {
         List<MathQuestion> questions = new ArrayList<>();
-        Random random = new Random();
-        
-        // 根据年龄组确定数字范围
-        int maxNumber = getMaxNumber(config.getAgeGroup());
         int questionCount = 10;
         
         for (int i = 0; i < questionCount; i++) {
             MathQuestion question = new MathQuestion();
             
             // 生成运算符
-            String operator = selectOperator(config.getDifficulty());
+            String operator = selectOperator(difficulty, random);
             question.setOperator(operator);
             
             // 生成操作数
@@ -120,7 +221,7 @@ public class MathGameAgent extends BaseAgent {
             question.setAnswer(answer);
             
             // 生成选项
-            List<Integer> options = generateOptions(answer, maxNumber);
+            List<Integer> options = generateOptions(answer, maxNumber, random);
             question.setOptions(options);
             
             questions.add(question);
@@ -151,12 +252,11 @@ public class MathGameAgent extends BaseAgent {
     /**
      * 根据难度选择运算符
      */
-    private String selectOperator(GameConfig.DifficultyLevel difficulty) {
+    private String selectOperator(GameConfig.DifficultyLevel difficulty, SplittableRandom random) {
         if (difficulty == null) {
             return "+";
         }
         
-        Random random = new Random();
         return switch (difficulty) {
             case EASY -> "+";
             case MEDIUM -> random.nextBoolean() ? "+" : "-";
@@ -184,164 +284,39 @@ public class MathGameAgent extends BaseAgent {
     /**
      * 生成选项
      */
-    private List<Integer> generateOptions(int correctAnswer, int maxNumber) {
+    private List<Integer> generateOptions(int correctAnswer, int maxNumber, SplittableRandom random) {
         Set<Integer> options = new HashSet<>();
         options.add(correctAnswer);
         
-        Random random = new Random();
+        // 乘法答案可能超过 maxNumber * 2，上限至少覆盖答案附近，否则凑不满4个选项
+        int upperBound = Math.max(maxNumber * 2, correctAnswer + 5);
         while (options.size() < 4) {
             int offset = random.nextInt(10) - 5;
             int option = correctAnswer + offset;
-            if (option >= 0 && option <= maxNumber * 2) {
+            if (option >= 0 && option <= upperBound) {
                 options.add(option);
             }
         }
         
+        // Fisher-Yates 洗牌（Collections.shuffle 不接受 SplittableRandom）
         List<Integer> list = new ArrayList<>(options);
-        Collections.shuffle(list);
+        for (int i = list.size() - 1; i > 0; i--) {
+            Collections.swap(list, i, random.nextInt(i + 1));
+        }
         return list;
     }
     
     /**
      * 渲染游戏模板
+     * 使用 resources/game-templates/math-game.html，模板编译一次后缓存，这里只提供插槽值；
+     * 样式与脚本来自 resources/game-runtime/math-game.css|js，按 runtime 内联或外部引用
      */
-    private String renderGameTemplate(MathGameData gameData, GameConfig config) {
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html lang=\"zh-CN\">\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"UTF-8\">\n");
-        html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
-        html.append("    <title>").append(gameData.getTitle()).append("</title>\n");
-        html.append("    <style>\n");
-        html.append("        body { font-family: 'Comic Sans MS', cursive; background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); margin: 0; padding: 20px; min-height: 100vh; display: flex; justify-content: center; align-items: center; }\n");
-        html.append("        .game-container { background: white; border-radius: 20px; padding: 30px; box-shadow: 0 20px 60px rgba(0,0,0,0.3); max-width: 600px; width: 100%; }\n");
-        html.append("        h1 { text-align: center; color: #333; margin-bottom: 30px; font-size: 2em; }\n");
-        html.append("        .score-board { display: flex; justify-content: space-around; margin-bottom: 30px; }\n");
-        html.append("        .score-item { background: #f0f0f0; padding: 10px 20px; border-radius: 10px; font-size: 18px; }\n");
-        html.append("        .question-container { background: #f8f9fa; padding: 30px; border-radius: 15px; margin-bottom: 20px; text-align: center; }\n");
-        html.append("        .question { font-size: 36px; color: #2c3e50; margin-bottom: 30px; font-weight: bold; }\n");
-        html.append("        .options { display: grid; grid-template-columns: repeat(2, 1fr); gap: 15px; margin-top: 20px; }\n");
-        html.append("        .option-btn { padding: 20px; font-size: 24px; border: none; border-radius: 10px; background: linear-gradient(45deg, #3498db, #2ecc71); color: white; cursor: pointer; transition: transform 0.3s, box-shadow 0.3s; }\n");
-        html.append("        .option-btn:hover { transform: translateY(-3px); box-shadow: 0 10px 20px rgba(0,0,0,0.2); }\n");
-        html.append("        .option-btn.correct { background: linear-gradient(45deg, #27ae60, #2ecc71); animation: pulse 0.5s; }\n");
-        html.append("        .option-btn.wrong { background: linear-gradient(45deg, #e74c3c, #c0392b); animation: shake 0.5s; }\n");
-        html.append("        @keyframes pulse { 0%, 100% { transform: scale(1); } 50% { transform: scale(1.1); } }\n");
-        html.append("        @keyframes shake { 0%, 100% { transform: translateX(0); } 25% { transform: translateX(-10px); } 75% { transform: translateX(10px); } }\n");
-        html.append("        .progress { height: 20px; background: #ecf0f1; border-radius: 10px; overflow: hidden; margin-bottom: 20px; }\n");
-        html.append("        .progress-bar { height: 100%; background: linear-gradient(90deg, #3498db, #2ecc71); transition: width 0.3s; }\n");
-        html.append("        .result { display: none; text-align: center; font-size: 24px; padding: 20px; }\n");
-        html.append("        .result.show { display: block; }\n");
-        html.append("        button { background: #3498db; color: white; border: none; padding: 10px 20px; border-radius: 5px; cursor: pointer; font-size: 16px; }\n");
-        html.append("        button:hover { background: #2980b9; }\n");
-        html.append("    </style>\n");
-        html.append("</head>\n");
-        html.append("<body>\n");
-        html.append("    <div class=\"game-container\">\n");
-        html.append("        <h1>🎯 ").append(gameData.getTitle()).append("</h1>\n");
-        html.append("        <div class=\"score-board\">\n");
-        html.append("            <div class=\"score-item\">✅ 正确: <span id=\"correct\">0</span></div>\n");
-        html.append("            <div class=\"score-item\">❌ 错误: <span id=\"wrong\">0</span></div>\n");
-        html.append("            <div class=\"score-item\">📊 进度: <span id=\"current\">1</span>/").append(gameData.getQuestions().size()).append("</div>\n");
-        html.append("        </div>\n");
-        html.append("        <div class=\"progress\">\n");
-        html.append("            <div class=\"progress-bar\" id=\"progressBar\" style=\"width: 0%\"></div>\n");
-        html.append("        </div>\n");
-        html.append("        <div class=\"question-container\">\n");
-        html.append("            <div class=\"question\" id=\"question\"></div>\n");
-        html.append("            <div class=\"options\" id=\"options\"></div>\n");
-        html.append("        </div>\n");
-        html.append("        <div class=\"result\" id=\"result\">\n");
-        html.append("            <h2>🎉 游戏完成！</h2>\n");
-        html.append("            <p>正确率: <span id=\"accuracy\"></span>%</p>\n");
-        html.append("            <button onclick=\"resetGame()\">再玩一次</button>\n");
-        html.append("        </div>\n");
-        html.append("    </div>\n");
-        html.append("    <script>\n");
-        html.append("        const questions = ").append(convertQuestionsToJson(gameData.getQuestions())).append(";\n");
-        html.append("        let currentIndex = 0;\n");
-        html.append("        let correctCount = 0;\n");
-        html.append("        let wrongCount = 0;\n");
-        html.append("\n");
-        html.append("        function displayQuestion() {\n");
-        html.append("            if (currentIndex >= questions.length) {\n");
-        html.append("                showResult();\n");
-        html.append("                return;\n");
-        html.append("            }\n");
-        html.append("            \n");
-        html.append("            const q = questions[currentIndex];\n");
-        html.append("            document.getElementById('question').innerHTML = `${q.num1} ${q.operator} ${q.num2} = ?`;\n");
-        html.append("            document.getElementById('current').textContent = currentIndex + 1;\n");
-        html.append("            \n");
-        html.append("            const optionsDiv = document.getElementById('options');\n");
-        html.append("            optionsDiv.innerHTML = '';\n");
-        html.append("            \n");
-        html.append("            q.options.forEach(option => {\n");
-        html.append("                const btn = document.createElement('button');\n");
-        html.append("                btn.className = 'option-btn';\n");
-        html.append("                btn.textContent = option;\n");
-        html.append("                btn.onclick = () => checkAnswer(option, q.answer);\n");
-        html.append("                optionsDiv.appendChild(btn);\n");
-        html.append("            });\n");
-        html.append("            \n");
-        html.append("            updateProgress();\n");
-        html.append("        }\n");
-        html.append("\n");
-        html.append("        function checkAnswer(selected, correct) {\n");
-        html.append("            const buttons = document.querySelectorAll('.option-btn');\n");
-        html.append("            buttons.forEach(btn => {\n");
-        html.append("                btn.disabled = true;\n");
-        html.append("                if (parseInt(btn.textContent) === correct) {\n");
-        html.append("                    btn.classList.add('correct');\n");
-        html.append("                } else if (parseInt(btn.textContent) === selected) {\n");
-        html.append("                    btn.classList.add('wrong');\n");
-        html.append("                }\n");
-        html.append("            });\n");
-        html.append("            \n");
-        html.append("            if (selected === correct) {\n");
-        html.append("                correctCount++;\n");
-        html.append("                document.getElementById('correct').textContent = correctCount;\n");
-        html.append("            } else {\n");
-        html.append("                wrongCount++;\n");
-        html.append("                document.getElementById('wrong').textContent = wrongCount;\n");
-        html.append("            }\n");
-        html.append("            \n");
-        html.append("            setTimeout(() => {\n");
-        html.append("                currentIndex++;\n");
-        html.append("                displayQuestion();\n");
-        html.append("            }, 1500);\n");
-        html.append("        }\n");
-        html.append("\n");
-        html.append("        function updateProgress() {\n");
-        html.append("            const progress = (currentIndex / questions.length) * 100;\n");
-        html.append("            document.getElementById('progressBar').style.width = progress + '%';\n");
-        html.append("        }\n");
-        html.append("\n");
-        html.append("        function showResult() {\n");
-        html.append("            document.querySelector('.question-container').style.display = 'none';\n");
-        html.append("            document.getElementById('result').classList.add('show');\n");
-        html.append("            const accuracy = Math.round((correctCount / questions.length) * 100);\n");
-        html.append("            document.getElementById('accuracy').textContent = accuracy;\n");
-        html.append("        }\n");
-        html.append("\n");
-        html.append("        function resetGame() {\n");
-        html.append("            currentIndex = 0;\n");
-        html.append("            correctCount = 0;\n");
-        html.append("            wrongCount = 0;\n");
-        html.append("            document.getElementById('correct').textContent = '0';\n");
-        html.append("            document.getElementById('wrong').textContent = '0';\n");
-        html.append("            document.querySelector('.question-container').style.display = 'block';\n");
-        html.append("            document.getElementById('result').classList.remove('show');\n");
-        html.append("            displayQuestion();\n");
-        html.append("        }\n");
-        html.append("\n");
-        html.append("        // 初始化游戏\n");
-        html.append("        displayQuestion();\n");
-        html.append("    </script>\n");
-        html.append("</body>\n");
-        html.append("</html>");
-        
-        return html.toString();
+    private HtmlContent renderGameTemplate(MathGameData gameData, String questionsJson, GameRuntimeAssets.Mode runtime) {
+        Map<String, Object> slots = new HashMap<>();
+        slots.put("title", gameData.getTitle());
+        slots.put("total", gameData.getQuestions().size());
+        slots.put("questions", questionsJson);
+        return templateRenderer.renderContent(TEMPLATE, slots, runtime);
     }
     
     /**
@@ -378,6 +353,7 @@ public class MathGameAgent extends BaseAgent {
         private int timeLimit;
         private boolean soundEnabled;
         private boolean scoreEnabled;
+        private long seed;
         
         // getters and setters
         public String getTitle() { return title; }
@@ -392,6 +368,8 @@ public class MathGameAgent extends BaseAgent {
         public void setSoundEnabled(boolean soundEnabled) { this.soundEnabled = soundEnabled; }
         public boolean isScoreEnabled() { return scoreEnabled; }
         public void setScoreEnabled(boolean scoreEnabled) { this.scoreEnabled = scoreEnabled; }
+        public long getSeed() { return seed; }
+        public void setSeed(long seed) { this.seed = seed; }
     }
     
     /**
@@ -7,10 +7,22 @@ package com.sumo.agent.games;
 import com.sumo.agent.core.AgentContext;
 import com.sumo.agent.core.AgentPriority;
 import com.sumo.agent.core.BaseAgent;
+import com.sumo.agent.core.GameArtifact;
 import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.core.GenerationTimings;
+import com.sumo.agent.core.TokenEstimator;
+import com.sumo.agent.template.GameRuntimeAssets;
+import com.sumo.agent.template.GameTemplateRenderer;
+import com.sumo.agent.template.HtmlContent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
 import com.sumo.agent.config.ChatModelRouter;
+import com.sumo.agent.metrics.GameMetrics;
+import com.sumo.agent.prompt.PromptRegistry;
+import com.sumo.agent.prompt.VersionedPrompt;
+import com.sumo.agent.service.TokenUsageService;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
@@ -27,6 +39,15 @@ import java.util.*;
 @Component("universalGameAgent")
 public class UniversalGameAgent extends BaseAgent {
     
+    private static final String DEFAULT_TEMPLATE = "universal-default";
+    
+    private static final String SYSTEM_PROMPT = "universal-system";
+    
+    private static final String USER_PROMPT = "universal-user";
+    
+    @Autowired
+    private GameTemplateRenderer templateRenderer;
+    
     @Autowired(required = false)
     private ChatModel chatModel; // 兼容旧路径
     
@@ -36,6 +57,15 @@ public class UniversalGameAgent extends BaseAgent {
     @Autowired(required = false)
     private Environment environment;
     
+    @Autowired(required = false)
+    private GameMetrics gameMetrics;
+    
+    @Autowired
+    private TokenUsageService tokenUsageService;
+    
+    @Autowired
+    private PromptRegistry promptRegistry;
+    
     @Override
     public void execute(AgentContext context) {
         GameConfig config = context.getGameConfig();
@@ -43,28 +73,55 @@ public class UniversalGameAgent extends BaseAgent {
         
         log.info("🎮 使用AI动态生成游戏: {}", userInput);
         
-        // 选择模型（可由前端传入 model 选项，例如 dashscope/kimi-k2）
+        // 选择模型（可由前端传入 model 选项，例如 dashscope/kimi-k2），key 规范化后用于指标与用量统计
         ChatModel useModel = chatModel;
+        String modelKey = "default";
         if (chatModelRouter != null) {
-            String modelKey = context.getAttribute("model");
+            modelKey = chatModelRouter.resolveKey(context.getAttribute("model"));
             useModel = chatModelRouter.get(modelKey);
             
             // 在上下文记录模型名称，便于响应展示
-            String modelName = resolveModelName(modelKey);
-            context.setAttribute("modelName", modelName);
+            context.setAttribute("modelName", resolveModelName(modelKey));
         }
         
         // 如果ChatModel不可用，生成默认游戏
         if (useModel == null) {
             log.warn("ChatModel未配置，生成默认游戏");
-            generateDefaultGame(context, config, userInput);
+            generateDefaultGame(context, config, userInput, null);
             return;
         }
         
         try {
             // 单次调用：在系统提示中要求“先内部细化再生成”，最终仅输出HTML
-            String systemPrompt = buildSystemPrompt();
-            String userPrompt = buildUserPrompt(userInput, config);
+            // 提示词版本（A/B）：系统提示词不含任何请求相关内容，作为稳定前缀以命中模型侧上下文缓存
+            GenerationTimings timings = context.getTimings();
+            String promptVersion = promptRegistry.selectVersion(context.getSessionId(), context.getAttribute("promptVersion"));
+            VersionedPrompt systemTemplate = promptRegistry.get(SYSTEM_PROMPT, promptVersion);
+            String systemPrompt = systemTemplate.text();
+            String userPrompt = timings.record(GenerationTimings.STAGE_PROMPT,
+                () -> buildUserPrompt(promptVersion, userInput, config, context.getAttribute("ragContext")));
+
+            Map<String, Object> extras = new LinkedHashMap<>();
+            extras.put("promptVersion", systemTemplate.getVersion());
+            if (context.hasAttribute("ragPromptTokens")) {
+                extras.put("ragPromptTokens", context.getAttribute("ragPromptTokens"));
+            }
+
+            // 预算检查：接近上限改用便宜模型，超出上限改用内置游戏
+            TokenUsageService.Decision decision = tokenUsageService.check(context.getSessionId(), modelKey,
+                systemTemplate.getStaticTokens() + TokenEstimator.estimate(userPrompt));
+            if (decision.action() == TokenUsageService.Action.BUILTIN) {
+                extras.put("budget", decision.reason());
+                generateDefaultGame(context, config, userInput, extras);
+                return;
+            }
+            if (decision.action() == TokenUsageService.Action.DOWNGRADE && chatModelRouter != null) {
+                extras.put("budget", decision.reason());
+                modelKey = chatModelRouter.resolveKey(decision.model());
+                useModel = chatModelRouter.get(modelKey);
+                context.setAttribute("modelName", resolveModelName(modelKey));
+            }
+
             SystemMessage systemMessage = new SystemMessage(systemPrompt);
             UserMessage userMessage = new UserMessage(userPrompt);
             Prompt prompt = new Prompt(List.of(systemMessage, userMessage));
@@ -75,88 +132,95 @@ public class UniversalGameAgent extends BaseAgent {
             log.debug("================ Prompt Assembled (User) ==================\n{}\n==========================================================", userPrompt);
 
             // 真正调用大模型
-            String gameHtml = useModel.call(prompt).getResult().getOutput().getText();
-            gameHtml = cleanAndValidateHtml(gameHtml);
-
-            Map<String, Object> result = new HashMap<>();
-            result.put("html", gameHtml);
-            result.put("type", "universal");
-            result.put("gameData", Map.of(
-                "title", config.getTitle() != null ? config.getTitle() : "AI生成的游戏",
-                "description", userInput,
-                "generated", true
-            ));
-            result.put("generatedByLLM", true);
-            result.put("modelName", context.getAttribute("modelName"));
+            ChatModel model = useModel;
+            String callKey = modelKey;
+            ModelReply reply = timings.record(GenerationTimings.STAGE_MODEL,
+                () -> callModel(model, prompt, callKey, context.getSessionId()));
+            String gameHtml = timings.record(GenerationTimings.STAGE_CLEANUP, () -> cleanAndValidateHtml(reply.text()));
+            extras.put("tokenUsage", reply.usage().toMap());
 
-            context.setResult(result);
+            context.setResult(GameArtifact.builder()
+                .html(HtmlContent.of(gameHtml))
+                .type("universal")
+                .source(GameArtifact.Source.LLM)
+                .modelName(context.getAttribute("modelName"))
+                .gameData(Map.of(
+                    "title", config.getTitle() != null ? config.getTitle() : "AI生成的游戏",
+                    "description", userInput,
+                    "generated", true
+                ))
+                .extras(extras)
+                .build());
             context.setSuccess(true);
 
         } catch (Exception e) {
             log.error("游戏生成失败", e);
             context.setSuccess(false);
-            context.setResult("游戏生成失败：" + e.getMessage());
+            context.setError("游戏生成失败：" + e.getMessage());
         }
     }
     
-    private String buildSystemPrompt() {
-        return """
-            你是一个专业的儿童教育游戏开发专家。请根据用户输入生成一个完整的 HTML5 教育小游戏。
-            
-            一次完成两步（单次调用）：
-            - 在内部思考并先细化需求：面向 4-8 岁儿童，明确主题/目标/玩法/控制方式/反馈与提示/评分与结束条件/可访问性/响应式等规范；
-            - 然后依据该内部规范实现最终游戏。不要输出思考过程或中间结果，只输出最终 HTML。
-            
-            基本要求（必须同时满足）：
-            1) 生成单个、可直接运行的完整 HTML 文件（<!DOCTYPE html>…</html>）。
-            2) 所有样式与脚本均内联（<style>/<script>），不依赖任何外部资源或 CDN。
-            3) 界面清晰、适合儿童，操作简单，同时支持键盘与可点击按钮（“开始/重新开始/方向等”，具体以主题为准）。
-            4) 响应式：避免固定像素，优先百分比/视口单位/CSS 变量；确保游戏主区域在桌面端填充父容器≥90% 的宽高（如不足则做等比缩放适配），移动端占满宽度并保持纵横比。
-            5) 游戏状态可见：分数/进度/提示需在页面中实时展示；违规或失败原因需清晰可见。
-            
-            交互与可用性规范（通用）：
-            - 文案与控件一致：页面上应提供与说明一致的可视化按钮，且键盘操作同样可用。
-            - 碰撞检测：使用轴对齐矩形相交（AABB）等稳健方式，而不是硬编码距离阈值。参考实现：
-              在每一帧使用 getBoundingClientRect() 计算矩形，判定重叠：
-              function overlap(a,b){ return !(a.right<b.left||a.left>b.right||a.bottom<b.top||a.top>b.bottom); }
-            - 容器约束：将布局限制在游戏根容器（如 .game-area 或 #game-container），避免对 <body> 设置 display:flex/overflow:hidden 等全局布局；不要依赖固定像素，尽量使用百分比/视口单位或 CSS 变量。
-            - 可访问性：按钮有可读文本或 aria-label；颜色对比度合理。
-            
-            主题选择：
-            - 依据用户输入确定主题；如果用户未指定主题，选择一个通用且有教育意义的主题（例如数字认知、形状颜色、交通安全、环保等），但不要把任何特定主题写死在代码中。
-            
-            输出格式：
-            - 只输出最终完整 HTML（从 <!DOCTYPE html> 到 </html>），不要包含 Markdown 代码块或解释文字。
-            """;
+    /**
+     * 模型输出与本次调用计入的 token 用量
+     */
+    private record ModelReply(String text, TokenUsageService.CallUsage usage) {}
+    
+    /**
+     * 调用大模型，记录耗时与 token 用量
+     * 用量优先取响应中的 usage，缺失时按提示词与输出估算
+     */
+    private ModelReply callModel(ChatModel model, Prompt prompt, String modelKey, String sessionId) {
+        long start = System.nanoTime();
+        boolean success = false;
+        TokenUsageService.CallUsage accounted = null;
+        try {
+            ChatResponse response = model.call(prompt);
+            String text = response.getResult().getOutput().getText();
+            Usage usage = response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+            accounted = tokenUsageService.record(sessionId, modelKey,
+                usage != null ? usage.getPromptTokens() : null,
+                usage != null ? usage.getCompletionTokens() : null,
+                prompt.getContents(), text);
+            success = true;
+            return new ModelReply(text, accounted);
+        } finally {
+            if (gameMetrics != null) {
+                gameMetrics.recordLlmCall(modelKey, System.nanoTime() - start, success,
+                    accounted != null ? accounted.inputTokens() : null,
+                    accounted != null ? accounted.outputTokens() : null);
+            }
+        }
     }
     
-    private String buildUserPrompt(String userInput, GameConfig config) {
-        StringBuilder prompt = new StringBuilder();
-        prompt.append("请生成一个游戏，要求如下：\n");
-        prompt.append("用户需求：").append(userInput).append("\n");
-        
+    /**
+     * 按版本渲染用户提示词
+     * 插槽按变化频率排列由模板决定：v2 依次为 配置 → 知识 → 用户需求，相同配置的请求共享更长的前缀
+     */
+    private String buildUserPrompt(String version, String userInput, GameConfig config, String knowledge) {
+        StringBuilder configLines = new StringBuilder();
         if (config != null) {
             if (config.getAgeGroup() != null) {
-                prompt.append("年龄组：").append(config.getAgeGroup()).append("\n");
+                configLines.append("年龄组：").append(config.getAgeGroup()).append("\n");
             }
             if (config.getDifficulty() != null) {
-                prompt.append("难度：").append(config.getDifficulty()).append("\n");
+                configLines.append("难度：").append(config.getDifficulty()).append("\n");
             }
             if (config.getTheme() != null) {
-                prompt.append("主题：").append(config.getTheme()).append("\n");
+                configLines.append("主题：").append(config.getTheme()).append("\n");
             }
             if (config.getTitle() != null) {
-                prompt.append("游戏标题：").append(config.getTitle()).append("\n");
+                configLines.append("游戏标题：").append(config.getTitle()).append("\n");
             }
         }
         
-        prompt.append("\n请确保游戏：\n");
-        prompt.append("1. 完全符合用户的需求描述\n");
-        prompt.append("2. 适合指定年龄段的儿童\n");
-        prompt.append("3. 具有教育意义和趣味性\n");
-        prompt.append("4. 界面美观，操作简单\n");
-        
-        return prompt.toString();
+        Map<String, String> slots = new HashMap<>();
+        slots.put("userInput", userInput);
+        slots.put("config", configLines.toString());
+        // 知识库检索到的设计参考（由主Agent组装）
+        if (knowledge != null && !knowledge.isBlank()) {
+            slots.put("knowledge", "\n参考知识（来自知识库，按需采纳）：\n" + knowledge + "\n");
+        }
+        return promptRegistry.get(USER_PROMPT, version).render(slots);
     }
     
     private String cleanAndValidateHtml(String html) {
@@ -197,54 +261,34 @@ public class UniversalGameAgent extends BaseAgent {
         return AgentPriority.LOW; // 作为后备选项，优先级最低
     }
     
-    private void generateDefaultGame(AgentContext context, GameConfig config, String userInput) {
+    @Override
+    public boolean requiresKnowledgeContext() {
+        return true;
+    }
+    
+    private void generateDefaultGame(AgentContext context, GameConfig config, String userInput,
+                                     Map<String, Object> extras) {
         String title = config.getTitle() != null ? config.getTitle() : "通用教育游戏";
         
-        // 默认游戏模板
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html lang=\"zh-CN\">\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"UTF-8\">\n");
-        html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
-        html.append("    <title>").append(title).append("</title>\n");
-        html.append("    <style>\n");
-        html.append("        body { font-family: Arial, sans-serif; background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); margin: 0; padding: 20px; display: flex; justify-content: center; align-items: center; min-height: 100vh; }\n");
-        html.append("        .container { background: white; border-radius: 20px; padding: 40px; box-shadow: 0 20px 60px rgba(0,0,0,0.3); max-width: 600px; text-align: center; }\n");
-        html.append("        h1 { color: #333; margin-bottom: 20px; }\n");
-        html.append("        p { color: #666; line-height: 1.6; margin: 20px 0; }\n");
-        html.append("        .game-area { background: #f8f9fa; border-radius: 10px; padding: 30px; margin: 20px 0; min-height: 200px; display: flex; align-items: center; justify-content: center; }\n");
-        html.append("        button { background: #667eea; color: white; border: none; padding: 12px 24px; border-radius: 25px; font-size: 16px; cursor: pointer; margin: 10px; transition: transform 0.2s; }\n");
-        html.append("        button:hover { transform: scale(1.05); }\n");
-        html.append("    </style>\n");
-        html.append("</head>\n");
-        html.append("<body>\n");
-        html.append("    <div class=\"container\">\n");
-        html.append("        <h1>🎮 ").append(title).append("</h1>\n");
-        html.append("        <p>您的需求：").append(userInput).append("</p>\n");
-        html.append("        <div class=\"game-area\">\n");
-        html.append("            <div>\n");
-        html.append("                <p>🚧 游戏正在开发中...</p>\n");
-        html.append("                <p>这是一个基于您需求的游戏模板</p>\n");
-        html.append("                <button onclick=\"alert('游戏功能开发中！')\">开始游戏</button>\n");
-        html.append("            </div>\n");
-        html.append("        </div>\n");
-        html.append("        <p style=\"font-size: 14px; color: #999;\">提示：配置AI服务后可自动生成完整游戏内容</p>\n");
-        html.append("    </div>\n");
-        html.append("</body>\n");
-        html.append("</html>");
+        // 默认游戏模板：resources/game-templates/universal-default.html（options.runtime = inline | external）
+        GameRuntimeAssets.Mode runtime = templateRenderer.resolveMode(context.getAttribute("runtime"));
+        Map<String, Object> slots = new HashMap<>();
+        slots.put("title", title);
+        slots.put("userInput", userInput);
+        HtmlContent html = templateRenderer.renderContent(DEFAULT_TEMPLATE, slots, runtime);
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("html", html.toString());
-        result.put("type", "universal");
-        result.put("gameData", Map.of(
-            "title", title,
-            "description", userInput,
-            "generated", false
-        ));
-        result.put("generatedByLLM", false);
-        
-        context.setResult(result);
+        context.setResult(GameArtifact.builder()
+            .html(html)
+            .type("universal")
+            .source(GameArtifact.Source.TEMPLATE)
+            .runtime(runtime.name().toLowerCase())
+            .gameData(Map.of(
+                "title", title,
+                "description", userInput,
+                "generated", false
+            ))
+            .extras(extras)
+            .build());
         context.setSuccess(true);
     }
 
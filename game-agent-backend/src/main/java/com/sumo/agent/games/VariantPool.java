@@ -0,0 +1,161 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.games;
+
+import com.sumo.agent.core.AgentContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 游戏变体池
+ * 为确定性的内置游戏按配置键预先生成若干变体，请求时直接出队（O(1)），
+ * 被取走后由后台线程异步补充到容量。池为空时在调用线程现场生成，不会阻塞等待。
+ *
+ * 每个变体由一个种子完整决定：generator(key, seed) 对相同输入必须产生相同结果，
+ * 种子随变体一起返回，便于复现同一局游戏。
+ *
+ * @param <K> 配置键（需实现 equals/hashCode，通常为 record）
+ * @param <V> 变体
+ */
+@Slf4j
+public final class VariantPool<K, V> {
+
+    /**
+     * 变体生成函数
+     */
+    @FunctionalInterface
+    public interface Generator<K, V> {
+        V generate(K key, long seed);
+    }
+
+    private final String name;
+    private final int capacity;
+    private final Generator<K, V> generator;
+    private final Map<K, Bucket<V>> buckets = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+
+    /**
+     * 单个配置键下的就绪变体
+     */
+    private static final class Bucket<V> {
+        final Queue<V> ready = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean refilling = new AtomicBoolean();
+    }
+
+    /**
+     * @param name 池名称，用于日志与线程名
+     * @param capacity 每个配置键预生成的变体数
+     */
+    public VariantPool(String name, int capacity, Generator<K, V> generator) {
+        this.name = name;
+        this.capacity = Math.max(1, capacity);
+        this.generator = generator;
+        this.refillExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "variant-pool-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 取出一个就绪变体并触发异步补充；池为空时现场生成
+     */
+    public V take(K key) {
+        Bucket<V> bucket = buckets.computeIfAbsent(key, k -> new Bucket<>());
+        V variant = bucket.ready.poll();
+        if (variant != null) {
+            bucket.size.decrementAndGet();
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            variant = generate(key);
+        }
+        scheduleRefill(key, bucket);
+        return variant;
+    }
+
+    /**
+     * 按指定种子生成变体，不经过池（用于复现）
+     */
+    public V generate(K key, long seed) {
+        return generator.generate(key, seed);
+    }
+
+    /**
+     * 在后台为给定配置键预生成变体
+     */
+    public void prewarm(Collection<K> keys) {
+        for (K key : keys) {
+            scheduleRefill(key, buckets.computeIfAbsent(key, k -> new Bucket<>()));
+        }
+    }
+
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long total = hits.get() + misses.get();
+        stats.put("name", name);
+        stats.put("capacity", capacity);
+        stats.put("keys", buckets.size());
+        stats.put("ready", buckets.values().stream().mapToInt(b -> b.size.get()).sum());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hits.get() / total);
+        stats.put("generated", generated.get());
+        return stats;
+    }
+
+    private V generate(K key) {
+        generated.incrementAndGet();
+        return generator.generate(key, AgentContext.newSeed());
+    }
+
+    private void scheduleRefill(K key, Bucket<V> bucket) {
+        if (bucket.size.get() >= capacity || !bucket.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutor.execute(() -> refill(key, bucket));
+        } catch (RejectedExecutionException e) {
+            bucket.refilling.set(false);
+        }
+    }
+
+    private void refill(K key, Bucket<V> bucket) {
+        try {
+            while (bucket.size.get() < capacity) {
+                bucket.ready.add(generate(key));
+                bucket.size.incrementAndGet();
+            }
+        } catch (Exception e) {
+            log.warn("变体池 {} 补充失败: {} - {}", name, key, e.getMessage());
+        } finally {
+            bucket.refilling.set(false);
+        }
+    }
+}
@@ -6,15 +6,14 @@ package com.sumo.agent.impl;
 
 import com.sumo.agent.core.AgentContext;
 import com.sumo.agent.core.BaseAgent;
+import com.sumo.agent.core.GameArtifact;
 import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.template.HtmlContent;
+import com.sumo.agent.template.StaticGameRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
 /**
  * 英语学习游戏Agent
  * 生成英语学习游戏，包括单词学习、字母认知、简单句子等
@@ -23,63 +22,23 @@ import java.nio.file.Paths;
 @Component("englishLearningGameAgent")
 public class EnglishLearningGameAgent extends BaseAgent {
 
-    private static final String STATIC_GAME_PATH = "game-agent-backend/saved-games/english_learning_game.html";
+    private static final String STATIC_GAME = "english_learning_game";
+
+    @Autowired
+    private StaticGameRegistry staticGames;
 
     @Override
     public void execute(AgentContext context) {
-        log.info("加载英语学习游戏...");
-
-        try {
-            // 直接读取静态HTML文件
-            Path gamePath = Paths.get(STATIC_GAME_PATH);
-            if (!Files.exists(gamePath)) {
-                // 尝试相对路径
-                gamePath = Paths.get("saved-games/english_learning_game.html");
-            }
-            String gameHtml = Files.readString(gamePath);
-
-            // 设置结果
-            context.setResult(gameHtml);
-            context.setSuccess(true);
-            log.info("英语学习游戏加载完成");
-
-        } catch (IOException e) {
-            log.error("加载英语学习游戏失败", e);
-
-            // 如果静态文件不存在，返回默认游戏
-            context.setResult(getDefaultGame());
-            context.setSuccess(true);
-        }
-    }
-
-    private String getDefaultGame() {
-        // 返回一个简单的默认游戏页面
-        return """
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <meta name="viewport" content="width=device-width, initial-scale=1.0">
-                <title>快乐学英语</title>
-                <style>
-                    body {
-                        font-family: "Comic Sans MS", Arial, sans-serif;
-                        text-align: center;
-                        padding: 50px;
-                        background: linear-gradient(135deg, #fa709a 0%, #fee140 100%);
-                        color: white;
-                    }
-                    h1 { font-size: 48px; }
-                    p { font-size: 24px; }
-                </style>
-            </head>
-            <body>
-                <h1>🌟 快乐学英语 🐾</h1>
-                <p>游戏正在加载中...</p>
-                <p>请稍后再试！</p>
-            </body>
-            </html>
-            """;
+        // 静态页面启动时已加载到内存（缺失时启动失败），这里直接复用共享的字节
+        StaticGameRegistry.StaticGame game = staticGames.get(STATIC_GAME);
+        context.setResult(GameArtifact.builder()
+            .html(HtmlContent.of(game.content()))
+            .contentHash(game.sha256())
+            .type("english_learning")
+            .source(GameArtifact.Source.STATIC)
+            .build());
+        context.setSuccess(true);
+        log.info("英语学习游戏加载完成: {} 字节, 版本 {}", game.content().length, game.version());
     }
 
     @Deprecated
@@ -0,0 +1,70 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.metrics;
+
+import com.sumo.agent.games.MathGameAgent;
+import com.sumo.agent.rag.CachingVectorStore;
+import com.sumo.agent.rag.KnowledgeContextAssembler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 缓存命中指标
+ * 各缓存已在 getStats() 中维护命中/未命中计数，这里在抓取时读取，不改动缓存本身：
+ *
+ * - game.cache.requests{cache, result=hit|miss}
+ * - game.cache.size{cache}
+ *
+ * cache 取值：rag-retrieval（向量检索结果缓存）、knowledge-context（知识上下文缓存）、math-variants（数学题目变体池）。
+ * 未启用的缓存不注册。
+ */
+@Component
+public class CacheMetrics implements MeterBinder {
+
+    @Autowired
+    private ObjectProvider<CachingVectorStore> cachingVectorStore;
+
+    @Autowired
+    private ObjectProvider<KnowledgeContextAssembler> knowledgeContextAssembler;
+
+    @Autowired
+    private ObjectProvider<MathGameAgent> mathGameAgent;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        cachingVectorStore.ifAvailable(store -> bind(registry, "rag-retrieval", store, CachingVectorStore::getStats, "size"));
+        knowledgeContextAssembler.ifAvailable(assembler ->
+            bind(registry, "knowledge-context", assembler, KnowledgeContextAssembler::getStats, "size"));
+        mathGameAgent.ifAvailable(agent -> bind(registry, "math-variants", agent, MathGameAgent::getPoolStats, "ready"));
+    }
+
+    /**
+     * 指标只弱引用 source，这里传入由容器持有的 Bean 本身，而不是临时的 lambda
+     */
+    private static <T> void bind(MeterRegistry registry, String cache, T source,
+                                 Function<T, Map<String, Object>> stats, String sizeKey) {
+        FunctionCounter.builder("game.cache.requests", source, s -> value(stats.apply(s), "hits"))
+            .tags("cache", cache, "result", "hit")
+            .register(registry);
+        FunctionCounter.builder("game.cache.requests", source, s -> value(stats.apply(s), "misses"))
+            .tags("cache", cache, "result", "miss")
+            .register(registry);
+        Gauge.builder("game.cache.size", source, s -> value(stats.apply(s), sizeKey))
+            .tag("cache", cache)
+            .register(registry);
+    }
+
+    private static double value(Map<String, Object> stats, String key) {
+        return stats.get(key) instanceof Number n ? n.doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 游戏生成服务的业务指标
+ * 通过 /actuator/prometheus 导出，看板见 monitoring/grafana-dashboard.json。
+ *
+ * - game.generation.requests  生成结果计数（agent / type / source / outcome）
+ * - game.llm.requests         大模型调用耗时（model / outcome）
+ * - game.llm.tokens           大模型 token 数（model / direction=input|output）
+ * - game.storage.operations   游戏存储操作耗时（operation / outcome）
+ * - game.storage.bytes        游戏存储读写字节数（operation）
+ * - game.rag.search           知识库检索耗时（outcome）
+ *
+ * 接口请求量与耗时由 Actuator 的 http.server.requests 提供，各生成阶段耗时见 game.generation.stage，
+ * 缓存命中见 {@link CacheMetrics}。标签值都来自有限集合（Agent类名、模型key、操作名），避免高基数。
+ */
+@Slf4j
+@Component
+public class GameMetrics {
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry == null) {
+            // 未引入 Actuator 时（如单独运行组件）记录到全局注册表，不导出
+            meterRegistry = Metrics.globalRegistry;
+        }
+    }
+
+    /**
+     * 记录一次游戏生成结果
+     */
+    public void recordGeneration(String agent, String type, String source, boolean success) {
+        meterRegistry.counter("game.generation.requests",
+            "agent", agent,
+            "type", type != null ? type : "none",
+            "source", source != null ? source : "none",
+            "outcome", outcome(success)).increment();
+    }
+
+    /**
+     * 记录一次大模型调用
+     *
+     * @param inputTokens 输入 token 数，未知时为 null
+     * @param outputTokens 输出 token 数，未知时为 null
+     */
+    public void recordLlmCall(String model, long nanos, boolean success, Integer inputTokens, Integer outputTokens) {
+        Timer.builder("game.llm.requests")
+            .tags("model", model, "outcome", outcome(success))
+            .register(meterRegistry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        if (inputTokens != null) {
+            meterRegistry.counter("game.llm.tokens", "model", model, "direction", "input").increment(inputTokens);
+        }
+        if (outputTokens != null) {
+            meterRegistry.counter("game.llm.tokens", "model", model, "direction", "output").increment(outputTokens);
+        }
+    }
+
+    /**
+     * 记录一次存储操作
+     *
+     * @param operation save / get / list / delete
+     * @param bytes 读写的字节数，无则传 0
+     */
+    public void recordStorage(String operation, long nanos, boolean success, long bytes) {
+        Timer.builder("game.storage.operations")
+            .tags("operation", operation, "outcome", outcome(success))
+            .register(meterRegistry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        if (bytes > 0) {
+            DistributionSummary.builder("game.storage.bytes")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(bytes);
+        }
+    }
+
+    /**
+     * 记录一次知识库检索
+     *
+     * @param outcome success / error / timeout
+     */
+    public void recordRagSearch(long nanos, String outcome) {
+        Timer.builder("game.rag.search")
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String outcome(boolean success) {
+        return success ? "success" : "error";
+    }
+}
@@ -15,6 +15,18 @@ public class SavedGame {
     private String theme;
     private String html;
     private String config;
+    /**
+     * 随机种子，可复现的游戏只保存配置与种子，读取时重新渲染
+     */
+    private Long seed;
+    /**
+     * 保存时的渲染版本（模板与生成逻辑），与种子一起保存
+     */
+    private String renderVersion;
+    /**
+     * 读取时渲染版本已变化，重新渲染的结果可能与保存时不同（不持久化）
+     */
+    private Boolean renderStale;
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime createdAt;
 
@@ -101,6 +113,30 @@ public class SavedGame {
         this.config = config;
     }
 
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public String getRenderVersion() {
+        return renderVersion;
+    }
+
+    public void setRenderVersion(String renderVersion) {
+        this.renderVersion = renderVersion;
+    }
+
+    public Boolean getRenderStale() {
+        return renderStale;
+    }
+
+    public void setRenderStale(Boolean renderStale) {
+        this.renderStale = renderStale;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,151 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.prompt;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 提示词模板注册表
+ * 启动时从 agent.prompt.path 加载全部 {name}.{version}.txt（如 universal-system.v2.txt）并编译，之后只读。
+ * 文件末尾的换行不计入模板。
+ *
+ * 版本选择（{@link #selectVersion}）：
+ * - 请求选项 promptVersion 指定且存在时使用该版本
+ * - 配置了 experiment.version 时，按会话ID哈希把 experiment.percent% 的会话分到该版本（同一会话固定，便于对比与命中模型侧前缀缓存）
+ * - 否则使用 agent.prompt.version
+ * 模板缺少所选版本时回退到默认版本。
+ */
+@Slf4j
+@Component
+public class PromptRegistry {
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${agent.prompt.path:classpath:/prompts/}")
+    private String promptPath;
+
+    @Value("${agent.prompt.version:v2}")
+    private String defaultVersion;
+
+    @Value("${agent.prompt.experiment.version:}")
+    private String experimentVersion;
+
+    @Value("${agent.prompt.experiment.percent:0}")
+    private int experimentPercent;
+
+    /** name -> version -> 模板 */
+    private final Map<String, Map<String, VersionedPrompt>> prompts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        try {
+            Resource[] resources = ResourcePatternUtils.getResourcePatternResolver(resourceLoader)
+                .getResources(promptPath + "*.txt");
+            for (Resource resource : resources) {
+                String fileName = resource.getFilename();
+                int dot = fileName != null ? fileName.lastIndexOf('.', fileName.length() - 5) : -1;
+                if (dot <= 0) {
+                    log.warn("提示词文件名应为 name.version.txt，已忽略: {}", fileName);
+                    continue;
+                }
+                String name = fileName.substring(0, dot);
+                String version = fileName.substring(dot + 1, fileName.length() - 4);
+                VersionedPrompt prompt = VersionedPrompt.compile(name, version, read(resource));
+                prompts.computeIfAbsent(name, k -> new ConcurrentHashMap<>()).put(version, prompt);
+                log.info("📝 加载提示词 {}: 静态部分 {} 字符 / 约 {} tokens, 插槽 {}",
+                    prompt.getKey(), prompt.getStaticChars(), prompt.getStaticTokens(), prompt.getSlots());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载提示词模板失败: " + promptPath, e);
+        }
+        if (!experimentVersion.isBlank() && experimentPercent > 0) {
+            log.info("📝 提示词 A/B：{}% 的会话使用 {}，其余使用 {}", experimentPercent, experimentVersion, defaultVersion);
+        }
+    }
+
+    /**
+     * 选择本次调用使用的提示词版本
+     *
+     * @param sessionId 会话ID，用于 A/B 分组
+     * @param requested 请求选项 promptVersion，可为空
+     */
+    public String selectVersion(String sessionId, Object requested) {
+        if (requested instanceof String version && hasVersion(version)) {
+            return version;
+        }
+        if (!experimentVersion.isBlank() && experimentPercent > 0 && sessionId != null
+            && Math.floorMod(sessionId.hashCode(), 100) < experimentPercent) {
+            return experimentVersion;
+        }
+        return defaultVersion;
+    }
+
+    /**
+     * 获取模板，缺少该版本时回退到默认版本
+     *
+     * @throws IllegalStateException 模板不存在
+     */
+    public VersionedPrompt get(String name, String version) {
+        Map<String, VersionedPrompt> versions = prompts.getOrDefault(name, Map.of());
+        VersionedPrompt prompt = versions.get(version);
+        if (prompt == null) {
+            prompt = versions.get(defaultVersion);
+        }
+        if (prompt == null) {
+            throw new IllegalStateException("提示词模板不存在: " + name + "@" + version);
+        }
+        return prompt;
+    }
+
+    /**
+     * 各模板的固定 token 开销与使用次数，以及当前版本配置
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> templates = new TreeMap<>();
+        prompts.forEach((name, versions) -> versions.values().forEach(prompt -> {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("staticTokens", prompt.getStaticTokens());
+            map.put("staticChars", prompt.getStaticChars());
+            map.put("slots", prompt.getSlots());
+            map.put("uses", prompt.getUses());
+            templates.put(prompt.getKey(), map);
+        }));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", defaultVersion);
+        result.put("experimentVersion", experimentVersion.isBlank() ? null : experimentVersion);
+        result.put("experimentPercent", experimentPercent);
+        result.put("templates", templates);
+        return result;
+    }
+
+    private boolean hasVersion(String version) {
+        return prompts.values().stream().anyMatch(versions -> versions.containsKey(version));
+    }
+
+    private static String read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return text.endsWith("\n") ? text.substring(0, text.length() - 1) : text;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.prompt;
+
+import com.sumo.agent.core.TokenEstimator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带版本的提示词模板
+ * 加载时拆分为静态片段与 {{插槽}}，并预先估算静态部分的 token 数；渲染时只拼接插槽值（缺失的插槽为空）。
+ * 插槽值原样拼接，不做转义。
+ */
+public final class VersionedPrompt {
+
+    private final String name;
+    private final String version;
+    private final List<String> fragments;
+    private final List<String> slots;
+    private final int staticChars;
+    private final int staticTokens;
+    private final LongAdder uses = new LongAdder();
+
+    private VersionedPrompt(String name, String version, List<String> fragments, List<String> slots) {
+        this.name = name;
+        this.version = version;
+        this.fragments = fragments;
+        this.slots = slots;
+        String text = String.join("", fragments);
+        this.staticChars = text.length();
+        this.staticTokens = TokenEstimator.estimate(text);
+    }
+
+    /**
+     * 编译模板文本
+     */
+    public static VersionedPrompt compile(String name, String version, String text) {
+        List<String> fragments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = text.indexOf("{{", pos);
+            int close = open < 0 ? -1 : text.indexOf("}}", open + 2);
+            if (close < 0) {
+                fragments.add(text.substring(pos));
+                break;
+            }
+            fragments.add(text.substring(pos, open));
+            slots.add(text.substring(open + 2, close).trim());
+            pos = close + 2;
+        }
+        return new VersionedPrompt(name, version, List.copyOf(fragments), List.copyOf(slots));
+    }
+
+    /**
+     * 渲染模板
+     */
+    public String render(Map<String, String> values) {
+        uses.increment();
+        if (slots.isEmpty()) {
+            return fragments.get(0);
+        }
+        StringBuilder sb = new StringBuilder(staticChars + 256);
+        for (int i = 0; i < slots.size(); i++) {
+            sb.append(fragments.get(i));
+            String value = values.get(slots.get(i));
+            if (value != null) {
+                sb.append(value);
+            }
+        }
+        return sb.append(fragments.get(slots.size())).toString();
+    }
+
+    /**
+     * 无插槽模板的全文（系统提示词）
+     */
+    public String text() {
+        return render(Collections.emptyMap());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getKey() {
+        return name + "@" + version;
+    }
+
+    public List<String> getSlots() {
+        return slots;
+    }
+
+    /**
+     * 静态部分（不含插槽值）的估算 token 数，即每次调用的固定开销
+     */
+    public int getStaticTokens() {
+        return staticTokens;
+    }
+
+    public int getStaticChars() {
+        return staticChars;
+    }
+
+    public long getUses() {
+        return uses.sum();
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带检索结果缓存的向量存储装饰器，可包装任意 {@link VectorStore} 实现
+ *
+ * RAG 检索高度重复（查询只取决于游戏类型、年龄组与少量关键词），
+ * 以 (规范化查询, topK, 过滤条件, 返回字段) 为键缓存检索结果，命中时不再访问底层存储。
+ *
+ * 失效：
+ * - 每次 save/saveAll/delete 递增代数，条目记录写入时的代数，代数不一致即视为过期；
+ *   检索开始前读取代数，检索期间发生写入时结果以旧代数入缓存，下次访问即失效，不会缓存到旧结果
+ * - 近实时的底层存储（{@link VectorStore#writeVisibilityDelayMillis()} &gt; 0，如 Elasticsearch）写入返回时尚不可见，
+ *   在可见延迟之后再递增一次代数，丢弃这段时间内以旧数据缓存的结果
+ * - 条目超过 TTL 过期
+ * - 条目数或估算字节数超过上限时按 LRU 淘汰
+ *
+ * 缓存的是已投影的文档副本而非文档id，命中时无需再按id回查底层存储；返回给调用方的也是副本。
+ */
+@Slf4j
+public class CachingVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+
+    private final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private record Entry(List<Document> documents, long generation, long expiresAt, long bytes) {}
+
+    /**
+     * @param delegate 底层存储
+     * @param maxEntries 最大条目数
+     * @param maxBytes 缓存文档的估算字节数上限
+     * @param ttlMillis 条目有效期
+     */
+    public CachingVectorStore(VectorStore delegate, int maxEntries, long maxBytes, long ttlMillis) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public VectorStore getDelegate() {
+        return delegate;
+    }
+
+    // ==================== 写入：递增代数 ====================
+
+    @Override
+    public void save(Document document) {
+        delegate.save(document);
+        invalidate();
+    }
+
+    @Override
+    public void saveAll(List<Document> documents) {
+        // 部分失败时已写入的文档同样需要使缓存失效
+        try {
+            delegate.saveAll(documents);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void delete(String id) {
+        delegate.delete(id);
+        invalidate();
+    }
+
+    @Override
+    public long writeVisibilityDelayMillis() {
+        return delegate.writeVisibilityDelayMillis();
+    }
+
+    /**
+     * 写入后递增代数；底层存储写入不是立即可见时，在可见后再递增一次
+     */
+    private void invalidate() {
+        generation.incrementAndGet();
+        long delay = delegate.writeVisibilityDelayMillis();
+        if (delay > 0) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(generation::incrementAndGet);
+        }
+    }
+
+    @Override
+    public Document findById(String id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<Document> findAllWithMetadata(String key) {
+        return delegate.findAllWithMetadata(key);
+    }
+
+    // ==================== 检索 ====================
+
+    @Override
+    public List<Document> search(String query, int topK) {
+        String key = "q|" + normalize(query) + "|" + topK;
+        List<Document> cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        long gen = generation.get();
+        List<Document> results = delegate.search(query, topK);
+        store(key, results, gen);
+        return copy(results);
+    }
+
+    @Override
+    public CompletableFuture<List<Document>> searchAsync(String query, int topK, Executor executor) {
+        String key = "q|" + normalize(query) + "|" + topK;
+        List<Document> cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long gen = generation.get();
+        return delegate.searchAsync(query, topK, executor).thenApply(results -> {
+            store(key, results, gen);
+            return copy(results);
+        });
+    }
+
+    @Override
+    public List<Document> search(SearchRequest request) {
+        String key = cacheKey(request);
+        List<Document> cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        long gen = generation.get();
+        List<Document> results = delegate.search(request);
+        store(key, results, gen);
+        return copy(results);
+    }
+
+    @Override
+    public CompletableFuture<List<Document>> searchAsync(SearchRequest request, Executor executor) {
+        String key = cacheKey(request);
+        List<Document> cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long gen = generation.get();
+        return delegate.searchAsync(request, executor).thenApply(results -> {
+            store(key, results, gen);
+            return copy(results);
+        });
+    }
+
+    // ==================== 缓存 ====================
+
+    /**
+     * 查找未过期且代数一致的条目，命中时返回副本
+     */
+    private List<Document> lookup(String key) {
+        long now = System.currentTimeMillis();
+        long currentGeneration = generation.get();
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null) {
+                if (entry.generation() == currentGeneration && entry.expiresAt() > now) {
+                    hits.incrementAndGet();
+                    return copy(entry.documents());
+                }
+                remove(key);
+                invalidations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void store(String key, List<Document> results, long gen) {
+        if (gen != generation.get()) {
+            // 检索期间发生了写入，结果可能已过期
+            return;
+        }
+        List<Document> documents = copy(results);
+        long bytes = estimateBytes(key, documents);
+        if (bytes > maxBytes) {
+            return;
+        }
+
+        synchronized (cache) {
+            remove(key);
+            cache.put(key, new Entry(documents, gen, System.currentTimeMillis() + ttlMillis, bytes));
+            cachedBytes += bytes;
+
+            Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+            while ((cache.size() > maxEntries || cachedBytes > maxBytes) && it.hasNext()) {
+                cachedBytes -= it.next().getValue().bytes();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = cache.remove(key);
+        if (removed != null) {
+            cachedBytes -= removed.bytes();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * 缓存键：规范化查询 + topK + 过滤条件 + 返回字段，集合排序后拼接保证键稳定
+     */
+    private String cacheKey(SearchRequest request) {
+        StringBuilder key = new StringBuilder("r|")
+            .append(normalize(request.getQuery())).append('|')
+            .append(request.getTopK()).append('|')
+            .append(sorted(request.getTypes())).append('|')
+            .append(sorted(request.getGameTypes())).append('|')
+            .append(request.getMinAge()).append('|')
+            .append(request.getMaxAge()).append('|')
+            .append(request.getMinScore()).append('|')
+            .append(sorted(request.getFields()));
+        return key.toString();
+    }
+
+    /**
+     * 去除首尾空白、合并连续空白并转小写
+     */
+    private static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        return query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String sorted(Collection<?> values) {
+        if (values == null || values.isEmpty()) {
+            return "";
+        }
+        List<String> names = new ArrayList<>();
+        values.forEach(v -> names.add(String.valueOf(v)));
+        Collections.sort(names);
+        return String.join(",", names);
+    }
+
+    /**
+     * 复制文档，避免调用方修改缓存中的对象
+     */
+    private static List<Document> copy(List<Document> documents) {
+        List<Document> copies = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            Document c = new Document(doc.getId(), doc.getContent(), doc.getType());
+            if (doc.getMetadata() != null) {
+                c.getMetadata().putAll(doc.getMetadata());
+            }
+            c.setEmbedding(doc.getEmbedding());
+            copies.add(c);
+        }
+        return copies;
+    }
+
+    /**
+     * 估算条目占用：字符串按每字符2字节，向量每维4字节，另加对象头与引用开销
+     */
+    private static long estimateBytes(String key, List<Document> documents) {
+        long bytes = 64 + key.length() * 2L;
+        for (Document doc : documents) {
+            bytes += 64;
+            bytes += doc.getId() != null ? doc.getId().length() * 2L : 0;
+            bytes += doc.getContent() != null ? doc.getContent().length() * 2L : 0;
+            bytes += doc.getEmbedding() != null ? doc.getEmbedding().length * 4L : 0;
+            if (doc.getMetadata() != null) {
+                for (Map.Entry<String, Object> e : doc.getMetadata().entrySet()) {
+                    bytes += 48 + e.getKey().length() * 2L + String.valueOf(e.getValue()).length() * 2L;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("size", cache.size());
+            stats.put("bytes", cachedBytes);
+        }
+        long h = hits.get();
+        long m = misses.get();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("generation", generation.get());
+        return stats;
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 文档切分器
+ * 按知识文档的结构切分为段落级片段：
+ * - 首行标题（如“数学游戏设计模式：”）作为上下文前缀写入每个片段
+ * - 【…】 开启新小节，小节标题同样作为前缀
+ * - "- " 开头的条目及其缩进的子条目视为不可拆分的单元
+ * 单元按 max-chars 打包，相邻片段保留 overlap-chars 以内的重叠单元；
+ * 超长单元按字符硬切，相邻片段重叠 overlap-chars 个字符，重叠字符数记录在 {@link #META_OVERLAP_CHARS}。
+ *
+ * 检索时先召回片段，再用 {@link #collapse(List, int)} 合并回父文档。
+ */
+@Component
+public class DocumentChunker {
+
+    /**
+     * 元数据：父文档id
+     */
+    public static final String META_PARENT_ID = "parentId";
+
+    /**
+     * 元数据：片段序号
+     */
+    public static final String META_CHUNK_INDEX = "chunkIndex";
+
+    /**
+     * 元数据：片段前缀（标题与小节）
+     */
+    public static final String META_HEADING = "heading";
+
+    /**
+     * 元数据：与前一片段重叠的字符数（仅硬切出的后续片段，其开头接在前一片段末行之后）
+     */
+    public static final String META_OVERLAP_CHARS = "overlapChars";
+
+    @Value("${agent.rag.chunk.max-chars:300}")
+    private int maxChars = 300;
+
+    @Value("${agent.rag.chunk.overlap-chars:60}")
+    private int overlapChars = 60;
+
+    /**
+     * 切分文档
+     * 只有一个片段时id与父文档相同，否则为 父id#序号
+     */
+    public List<VectorStore.Document> chunk(String id, String content, VectorStore.DocumentType type,
+                                            Map<String, Object> metadata) {
+        if (content == null || content.isBlank()) {
+            return List.of();
+        }
+
+        List<Passage> passages = split(content.strip());
+        List<VectorStore.Document> documents = new ArrayList<>();
+        for (int i = 0; i < passages.size(); i++) {
+            Passage passage = passages.get(i);
+            String text = passage.heading().isEmpty()
+                ? passage.body()
+                : passage.heading() + "\n" + passage.body();
+
+            VectorStore.Document doc = new VectorStore.Document(
+                passages.size() == 1 ? id : id + "#" + i, text, type);
+            if (metadata != null) {
+                doc.getMetadata().putAll(metadata);
+            }
+            doc.getMetadata().put(META_PARENT_ID, id);
+            doc.getMetadata().put(META_CHUNK_INDEX, i);
+            doc.getMetadata().put(META_HEADING, passage.heading());
+            if (passage.overlapChars() >= 0) {
+                doc.getMetadata().put(META_OVERLAP_CHARS, passage.overlapChars());
+            }
+            documents.add(doc);
+        }
+        return documents;
+    }
+
+    /**
+     * 片段之间不连续（中间有片段未命中）时插入的分隔行
+     */
+    public static final String GAP_MARKER = "……";
+
+    /**
+     * 将片段级检索结果合并为父文档级结果
+     * 父文档按其最佳片段的排名排序，同一父文档的片段按原文顺序拼接：
+     * - 相邻序号的片段去掉切分时保留的重叠行（前一片段末尾与后一片段开头相同的行）；
+     *   硬切的片段按 {@link #META_OVERLAP_CHARS} 去掉开头的重叠字符，剩余部分接在前一片段末行之后
+     * - 不相邻的片段之间插入 {@link #GAP_MARKER}
+     * - 片段前缀（标题与小节）与前一片段相同的行不重复输出
+     *
+     * @param passages 按相关度排序的片段
+     * @param topK 返回的父文档数
+     */
+    public static List<VectorStore.Document> collapse(List<VectorStore.Document> passages, int topK) {
+        Map<String, List<VectorStore.Document>> grouped = new LinkedHashMap<>();
+        for (VectorStore.Document passage : passages) {
+            String parentId = parentId(passage);
+            if (grouped.size() >= topK && !grouped.containsKey(parentId)) {
+                continue;
+            }
+            grouped.computeIfAbsent(parentId, k -> new ArrayList<>()).add(passage);
+        }
+
+        List<VectorStore.Document> results = new ArrayList<>();
+        grouped.forEach((parentId, group) -> {
+            group.sort(Comparator.comparingInt(DocumentChunker::chunkIndex));
+
+            List<String> lines = new ArrayList<>();
+            List<String> previousHeading = List.of();
+            List<String> previousBody = List.of();
+            String previousText = "";
+            int previousIndex = -1;
+            for (VectorStore.Document passage : group) {
+                int index = chunkIndex(passage);
+                if (!lines.isEmpty() && index == previousIndex) {
+                    // 同一片段重复出现（如多路召回）
+                    continue;
+                }
+                List<String> heading = headingLines(passage);
+                String text = bodyOf(passage, heading);
+                List<String> body = nonBlankLines(text);
+
+                boolean contiguous = !lines.isEmpty() && index == previousIndex + 1;
+                if (!lines.isEmpty() && !contiguous) {
+                    lines.add(GAP_MARKER);
+                }
+                int same = commonPrefix(previousHeading, heading);
+                lines.addAll(heading.subList(same, heading.size()));
+
+                boolean sameHeading = contiguous && same == heading.size() && same == previousHeading.size();
+                int overlapChars = overlapChars(passage);
+                if (sameHeading && overlapChars >= 0 && overlapChars < text.length()
+                    && previousText.endsWith(text.substring(0, overlapChars))) {
+                    // 硬切片段：重叠字符之后到第一个换行为止是前一片段末行的延续
+                    String rest = text.substring(overlapChars);
+                    int newline = rest.indexOf('\n');
+                    String head = newline < 0 ? rest : rest.substring(0, newline);
+                    String previousLine = previousText.substring(previousText.lastIndexOf('\n') + 1);
+                    if (!previousLine.isBlank()) {
+                        int last = lines.size() - 1;
+                        lines.set(last, lines.get(last) + head);
+                    } else if (!(previousLine + head).isBlank()) {
+                        // 前一片段在换行处或缩进中切断，延续部分是新的一行
+                        lines.add(previousLine + head);
+                    }
+                    lines.addAll(nonBlankLines(newline < 0 ? "" : rest.substring(newline + 1)));
+                } else {
+                    int skip = sameHeading ? overlap(previousBody, body) : 0;
+                    lines.addAll(body.subList(skip, body.size()));
+                }
+
+                previousHeading = heading;
+                previousBody = body;
+                previousText = text;
+                previousIndex = index;
+            }
+
+            VectorStore.Document first = group.get(0);
+            VectorStore.Document merged = new VectorStore.Document(parentId, String.join("\n", lines), first.getType());
+            if (first.getMetadata() != null) {
+                merged.getMetadata().putAll(first.getMetadata());
+            }
+            merged.getMetadata().put("matchedChunks", group.size());
+            results.add(merged);
+        });
+        return results;
+    }
+
+    private static List<String> headingLines(VectorStore.Document doc) {
+        Object heading = doc.getMetadata() != null ? doc.getMetadata().get(META_HEADING) : null;
+        return heading == null || heading.toString().isEmpty() ? List.of() : nonBlankLines(heading.toString());
+    }
+
+    /**
+     * 去掉片段开头的前缀，得到正文
+     */
+    private static String bodyOf(VectorStore.Document doc, List<String> heading) {
+        String content = doc.getContent();
+        String prefix = String.join("\n", heading) + "\n";
+        return !heading.isEmpty() && content.startsWith(prefix) ? content.substring(prefix.length()) : content;
+    }
+
+    private static List<String> nonBlankLines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static int commonPrefix(List<String> a, List<String> b) {
+        int n = 0;
+        while (n < a.size() && n < b.size() && a.get(n).equals(b.get(n))) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * 前一片段末尾与后一片段开头相同的最长行数
+     */
+    private static int overlap(List<String> previous, List<String> current) {
+        for (int k = Math.min(previous.size(), current.size()); k > 0; k--) {
+            if (previous.subList(previous.size() - k, previous.size()).equals(current.subList(0, k))) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    private static String parentId(VectorStore.Document doc) {
+        Object parentId = doc.getMetadata() != null ? doc.getMetadata().get(META_PARENT_ID) : null;
+        return parentId != null ? parentId.toString() : doc.getId();
+    }
+
+    private static int overlapChars(VectorStore.Document doc) {
+        Object chars = doc.getMetadata() != null ? doc.getMetadata().get(META_OVERLAP_CHARS) : null;
+        return chars instanceof Number n ? n.intValue() : -1;
+    }
+
+    private static int chunkIndex(VectorStore.Document doc) {
+        Object index = doc.getMetadata() != null ? doc.getMetadata().get(META_CHUNK_INDEX) : null;
+        return index instanceof Number n ? n.intValue() : 0;
+    }
+
+    // ==================== 切分 ====================
+
+    /**
+     * 切分单元：所属小节标题 + 文本
+     */
+    private record Unit(String section, String text) {}
+
+    /**
+     * @param overlapChars 硬切时与前一片段重叠的字符数，不是硬切出的后续片段时为 -1
+     */
+    private record Passage(String heading, String body, int overlapChars) {
+
+        Passage(String heading, String body) {
+            this(heading, body, -1);
+        }
+    }
+
+    private List<Passage> split(String content) {
+        String[] lines = content.split("\n");
+
+        // 首行以冒号结尾视为文档标题
+        String title = "";
+        int startLine = 0;
+        if (lines.length > 1 && (lines[0].endsWith("：") || lines[0].endsWith(":"))) {
+            title = lines[0].strip();
+            startLine = 1;
+        }
+
+        List<Unit> units = toUnits(lines, startLine);
+        List<Passage> passages = new ArrayList<>();
+
+        List<Unit> current = new ArrayList<>();
+        int currentChars = 0;
+        for (Unit unit : units) {
+            boolean sectionChanged = !current.isEmpty()
+                && !current.get(current.size() - 1).section().equals(unit.section());
+            if (!current.isEmpty() && (sectionChanged || currentChars + unit.text().length() > maxChars)) {
+                passages.add(toPassage(title, current));
+                current = sectionChanged ? new ArrayList<>() : overlapTail(current);
+                currentChars = current.stream().mapToInt(u -> u.text().length()).sum();
+            }
+
+            if (unit.text().length() > maxChars) {
+                // 单个条目超长，按字符硬切
+                if (!current.isEmpty()) {
+                    passages.add(toPassage(title, current));
+                    current = new ArrayList<>();
+                    currentChars = 0;
+                }
+                List<String> pieces = hardSplit(unit.text());
+                int overlap = maxChars - hardSplitStep();
+                for (int i = 0; i < pieces.size(); i++) {
+                    Passage passage = toPassage(title, List.of(new Unit(unit.section(), pieces.get(i))));
+                    passages.add(i == 0 ? passage : new Passage(passage.heading(), passage.body(), overlap));
+                }
+                continue;
+            }
+
+            current.add(unit);
+            currentChars += unit.text().length();
+        }
+        if (!current.isEmpty()) {
+            passages.add(toPassage(title, current));
+        }
+        if (passages.isEmpty()) {
+            passages.add(new Passage("", title));
+        }
+        return passages;
+    }
+
+    /**
+     * 将行合并为单元：【…】 切换小节，"- " 开启新条目，缩进行归属上一条目
+     */
+    private List<Unit> toUnits(String[] lines, int startLine) {
+        List<Unit> units = new ArrayList<>();
+        String section = "";
+        StringBuilder current = null;
+
+        for (int i = startLine; i < lines.length; i++) {
+            String line = lines[i];
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+
+            if (trimmed.startsWith("【") && trimmed.contains("】")) {
+                if (current != null) {
+                    units.add(new Unit(section, current.toString()));
+                    current = null;
+                }
+                section = trimmed;
+                continue;
+            }
+
+            boolean continuation = current != null && (line.startsWith(" ") || line.startsWith("\t"));
+            if (continuation) {
+                current.append("\n").append(line.stripTrailing());
+            } else {
+                if (current != null) {
+                    units.add(new Unit(section, current.toString()));
+                }
+                current = new StringBuilder(trimmed);
+            }
+        }
+        if (current != null) {
+            units.add(new Unit(section, current.toString()));
+        }
+        return units;
+    }
+
+    private Passage toPassage(String title, List<Unit> units) {
+        String section = units.get(0).section();
+        String heading = title.isEmpty() ? section
+            : section.isEmpty() ? title : title + "\n" + section;
+
+        StringBuilder body = new StringBuilder();
+        for (Unit unit : units) {
+            if (body.length() > 0) {
+                body.append("\n");
+            }
+            body.append(unit.text());
+        }
+        return new Passage(heading, body.toString());
+    }
+
+    /**
+     * 取末尾不超过 overlap-chars 的单元作为下一片段的开头
+     */
+    private List<Unit> overlapTail(List<Unit> units) {
+        LinkedList<Unit> tail = new LinkedList<>();
+        int chars = 0;
+        for (int i = units.size() - 1; i > 0; i--) {
+            Unit unit = units.get(i);
+            if (chars + unit.text().length() > overlapChars) {
+                break;
+            }
+            tail.addFirst(unit);
+            chars += unit.text().length();
+        }
+        return new ArrayList<>(tail);
+    }
+
+    /**
+     * 按 max-chars 硬切，除最后一片外每片长度均为 max-chars，相邻片段重叠 max-chars - step 个字符
+     */
+    private List<String> hardSplit(String text) {
+        List<String> pieces = new ArrayList<>();
+        int step = hardSplitStep();
+        for (int start = 0; start < text.length(); start += step) {
+            pieces.add(text.substring(start, Math.min(text.length(), start + maxChars)));
+            if (start + maxChars >= text.length()) {
+                break;
+            }
+        }
+        return pieces;
+    }
+
+    private int hardSplitStep() {
+        return Math.max(1, maxChars - overlapChars);
+    }
+}
@@ -4,27 +4,46 @@
  */
 package com.sumo.agent.rag;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.*;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
+import co.elastic.clients.elasticsearch.indices.GetMappingResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.get_mapping.IndexMappingRecord;
+import co.elastic.clients.json.JsonData;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.elasticsearch.client.RestClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import lombok.Builder;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Elasticsearch向量存储实现
@@ -37,28 +56,129 @@ public class ElasticsearchVectorStore implements VectorStore {
     
     private static final String INDEX_NAME = "game_knowledge";
     
+    /**
+     * 遍历文档时每页的文档数
+     */
+    private static final int SCAN_PAGE_SIZE = 1000;
+    
     @Value("${agent.rag.elasticsearch.host:localhost}")
     private String host;
     
     @Value("${agent.rag.elasticsearch.port:9200}")
     private int port;
     
+    /**
+     * 单个bulk请求最多包含的操作数
+     */
+    @Value("${agent.rag.elasticsearch.bulk.max-operations:500}")
+    private int bulkMaxOperations;
+    
+    /**
+     * 单个bulk请求的最大字节数
+     */
+    @Value("${agent.rag.elasticsearch.bulk.max-bytes:5242880}")
+    private long bulkMaxBytes;
+    
+    /**
+     * 未满批次的定时刷新间隔（毫秒）
+     */
+    @Value("${agent.rag.elasticsearch.bulk.flush-interval-ms:1000}")
+    private long bulkFlushIntervalMs;
+    
+    /**
+     * 同时在途的bulk请求数，超出时写入方阻塞（背压）
+     */
+    @Value("${agent.rag.elasticsearch.bulk.max-concurrent-requests:2}")
+    private int bulkMaxConcurrentRequests;
+    
+    /**
+     * 批量文档数达到该值时视为初始加载，期间关闭索引刷新
+     */
+    @Value("${agent.rag.elasticsearch.bulk.disable-refresh-threshold:1000}")
+    private int disableRefreshThreshold;
+    
+    /**
+     * 加载结束后恢复的刷新间隔
+     */
+    @Value("${agent.rag.elasticsearch.refresh-interval:1s}")
+    private String refreshInterval;
+    
+    /**
+     * 进行中的关闭刷新的批量加载数，第一个加载关闭刷新、最后一个结束时恢复
+     */
+    private int refreshDisabledLoads;
+    
+    private final Object refreshLock = new Object();
+    
+    @Value("${agent.rag.elasticsearch.hybrid.fusion:RRF}")
+    private FusionMode hybridFusion;
+    
+    @Value("${agent.rag.elasticsearch.hybrid.rrf-k:60}")
+    private int rrfK;
+    
+    @Value("${agent.rag.elasticsearch.hybrid.lexical-candidates:50}")
+    private int hybridLexicalCandidates;
+    
+    @Value("${agent.rag.elasticsearch.hybrid.vector-candidates:50}")
+    private int hybridVectorCandidates;
+    
+    @Value("${agent.rag.elasticsearch.hybrid.num-candidates:100}")
+    private int hybridNumCandidates;
+    
+    @Value("${agent.rag.elasticsearch.hybrid.vector-weight:0.5}")
+    private double hybridVectorWeight;
+    
+    @Value("${agent.rag.elasticsearch.client.max-conn-total:64}")
+    private int maxConnTotal;
+    
+    @Value("${agent.rag.elasticsearch.client.max-conn-per-route:32}")
+    private int maxConnPerRoute;
+    
+    @Value("${agent.rag.elasticsearch.client.io-threads:2}")
+    private int ioThreads;
+    
+    @Value("${agent.rag.elasticsearch.client.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+    
+    @Value("${agent.rag.elasticsearch.client.socket-timeout-ms:5000}")
+    private int socketTimeoutMs;
+    
+    /**
+     * 从连接池获取连接的等待超时
+     */
+    @Value("${agent.rag.elasticsearch.client.connection-request-timeout-ms:500}")
+    private int connectionRequestTimeoutMs;
+    
     private ElasticsearchClient client;
+    private ElasticsearchAsyncClient asyncClient;
     private RestClient restClient;
     
     @PostConstruct
     public void init() {
         try {
-            // 创建REST客户端
+            // 创建REST客户端（连接池与超时）
             restClient = RestClient.builder(
                 new HttpHost(host, port, "http")
-            ).build();
+            )
+            .setRequestConfigCallback(rc -> rc
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(socketTimeoutMs)
+                .setConnectionRequestTimeout(connectionRequestTimeoutMs))
+            .setHttpClientConfigCallback(hc -> hc
+                .setMaxConnTotal(maxConnTotal)
+                .setMaxConnPerRoute(maxConnPerRoute)
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                    .setIoThreadCount(ioThreads)
+                    .setSoKeepAlive(true)
+                    .build()))
+            .build();
             
-            // 创建Elasticsearch客户端
+            // 创建Elasticsearch客户端，同步与异步客户端共享同一连接池
             ElasticsearchTransport transport = new RestClientTransport(
                 restClient, new JacksonJsonpMapper()
             );
             client = new ElasticsearchClient(transport);
+            asyncClient = new ElasticsearchAsyncClient(transport);
             
             // 创建索引
             createIndexIfNotExists();
@@ -105,7 +225,14 @@ public class ElasticsearchVectorStore implements VectorStore {
                       "index": true,
                       "similarity": "cosine"
                     },
-                    "metadata": { "type": "object" },
+                    "metadata": {
+                      "type": "object",
+                      "properties": {
+                        "gameType": { "type": "keyword" },
+                        "minAge": { "type": "integer" },
+                        "maxAge": { "type": "integer" }
+                      }
+                    },
                     "created_at": { "type": "date" }
                   }
                 }
@@ -118,28 +245,85 @@ public class ElasticsearchVectorStore implements VectorStore {
             
             client.indices().create(createRequest);
             log.info("📚 创建索引: {}", INDEX_NAME);
+        } else {
+            ensureMetadataMapping();
+            resetDisabledRefresh();
+        }
+    }
+    
+    /**
+     * 上次批量加载期间进程退出会使索引停留在关闭刷新（"-1"）状态，写入永远不可见，启动时恢复
+     */
+    private void resetDisabledRefresh() throws IOException {
+        IndexSettings settings = client.indices().getSettings(g -> g.index(INDEX_NAME)).get(INDEX_NAME).settings();
+        Time interval = settings == null ? null
+            : settings.index() != null ? settings.index().refreshInterval() : settings.refreshInterval();
+        boolean disabled = interval != null
+            && (interval.isTime() ? "-1".equals(interval.time()) : interval.isOffset() && interval.offset() == -1);
+        if (disabled) {
+            log.warn("⚠️ 索引 {} 的自动刷新处于关闭状态（上次批量加载未正常结束），恢复为 {}", INDEX_NAME, refreshInterval);
+            updateRefreshInterval(refreshInterval);
+            refreshIndex();
+        }
+    }
+    
+    /**
+     * 检查已存在索引的 metadata 过滤字段映射
+     * 早期创建的索引没有 gameType / minAge / maxAge 的显式映射：字段尚未出现时补充映射；
+     * 已被动态映射为其他类型（如 gameType 成为分词的 text）时无法原地修改，按类型的精确过滤不可靠，需重建索引。
+     */
+    private void ensureMetadataMapping() throws IOException {
+        GetMappingResponse response = client.indices().getMapping(g -> g.index(INDEX_NAME));
+        Map<String, Property> metadata = Map.of();
+        for (IndexMappingRecord record : response.result().values()) {
+            Property property = record.mappings().properties().get("metadata");
+            if (property != null && property.isObject()) {
+                metadata = property.object().properties();
+            }
+        }
+        
+        List<String> missing = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        Property gameType = metadata.get("gameType");
+        if (gameType == null) {
+            missing.add("gameType");
+        } else if (!gameType.isKeyword()) {
+            conflicts.add("gameType=" + gameType._kind().jsonValue());
+        }
+        for (String field : List.of("minAge", "maxAge")) {
+            Property age = metadata.get(field);
+            if (age == null) {
+                missing.add(field);
+            } else if (!age.isInteger() && !age.isLong() && !age.isShort()) {
+                conflicts.add(field + "=" + age._kind().jsonValue());
+            }
+        }
+        
+        if (!missing.isEmpty()) {
+            client.indices().putMapping(p -> p
+                .index(INDEX_NAME)
+                .properties("metadata", m -> m.object(o -> {
+                    for (String field : missing) {
+                        o.properties(field, "gameType".equals(field) ? f -> f.keyword(k -> k) : f -> f.integer(i -> i));
+                    }
+                    return o;
+                })));
+            log.info("📚 索引 {} 补充 metadata 字段映射: {}", INDEX_NAME, missing);
+        }
+        if (!conflicts.isEmpty()) {
+            log.error("❌ 索引 {} 的 metadata 字段映射与当前版本不一致 {}（应为 gameType=keyword, minAge/maxAge=integer），"
+                + "按游戏类型/年龄的过滤结果将不准确。字段类型无法原地修改，请删除索引后重启自动重建并重新导入知识，"
+                + "或新建索引后使用 _reindex 迁移数据", INDEX_NAME, conflicts);
         }
     }
     
     @Override
     public void save(Document document) {
         try {
-            // 如果没有embedding，生成一个模拟的
-            if (document.getEmbedding() == null) {
-                document.setEmbedding(generateMockEmbedding(document.getContent()));
-            }
-            
-            // 构建ES文档
-            Map<String, Object> esDoc = new HashMap<>();
-            esDoc.put("id", document.getId());
-            esDoc.put("content", document.getContent());
-            esDoc.put("type", document.getType().name());
-            esDoc.put("embedding", document.getEmbedding());
-            esDoc.put("metadata", document.getMetadata());
-            esDoc.put("created_at", new Date());
+            KnowledgeDocumentSource esDoc = toEsDoc(document);
             
             // 索引文档
-            IndexRequest<Map<String, Object>> request = IndexRequest.of(i -> i
+            IndexRequest<KnowledgeDocumentSource> request = IndexRequest.of(i -> i
                 .index(INDEX_NAME)
                 .id(document.getId())
                 .document(esDoc)
@@ -154,54 +338,346 @@ public class ElasticsearchVectorStore implements VectorStore {
         }
     }
     
+    /**
+     * 批量保存，与 {@link #save} 一致：有文档写入失败时抛出异常（其余文档已写入），
+     * 需要逐条失败原因时使用 {@link #bulkIndex}
+     *
+     * @throws RuntimeException 部分或全部文档写入失败，消息中列出失败的id
+     */
     @Override
     public void saveAll(List<Document> documents) {
-        documents.forEach(this::save);
-        log.info("📚 批量保存 {} 个文档", documents.size());
+        BulkIndexResult result = bulkIndex(documents);
+        log.info("📚 批量保存 {} 个文档: 成功 {}, 失败 {}, 耗时 {}ms",
+            result.total(), result.succeeded(), result.failures().size(), result.tookMs());
+        if (!result.failures().isEmpty()) {
+            throw new RuntimeException("批量保存文档失败: " + result.failures().size() + "/" + result.total()
+                + " 个文档未写入 " + result.failures().keySet());
+        }
     }
     
+    /**
+     * 通过 _bulk API 批量写入文档
+     * 按条数/字节数/时间间隔自动分批，在途请求数受限，超出时调用方阻塞
+     * 
+     * @return 写入结果，包含每个失败文档的错误原因
+     */
+    public BulkIndexResult bulkIndex(List<Document> documents) {
+        long start = System.currentTimeMillis();
+        if (documents.isEmpty()) {
+            return new BulkIndexResult(0, 0, Map.of(), 0);
+        }
+        
+        boolean initialLoad = documents.size() >= disableRefreshThreshold;
+        if (initialLoad) {
+            disableRefresh();
+        }
+        
+        AtomicInteger succeeded = new AtomicInteger();
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        
+        BulkListener<String> listener = new BulkListener<>() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request, List<String> contexts) {
+                log.debug("📦 提交bulk请求 #{}: {} 个文档", executionId, contexts.size());
+            }
+            
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, List<String> contexts, BulkResponse response) {
+                List<BulkResponseItem> items = response.items();
+                for (int i = 0; i < items.size(); i++) {
+                    BulkResponseItem item = items.get(i);
+                    if (item.error() != null) {
+                        String id = i < contexts.size() ? contexts.get(i) : item.id();
+                        failures.put(id, item.error().type() + ": " + item.error().reason());
+                    } else {
+                        succeeded.incrementAndGet();
+                    }
+                }
+            }
+            
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, List<String> contexts, Throwable failure) {
+                log.error("bulk请求 #{} 失败", executionId, failure);
+                contexts.forEach(id -> failures.put(id, String.valueOf(failure.getMessage())));
+            }
+        };
+        
+        try (BulkIngester<String> ingester = BulkIngester.of(b -> b
+                .client(client)
+                .maxOperations(bulkMaxOperations)
+                .maxSize(bulkMaxBytes)
+                .maxConcurrentRequests(bulkMaxConcurrentRequests)
+                .flushInterval(bulkFlushIntervalMs, TimeUnit.MILLISECONDS)
+                .listener(listener))) {
+            
+            for (Document document : documents) {
+                KnowledgeDocumentSource esDoc = toEsDoc(document);
+                ingester.add(op -> op.index(idx -> idx
+                    .index(INDEX_NAME)
+                    .id(document.getId())
+                    .document(esDoc)
+                ), document.getId());
+            }
+        } finally {
+            // close() 会等待所有在途请求完成
+            if (initialLoad) {
+                restoreRefresh();
+                refreshIndex();
+            }
+        }
+        
+        failures.forEach((id, reason) -> log.warn("⚠️ 文档写入失败: {} -> {}", id, reason));
+        return new BulkIndexResult(documents.size(), succeeded.get(), failures,
+            System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * 融合方式
+     */
+    public enum FusionMode {
+        /** 倒数排名融合 */
+        RRF,
+        /** 分数归一化后加权 */
+        WEIGHTED
+    }
+    
+    /**
+     * 混合检索参数
+     * 为null的字段使用 agent.rag.elasticsearch.hybrid 下的默认值
+     */
+    @Data
+    @Builder
+    public static class HybridQuery {
+        private String query;
+        private int topK;
+        /** 文本检索候选数，0表示跳过该阶段 */
+        private Integer lexicalCandidates;
+        /** 向量检索候选数（knn k），0表示跳过该阶段 */
+        private Integer vectorCandidates;
+        /** knn 每个分片的 num_candidates，越大召回越高、延迟越高 */
+        private Integer numCandidates;
+        private FusionMode fusion;
+        /** WEIGHTED 模式下向量分数的权重（0-1） */
+        private Double vectorWeight;
+        /** 文档类型过滤，为空表示不过滤 */
+        private Set<DocumentType> types;
+        /** 元数据 gameType 过滤，未声明 gameType 的文档总是通过 */
+        private Set<String> gameTypes;
+        /** 年龄区间过滤，与文档 [minAge, maxAge] 有交集即通过 */
+        private Integer minAge;
+        private Integer maxAge;
+        /** 融合后分数的下限（WEIGHTED 为0-1，RRF 为倒数排名之和） */
+        private Double minScore;
+        /** 返回的字段，为null时返回内容与元数据；未包含的字段通过 _source 过滤排除 */
+        private Set<SearchRequest.Field> fields;
+        
+        /**
+         * 由通用检索请求构建
+         */
+        public static HybridQuery from(SearchRequest request) {
+            return HybridQuery.builder()
+                .query(request.getQuery())
+                .topK(request.getTopK())
+                .types(request.getTypes())
+                .gameTypes(request.getGameTypes())
+                .minAge(request.getMinAge())
+                .maxAge(request.getMaxAge())
+                .minScore(request.getMinScore())
+                .fields(request.getFields())
+                .build();
+        }
+    }
+    
+    /**
+     * 单个检索阶段的统计
+     * 
+     * @param stage 阶段名称
+     * @param tookMicros 耗时（微秒）
+     * @param candidates 该阶段返回的候选数
+     * @param contributed 最终结果中来自该阶段的文档数
+     */
+    public record StageStats(
+        String stage,
+        long tookMicros,
+        int candidates,
+        int contributed
+    ) {}
+    
+    /**
+     * 混合检索结果
+     */
+    public record HybridSearchResult(
+        List<Document> documents,
+        List<StageStats> stages,
+        long tookMicros
+    ) {}
+    
+    /**
+     * 批量写入结果
+     */
+    public record BulkIndexResult(
+        int total,
+        int succeeded,
+        Map<String, String> failures,
+        long tookMs
+    ) {}
+    
     @Override
     public List<Document> search(String query, int topK) {
+        return hybridSearch(HybridQuery.builder()
+            .query(query)
+            .topK(topK)
+            .build()
+        ).documents();
+    }
+    
+    @Override
+    public CompletableFuture<List<Document>> searchAsync(String query, int topK, Executor executor) {
+        // 异步客户端本身不占用调用线程，无需线程池
+        return hybridSearchAsync(HybridQuery.builder()
+            .query(query)
+            .topK(topK)
+            .build()
+        ).thenApply(HybridSearchResult::documents);
+    }
+    
+    @Override
+    public List<Document> search(SearchRequest request) {
+        return hybridSearch(HybridQuery.from(request)).documents();
+    }
+    
+    @Override
+    public CompletableFuture<List<Document>> searchAsync(SearchRequest request, Executor executor) {
+        return hybridSearchAsync(HybridQuery.from(request)).thenApply(HybridSearchResult::documents);
+    }
+    
+    /**
+     * 混合检索
+     * 文本检索与向量检索分别召回候选集，再按 RRF 或加权归一化融合，
+     * 避免 ES 直接把 BM25 与余弦相似度这两种量纲不同的分数相加。
+     * 
+     * @param hybridQuery 查询参数，未设置的字段使用配置默认值
+     * @return 融合后的结果与各阶段耗时、召回统计
+     */
+    public HybridSearchResult hybridSearch(HybridQuery hybridQuery) {
+        long start = System.nanoTime();
         try {
-            // 生成查询向量（实际应用中应使用真实的embedding模型）
-            float[] queryVector = generateMockEmbedding(query);
-            
-            // 构建混合查询（向量 + 文本）
-            SearchRequest searchRequest = SearchRequest.of(s -> s
+            return hybridSearchAsync(hybridQuery).join();
+        } catch (Exception e) {
+            log.error("搜索失败", e);
+            return new HybridSearchResult(new ArrayList<>(), List.of(), (System.nanoTime() - start) / 1_000);
+        }
+    }
+    
+    /**
+     * 异步混合检索
+     * 两路候选集通过异步客户端并发请求，总延迟约等于较慢的一路
+     */
+    public CompletableFuture<HybridSearchResult> hybridSearchAsync(HybridQuery hybridQuery) {
+        long start = System.nanoTime();
+        String query = hybridQuery.getQuery();
+        int topK = hybridQuery.getTopK();
+        int lexicalCandidates = orDefault(hybridQuery.getLexicalCandidates(), hybridLexicalCandidates);
+        int vectorCandidates = orDefault(hybridQuery.getVectorCandidates(), hybridVectorCandidates);
+        int numCandidates = Math.max(vectorCandidates, orDefault(hybridQuery.getNumCandidates(), hybridNumCandidates));
+        FusionMode fusion = hybridQuery.getFusion() != null ? hybridQuery.getFusion() : hybridFusion;
+        double vectorWeight = hybridQuery.getVectorWeight() != null ? hybridQuery.getVectorWeight() : hybridVectorWeight;
+        List<Query> filters = buildFilters(hybridQuery);
+        List<String> excludes = sourceExcludes(hybridQuery.getFields());
+        
+        // 1. 文本检索候选集（各阶段耗时从构建请求前开始计，包含序列化与发送）
+        CompletableFuture<StageHits> lexical;
+        if (lexicalCandidates <= 0) {
+            lexical = CompletableFuture.completedFuture(StageHits.EMPTY);
+        } else {
+            long lexicalStart = System.nanoTime();
+            lexical = timed(asyncClient.search(s -> s
+                .index(INDEX_NAME)
+                .size(lexicalCandidates)
+                .source(src -> src.filter(f -> f.excludes(excludes)))
+                .query(q -> q.bool(b -> b
+                    .must(m -> m.match(mt -> mt.field("content").query(query)))
+                    .filter(filters)
+                )), KnowledgeDocumentSource.class), lexicalStart);
+        }
+        
+        // 2. 向量检索候选集（实际应用中应使用真实的embedding模型）
+        CompletableFuture<StageHits> vector;
+        if (vectorCandidates <= 0) {
+            vector = CompletableFuture.completedFuture(StageHits.EMPTY);
+        } else {
+            long vectorStart = System.nanoTime();
+            List<Float> queryVector = floatArrayToDoubleList(generateMockEmbedding(query));
+            vector = timed(asyncClient.search(s -> s
                 .index(INDEX_NAME)
-                .size(topK)
-                // KNN向量搜索
+                .size(vectorCandidates)
+                .source(src -> src.filter(f -> f.excludes(excludes)))
                 .knn(k -> k
                     .field("embedding")
-                    .queryVector(floatArrayToDoubleList(queryVector))
-                    .k(topK)
-                    .numCandidates(topK * 2)
-                )
-                // 文本搜索（可选，增强相关性）
-                .query(q -> q
-                    .match(m -> m
-                        .field("content")
-                        .query(query)
-                    )
-                )
-            );
+                    .queryVector(queryVector)
+                    .k(vectorCandidates)
+                    .numCandidates(numCandidates)
+                    .filter(filters)
+                ), KnowledgeDocumentSource.class), vectorStart);
+        }
+        
+        return lexical.thenCombine(vector, (lexicalStage, vectorStage) -> {
+            List<Hit<KnowledgeDocumentSource>> lexicalHits = lexicalStage.hits();
+            List<Hit<KnowledgeDocumentSource>> vectorHits = vectorStage.hits();
+            
+            // 3. 融合排序
+            long fusionStart = System.nanoTime();
+            Map<String, Double> fused = fusion == FusionMode.WEIGHTED
+                ? fuseWeighted(lexicalHits, vectorHits, vectorWeight)
+                : fuseRrf(lexicalHits, vectorHits);
             
-            SearchResponse<Map> response = client.search(searchRequest, Map.class);
+            Map<String, KnowledgeDocumentSource> sources = new HashMap<>();
+            vectorHits.forEach(h -> sources.put(h.id(), h.source()));
+            lexicalHits.forEach(h -> sources.put(h.id(), h.source()));
+            
+            List<String> rankedIds = fused.entrySet().stream()
+                .filter(e -> hybridQuery.getMinScore() == null || e.getValue() >= hybridQuery.getMinScore())
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topK)
+                .map(Map.Entry::getKey)
+                .toList();
             
-            // 转换结果
             List<Document> results = new ArrayList<>();
-            for (Hit<Map> hit : response.hits().hits()) {
-                Document doc = convertToDocument(hit.source());
-                results.add(doc);
+            for (String id : rankedIds) {
+                results.add(sources.get(id).toDocument());
             }
+            long fusionMicros = (System.nanoTime() - fusionStart) / 1_000;
             
-            log.debug("🔍 搜索 '{}' 返回 {} 个结果", query, results.size());
-            return results;
+            // 4. 各阶段对最终结果的贡献（召回）
+            Set<String> lexicalIds = new HashSet<>();
+            lexicalHits.forEach(h -> lexicalIds.add(h.id()));
+            Set<String> vectorIds = new HashSet<>();
+            vectorHits.forEach(h -> vectorIds.add(h.id()));
             
-        } catch (IOException e) {
-            log.error("搜索失败", e);
-            return new ArrayList<>();
-        }
+            List<StageStats> stages = List.of(
+                new StageStats("lexical", lexicalStage.tookMicros(), lexicalHits.size(),
+                    (int) rankedIds.stream().filter(lexicalIds::contains).count()),
+                new StageStats("vector", vectorStage.tookMicros(), vectorHits.size(),
+                    (int) rankedIds.stream().filter(vectorIds::contains).count()),
+                new StageStats("fusion", fusionMicros, fused.size(), results.size())
+            );
+            
+            long totalMicros = (System.nanoTime() - start) / 1_000;
+            log.debug("🔍 混合搜索 '{}' 返回 {} 个结果, 融合方式: {}, 阶段: {}", query, results.size(), fusion, stages);
+            return new HybridSearchResult(results, stages, totalMicros);
+        });
+    }
+    
+    /**
+     * 单路检索的命中与耗时
+     */
+    private record StageHits(List<Hit<KnowledgeDocumentSource>> hits, long tookMicros) {
+        static final StageHits EMPTY = new StageHits(List.of(), 0);
+    }
+    
+    private CompletableFuture<StageHits> timed(CompletableFuture<SearchResponse<KnowledgeDocumentSource>> future, long startNanos) {
+        return future.thenApply(response -> new StageHits(
+            response.hits().hits(), (System.nanoTime() - startNanos) / 1_000));
     }
     
     @Override
@@ -212,10 +688,10 @@ public class ElasticsearchVectorStore implements VectorStore {
                 .id(id)
             );
             
-            GetResponse<Map> response = client.get(getRequest, Map.class);
+            GetResponse<KnowledgeDocumentSource> response = client.get(getRequest, KnowledgeDocumentSource.class);
             
             if (response.found()) {
-                return convertToDocument(response.source());
+                return response.source().toDocument();
             }
             return null;
             
@@ -225,6 +701,45 @@ public class ElasticsearchVectorStore implements VectorStore {
         }
     }
     
+    /**
+     * 按 id 排序用 search_after 分页遍历，不返回向量
+     */
+    @Override
+    public List<Document> findAllWithMetadata(String key) {
+        List<Document> documents = new ArrayList<>();
+        List<FieldValue> after = null;
+        try {
+            while (true) {
+                List<FieldValue> searchAfter = after;
+                SearchResponse<KnowledgeDocumentSource> response = client.search(s -> {
+                    s.index(INDEX_NAME)
+                        .size(SCAN_PAGE_SIZE)
+                        .source(src -> src.filter(f -> f.excludes("embedding")))
+                        .query(q -> q.exists(e -> e.field("metadata." + key)))
+                        .sort(so -> so.field(f -> f.field("id")));
+                    if (searchAfter != null) {
+                        s.searchAfter(searchAfter);
+                    }
+                    return s;
+                }, KnowledgeDocumentSource.class);
+                
+                List<Hit<KnowledgeDocumentSource>> hits = response.hits().hits();
+                for (Hit<KnowledgeDocumentSource> hit : hits) {
+                    Document doc = hit.source().toDocument();
+                    doc.setId(hit.id());
+                    documents.add(doc);
+                }
+                if (hits.size() < SCAN_PAGE_SIZE) {
+                    return documents;
+                }
+                after = hits.get(hits.size() - 1).sort();
+            }
+        } catch (IOException e) {
+            log.error("遍历文档失败: metadata.{}", key, e);
+            throw new RuntimeException("遍历文档失败", e);
+        }
+    }
+    
     @Override
     public void delete(String id) {
         try {
@@ -241,6 +756,202 @@ public class ElasticsearchVectorStore implements VectorStore {
         }
     }
     
+    /**
+     * 过滤条件，在文本查询与knn中都以filter上下文下推，不参与打分且可被ES缓存
+     */
+    private List<Query> buildFilters(HybridQuery hybridQuery) {
+        List<Query> filters = new ArrayList<>();
+        
+        Set<DocumentType> types = hybridQuery.getTypes();
+        if (types != null && !types.isEmpty()) {
+            List<FieldValue> values = types.stream()
+                .map(t -> FieldValue.of(t.name()))
+                .toList();
+            filters.add(Query.of(q -> q.terms(t -> t
+                .field("type")
+                .terms(v -> v.value(values))
+            )));
+        }
+        
+        Set<String> gameTypes = hybridQuery.getGameTypes();
+        if (gameTypes != null && !gameTypes.isEmpty()) {
+            List<FieldValue> values = gameTypes.stream()
+                .map(FieldValue::of)
+                .toList();
+            filters.add(orMissing("metadata.gameType", Query.of(q -> q.terms(t -> t
+                .field("metadata.gameType")
+                .terms(v -> v.value(values))
+            ))));
+        }
+        
+        // 区间相交：doc.maxAge >= minAge 且 doc.minAge <= maxAge
+        if (hybridQuery.getMinAge() != null) {
+            filters.add(orMissing("metadata.maxAge", Query.of(q -> q.range(r -> r
+                .field("metadata.maxAge")
+                .gte(JsonData.of(hybridQuery.getMinAge()))
+            ))));
+        }
+        if (hybridQuery.getMaxAge() != null) {
+            filters.add(orMissing("metadata.minAge", Query.of(q -> q.range(r -> r
+                .field("metadata.minAge")
+                .lte(JsonData.of(hybridQuery.getMaxAge()))
+            ))));
+        }
+        return filters;
+    }
+    
+    /**
+     * 满足条件或未声明该字段（通用知识）
+     */
+    private Query orMissing(String field, Query condition) {
+        return Query.of(q -> q.bool(b -> b
+            .should(condition)
+            .should(s -> s.bool(nb -> nb.mustNot(m -> m.exists(e -> e.field(field)))))
+            .minimumShouldMatch("1")
+        ));
+    }
+    
+    /**
+     * 未请求的字段通过 _source 过滤排除，减少传输与反序列化
+     */
+    private List<String> sourceExcludes(Set<SearchRequest.Field> fields) {
+        List<String> excludes = new ArrayList<>();
+        if (fields == null || !fields.contains(SearchRequest.Field.EMBEDDING)) {
+            excludes.add("embedding");
+        }
+        if (fields != null && !fields.contains(SearchRequest.Field.CONTENT)) {
+            excludes.add("content");
+        }
+        if (fields != null && !fields.contains(SearchRequest.Field.METADATA)) {
+            excludes.add("metadata");
+        }
+        return excludes;
+    }
+    
+    /**
+     * 倒数排名融合：score = Σ 1 / (k + rank)
+     */
+    private Map<String, Double> fuseRrf(List<Hit<KnowledgeDocumentSource>> lexicalHits, List<Hit<KnowledgeDocumentSource>> vectorHits) {
+        Map<String, Double> scores = new HashMap<>();
+        for (int i = 0; i < lexicalHits.size(); i++) {
+            scores.merge(lexicalHits.get(i).id(), 1.0 / (rrfK + i + 1), Double::sum);
+        }
+        for (int i = 0; i < vectorHits.size(); i++) {
+            scores.merge(vectorHits.get(i).id(), 1.0 / (rrfK + i + 1), Double::sum);
+        }
+        return scores;
+    }
+    
+    /**
+     * 加权融合：两路分数各自做 min-max 归一化后按权重相加
+     */
+    private Map<String, Double> fuseWeighted(List<Hit<KnowledgeDocumentSource>> lexicalHits, List<Hit<KnowledgeDocumentSource>> vectorHits, double vectorWeight) {
+        Map<String, Double> scores = new HashMap<>();
+        normalizeScores(lexicalHits).forEach((id, score) ->
+            scores.merge(id, score * (1 - vectorWeight), Double::sum));
+        normalizeScores(vectorHits).forEach((id, score) ->
+            scores.merge(id, score * vectorWeight, Double::sum));
+        return scores;
+    }
+    
+    private Map<String, Double> normalizeScores(List<Hit<KnowledgeDocumentSource>> hits) {
+        Map<String, Double> normalized = new HashMap<>();
+        if (hits.isEmpty()) {
+            return normalized;
+        }
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (Hit<KnowledgeDocumentSource> hit : hits) {
+            double score = hit.score() != null ? hit.score() : 0;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        double range = max - min;
+        for (Hit<KnowledgeDocumentSource> hit : hits) {
+            double score = hit.score() != null ? hit.score() : 0;
+            normalized.put(hit.id(), range > 0 ? (score - min) / range : 1.0);
+        }
+        return normalized;
+    }
+    
+    private int orDefault(Integer value, int defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+    
+    /**
+     * 构建ES文档
+     */
+    private KnowledgeDocumentSource toEsDoc(Document document) {
+        // 如果没有embedding，生成一个模拟的
+        if (document.getEmbedding() == null) {
+            document.setEmbedding(generateMockEmbedding(document.getContent()));
+        }
+        return KnowledgeDocumentSource.from(document);
+    }
+    
+    /**
+     * 写入在下一次自动刷新后才可见：按刷新间隔的两倍估计，为刷新本身留出时间；
+     * 未配置或关闭自动刷新（"-1"）时按默认的 1s 估计
+     */
+    @Override
+    public long writeVisibilityDelayMillis() {
+        long intervalMillis;
+        try {
+            intervalMillis = DurationStyle.detectAndParse(refreshInterval).toMillis();
+        } catch (IllegalArgumentException e) {
+            intervalMillis = -1;
+        }
+        return 2 * (intervalMillis > 0 ? intervalMillis : 1000);
+    }
+    
+    /**
+     * 批量加载开始：没有其他进行中的加载时关闭自动刷新
+     */
+    private void disableRefresh() {
+        synchronized (refreshLock) {
+            if (refreshDisabledLoads++ == 0) {
+                updateRefreshInterval("-1");
+            }
+        }
+    }
+    
+    /**
+     * 批量加载结束：最后一个进行中的加载结束时恢复刷新间隔，重叠的加载期间保持关闭
+     */
+    private void restoreRefresh() {
+        synchronized (refreshLock) {
+            if (--refreshDisabledLoads == 0) {
+                updateRefreshInterval(refreshInterval);
+            }
+        }
+    }
+    
+    /**
+     * 调整索引刷新间隔，"-1" 表示关闭自动刷新
+     */
+    private void updateRefreshInterval(String interval) {
+        try {
+            client.indices().putSettings(p -> p
+                .index(INDEX_NAME)
+                .settings(st -> st.refreshInterval(t -> t.time(interval)))
+            );
+            log.debug("⚙️ 索引刷新间隔设置为: {}", interval);
+        } catch (IOException e) {
+            log.error("设置索引刷新间隔失败: {}", interval, e);
+        }
+    }
+    
+    /**
+     * 手动刷新索引，使写入立即可见
+     */
+    private void refreshIndex() {
+        try {
+            client.indices().refresh(r -> r.index(INDEX_NAME));
+        } catch (IOException e) {
+            log.error("刷新索引失败", e);
+        }
+    }
+    
     /**
      * 生成模拟的向量（实际应用中应使用真实的embedding模型）
      */
@@ -255,34 +966,6 @@ public class ElasticsearchVectorStore implements VectorStore {
         return embedding;
     }
     
-    /**
-     * 将ES文档转换为Document对象
-     */
-    private Document convertToDocument(Map<String, Object> source) {
-        Document doc = new Document();
-        doc.setId((String) source.get("id"));
-        doc.setContent((String) source.get("content"));
-        
-        String typeStr = (String) source.get("type");
-        if (typeStr != null) {
-            doc.setType(DocumentType.valueOf(typeStr));
-        }
-        
-        Object embeddingObj = source.get("embedding");
-        if (embeddingObj instanceof List) {
-            List<Double> embeddingList = (List<Double>) embeddingObj;
-            float[] embedding = new float[embeddingList.size()];
-            for (int i = 0; i < embeddingList.size(); i++) {
-                embedding[i] = embeddingList.get(i).floatValue();
-            }
-            doc.setEmbedding(embedding);
-        }
-        
-        doc.setMetadata((Map<String, Object>) source.get("metadata"));
-        
-        return doc;
-    }
-    
     /**
      * float数组转换为Float列表
      */
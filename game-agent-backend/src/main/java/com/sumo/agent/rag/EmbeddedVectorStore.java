@@ -4,54 +4,950 @@
  */
 package com.sumo.agent.rag;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
-import java.util.List;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 嵌入式向量数据库
  * 使用本地文件存储，无需外部服务
- * 
- * 可选方案：
- * 1. H2 Database（支持向量扩展）
- * 2. SQLite + sqlite-vss
- * 3. DuckDB
- * 4. Chroma (Python需要通过API调用)
+ *
+ * 存储布局：
+ * 1. documents.log：仅追加的文档日志，每条记录包含 id、类型、内容与元数据（JSON）
+ * 2. embeddings.f32：内存映射的 float 矩阵，每行一个归一化后的向量
+ * 3. MANIFEST：当前使用的文件代数，第 n 代文件为 documents.log.n / embeddings.f32.n（无清单时为第 0 代，即不带后缀的文件）
+ *
+ * 删除通过追加墓碑记录实现，墓碑比例过高时自动压缩。压缩写出下一代文件后原子替换 MANIFEST 作为提交点，
+ * 任何时刻崩溃重启都能取到一致的日志与向量文件；启动时清理其他代的残留文件。
+ * 启动时顺序扫描记录头，不解析正文，保证重启速度。
  */
 @Slf4j
 @Service
 @ConditionalOnProperty(name = "agent.rag.type", havingValue = "embedded")
 public class EmbeddedVectorStore implements VectorStore {
-    
-    // 这里可以使用 H2 数据库 + pgvector 扩展
-    // 或者使用 Apache Lucene（Java原生）
-    
+
+    private static final String LOG_FILE = "documents.log";
+    private static final String MATRIX_FILE = "embeddings.f32";
+    private static final String MANIFEST_FILE = "MANIFEST";
+
+    /**
+     * 启动扫描日志时的读缓冲大小，需大于单条记录头 + 最长id
+     */
+    private static final int SCAN_BUFFER_BYTES = 1 << 20;
+
+    private static final int MATRIX_MAGIC = 0x56454331; // "VEC1"
+    private static final int MATRIX_HEADER_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+
+    /**
+     * 记录头：op(1) + 记录长度(4) + 向量行号(4) + 内容哈希(8) + id长度(2)
+     */
+    private static final int RECORD_HEADER_BYTES = 1 + 4 + 4 + 8 + 2;
+
+    @Value("${agent.rag.embedded.path:./rag-data}")
+    private String storagePath;
+
+    @Value("${agent.rag.embedded.dimension:256}")
+    private int dimension;
+
+    /**
+     * 墓碑占比超过该值时触发压缩
+     */
+    @Value("${agent.rag.embedded.compact-ratio:0.3}")
+    private double compactRatio;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 文档id -> 日志中的记录位置
+     */
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    /**
+     * 已被删除或覆盖的向量行
+     */
+    private final BitSet deadSlots = new BitSet();
+
+    /**
+     * 向量行号 -> 文档id
+     */
+    private final Map<Integer, String> slotIds = new HashMap<>();
+
+    /**
+     * 向量行号 -> 文档类型序号（-1 表示无类型），检索时按类型过滤无需读取日志
+     */
+    private byte[] slotTypes = new byte[INITIAL_CAPACITY];
+
+    private FileChannel logChannel;
+    private FileChannel matrixChannel;
+    private MappedByteBuffer matrixBuffer;
+    private FloatBuffer matrix;
+    private int capacity;
+    private int slotCount;
+
+    /**
+     * 当前使用的文件代数，见 MANIFEST
+     */
+    private long fileGeneration;
+
+    /**
+     * 索引项：记录偏移、向量行号与内容哈希
+     */
+    private record Entry(long offset, int slot, long hash) {}
+
+    /**
+     * 检索命中：向量行号与相似度
+     */
+    private record Hit(int slot, float score) {}
+
+    @PostConstruct
+    public void init() {
+        try {
+            Path dir = Paths.get(storagePath);
+            Files.createDirectories(dir);
+            fileGeneration = readManifest(dir);
+            deleteStaleFiles(dir);
+            openFiles(dir);
+            long start = System.currentTimeMillis();
+            loadIndex();
+            log.info("✅ 嵌入式向量库已加载: {} 个文档, 耗时 {}ms, 路径: {}",
+                index.size(), System.currentTimeMillis() - start, dir.toAbsolutePath());
+        } catch (IOException e) {
+            log.error("❌ 嵌入式向量库初始化失败", e);
+            throw new RuntimeException("无法初始化嵌入式向量库", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        lock.writeLock().lock();
+        try {
+            closeFiles();
+        } catch (IOException e) {
+            log.error("关闭嵌入式向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     @Override
     public void save(Document document) {
-        // 使用 H2 或 SQLite 存储
-        log.info("保存到嵌入式数据库: {}", document.getId());
+        lock.writeLock().lock();
+        try {
+            byte[] payload = encodePayload(document);
+            long hash = hash(payload);
+
+            // 内容未变化时跳过，避免每次启动重复追加知识库
+            Entry existing = index.get(document.getId());
+            if (existing != null && existing.hash() == hash) {
+                log.debug("⏭️ 文档未变化，跳过: {}", document.getId());
+                return;
+            }
+
+            float[] embedding = document.getEmbedding();
+            if (embedding == null || embedding.length != dimension) {
+                embedding = embed(document.getContent());
+            }
+
+            int slot = slotCount;
+            writeVector(slot, normalize(embedding));
+            slotCount++;
+            writeSlotCount();
+
+            long offset = appendRecord(OP_PUT, slot, hash, document.getId(), payload);
+            if (existing != null) {
+                deadSlots.set(existing.slot());
+                slotIds.remove(existing.slot());
+            }
+            index.put(document.getId(), new Entry(offset, slot, hash));
+            slotIds.put(slot, document.getId());
+            setSlotType(slot, typeOrdinal(document.getType()));
+
+            log.debug("📝 保存到嵌入式数据库: {}", document.getId());
+            compactIfNeeded();
+        } catch (IOException e) {
+            log.error("保存文档失败", e);
+            throw new RuntimeException("保存文档失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
-    
+
     @Override
     public void saveAll(List<Document> documents) {
         documents.forEach(this::save);
+        log.info("📚 批量保存 {} 个文档", documents.size());
     }
-    
+
     @Override
     public List<Document> search(String query, int topK) {
-        // 实现向量搜索
-        log.info("从嵌入式数据库搜索: {}", query);
-        return new java.util.ArrayList<>();
+        log.debug("🔍 从嵌入式数据库搜索: {}", query);
+        if (topK <= 0) {
+            return new ArrayList<>();
+        }
+        float[] queryVector = normalize(embed(query));
+
+        lock.readLock().lock();
+        try {
+            List<Document> results = new ArrayList<>();
+            for (Hit hit : rank(queryVector, topK, null, 0)) {
+                Document doc = readSlot(hit.slot());
+                if (doc != null) {
+                    results.add(doc);
+                }
+            }
+            return results;
+        } catch (IOException e) {
+            log.error("搜索失败", e);
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-    
+
+    /**
+     * 带过滤条件的检索
+     * 类型过滤与 minScore（余弦相似度）在扫描向量时直接跳过；
+     * 游戏类型、年龄等元数据条件需要读取记录，按得分从高到低读取直到凑满 topK
+     */
+    @Override
+    public List<Document> search(SearchRequest request) {
+        if (request.getTopK() <= 0) {
+            return new ArrayList<>();
+        }
+        float[] queryVector = normalize(embed(request.getQuery() != null ? request.getQuery() : ""));
+
+        boolean[] allowedTypes = null;
+        if (request.getTypes() != null && !request.getTypes().isEmpty()) {
+            allowedTypes = new boolean[DocumentType.values().length];
+            for (DocumentType type : request.getTypes()) {
+                allowedTypes[type.ordinal()] = true;
+            }
+        }
+        boolean metadataFilters = (request.getGameTypes() != null && !request.getGameTypes().isEmpty())
+            || request.getMinAge() != null || request.getMaxAge() != null;
+        float minScore = request.getMinScore() != null ? request.getMinScore().floatValue() : 0;
+
+        lock.readLock().lock();
+        try {
+            List<Hit> ranked = rank(queryVector, metadataFilters ? Integer.MAX_VALUE : request.getTopK(),
+                allowedTypes, minScore);
+
+            List<Document> results = new ArrayList<>();
+            for (Hit hit : ranked) {
+                if (results.size() >= request.getTopK()) {
+                    break;
+                }
+                Document doc = readSlot(hit.slot());
+                if (doc != null && request.matches(doc)) {
+                    results.add(request.project(doc));
+                }
+            }
+            return results;
+        } catch (IOException e) {
+            log.error("搜索失败", e);
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 暴力扫描向量矩阵，小顶堆保留得分最高的 topK 行，需持有读锁
+     *
+     * @param allowedTypes 按类型序号标记允许的类型，为null表示不过滤
+     * @param minScore 得分不高于该值的行被跳过
+     */
+    private List<Hit> rank(float[] queryVector, int topK, boolean[] allowedTypes, float minScore) {
+        PriorityQueue<Hit> heap = new PriorityQueue<>(Comparator.comparingDouble(Hit::score));
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (deadSlots.get(slot)) {
+                continue;
+            }
+            if (allowedTypes != null) {
+                byte type = slotTypes[slot];
+                if (type < 0 || !allowedTypes[type]) {
+                    continue;
+                }
+            }
+            float score = dot(queryVector, slot);
+            if (score <= minScore) {
+                continue;
+            }
+            if (heap.size() < topK) {
+                heap.offer(new Hit(slot, score));
+            } else if (heap.peek().score() < score) {
+                heap.poll();
+                heap.offer(new Hit(slot, score));
+            }
+        }
+
+        List<Hit> ranked = new ArrayList<>(heap);
+        ranked.sort((a, b) -> Float.compare(b.score(), a.score()));
+        return ranked;
+    }
+
+    private Document readSlot(int slot) throws IOException {
+        String id = slotIds.get(slot);
+        Entry entry = id != null ? index.get(id) : null;
+        return entry != null ? readDocument(entry) : null;
+    }
+
     @Override
     public Document findById(String id) {
-        return null;
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(id);
+            return entry != null ? readDocument(entry) : null;
+        } catch (IOException e) {
+            log.error("查询文档失败: {}", id, e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> findAllWithMetadata(String key) {
+        lock.readLock().lock();
+        try {
+            List<Document> documents = new ArrayList<>();
+            for (Entry entry : index.values()) {
+                Document doc = readDocument(entry);
+                if (doc.getMetadata() != null && doc.getMetadata().containsKey(key)) {
+                    documents.add(doc);
+                }
+            }
+            return documents;
+        } catch (IOException e) {
+            throw new RuntimeException("遍历文档失败", e);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-    
+
     @Override
     public void delete(String id) {
-        log.info("从嵌入式数据库删除: {}", id);
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.remove(id);
+            if (entry == null) {
+                return;
+            }
+            appendRecord(OP_DELETE, entry.slot(), 0L, id, new byte[0]);
+            deadSlots.set(entry.slot());
+            slotIds.remove(entry.slot());
+            log.debug("🗑️ 从嵌入式数据库删除: {}", id);
+            compactIfNeeded();
+        } catch (IOException e) {
+            log.error("删除文档失败: {}", id, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 压缩存储：只保留存活文档，重写日志和向量矩阵
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            doCompact();
+        } catch (IOException e) {
+            log.error("压缩嵌入式向量库失败", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalDocuments", index.size());
+            stats.put("vectorRows", slotCount);
+            stats.put("deadRows", deadSlots.cardinality());
+            stats.put("dimension", dimension);
+            stats.put("logBytes", logChannel.size());
+            stats.put("storagePath", storagePath);
+            return stats;
+        } catch (IOException e) {
+            log.error("获取统计信息失败", e);
+            return new HashMap<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 文件操作 ====================
+
+    private Path logPath(Path dir, long generation) {
+        return dir.resolve(generation == 0 ? LOG_FILE : LOG_FILE + "." + generation);
+    }
+
+    private Path matrixPath(Path dir, long generation) {
+        return dir.resolve(generation == 0 ? MATRIX_FILE : MATRIX_FILE + "." + generation);
+    }
+
+    private long readManifest(Path dir) throws IOException {
+        Path manifest = dir.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifest)) {
+            return 0;
+        }
+        String content = Files.readString(manifest, StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(content);
+        } catch (NumberFormatException e) {
+            throw new IOException("MANIFEST 格式错误: " + content);
+        }
+    }
+
+    /**
+     * 原子替换 MANIFEST：先写临时文件并落盘，再原子重命名
+     */
+    private void writeManifest(Path dir, long generation) throws IOException {
+        Path tmp = dir.resolve(MANIFEST_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer content = ByteBuffer.wrap(Long.toString(generation).getBytes(StandardCharsets.UTF_8));
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // 目录项落盘，部分平台不支持打开目录，忽略
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            log.debug("同步存储目录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 删除非当前代的日志与向量文件（压缩中途崩溃或旧文件删除失败留下的）
+     */
+    private void deleteStaleFiles(Path dir) throws IOException {
+        Set<Path> current = Set.of(logPath(dir, fileGeneration), matrixPath(dir, fileGeneration));
+        List<Path> stale;
+        try (var files = Files.list(dir)) {
+            stale = files.filter(path -> {
+                String name = path.getFileName().toString();
+                return !current.contains(path) && (name.equals(LOG_FILE) || name.startsWith(LOG_FILE + ".")
+                    || name.equals(MATRIX_FILE) || name.startsWith(MATRIX_FILE + ".")
+                    || name.equals(MANIFEST_FILE + ".tmp"));
+            }).toList();
+        }
+        for (Path path : stale) {
+            log.warn("⚠️ 删除嵌入式向量库残留文件: {}", path.getFileName());
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void deleteQuietly(Path... paths) {
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("删除文件失败，下次启动时清理: {}", path, e);
+            }
+        }
+    }
+
+    private void openFiles(Path dir) throws IOException {
+        logChannel = FileChannel.open(logPath(dir, fileGeneration),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logChannel.position(logChannel.size());
+
+        Path matrixPath = matrixPath(dir, fileGeneration);
+        boolean fresh = !Files.exists(matrixPath) || Files.size(matrixPath) < MATRIX_HEADER_BYTES;
+        matrixChannel = FileChannel.open(matrixPath,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (fresh) {
+            capacity = INITIAL_CAPACITY;
+            mapMatrix();
+            matrixBuffer.putInt(0, MATRIX_MAGIC);
+            matrixBuffer.putInt(4, dimension);
+            matrixBuffer.putInt(8, 0);
+            slotCount = 0;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(MATRIX_HEADER_BYTES);
+            matrixChannel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MATRIX_MAGIC) {
+                throw new IOException("向量文件格式错误: " + matrixPath);
+            }
+            int storedDimension = header.getInt();
+            if (storedDimension != dimension) {
+                throw new IOException("向量维度不一致: 文件为 " + storedDimension + ", 配置为 " + dimension);
+            }
+            slotCount = header.getInt();
+            long rowBytes = (long) dimension * Float.BYTES;
+            capacity = (int) Math.max(INITIAL_CAPACITY, (matrixChannel.size() - MATRIX_HEADER_BYTES) / rowBytes);
+            mapMatrix();
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        if (matrixBuffer != null) {
+            matrixBuffer.force();
+        }
+        if (logChannel != null) {
+            logChannel.force(true);
+            logChannel.close();
+        }
+        if (matrixChannel != null) {
+            matrixChannel.close();
+        }
+    }
+
+    private void mapMatrix() throws IOException {
+        long size = MATRIX_HEADER_BYTES + (long) capacity * dimension * Float.BYTES;
+        matrixBuffer = matrixChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        matrix = matrixBuffer.position(MATRIX_HEADER_BYTES).slice().asFloatBuffer();
+    }
+
+    private void writeSlotCount() {
+        matrixBuffer.putInt(8, slotCount);
+    }
+
+    private void writeVector(int slot, float[] vector) throws IOException {
+        if (slot >= capacity) {
+            matrixBuffer.force();
+            capacity = Math.max(capacity * 2, slot + 1);
+            mapMatrix();
+        }
+        matrix.put(slot * dimension, vector);
+    }
+
+    private void setSlotType(int slot, byte type) {
+        if (slot >= slotTypes.length) {
+            slotTypes = Arrays.copyOf(slotTypes, Math.max(slotTypes.length * 2, slot + 1));
+        }
+        slotTypes[slot] = type;
+    }
+
+    private byte typeOrdinal(DocumentType type) {
+        return (byte) (type != null ? type.ordinal() : -1);
+    }
+
+    private float dot(float[] query, int slot) {
+        int base = slot * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * matrix.get(base + i);
+        }
+        return sum;
+    }
+
+    /**
+     * 启动时扫描日志记录头，重建 id -> 记录位置 的索引
+     * 通过文件通道分块顺序读取，偏移量为 long，日志大小不受单次内存映射的 2GB 限制
+     */
+    private void loadIndex() throws IOException {
+        long size = logChannel.size();
+        if (size == 0) {
+            return;
+        }
+
+        LogScanner scanner = new LogScanner(logChannel, size);
+        long validEnd = 0;
+        while (scanner.ensure(RECORD_HEADER_BYTES)) {
+            long offset = scanner.offset();
+            ByteBuffer head = scanner.buffer();
+            byte op = head.get();
+            int length = head.getInt();
+            if ((op != OP_PUT && op != OP_DELETE) || length < RECORD_HEADER_BYTES || offset + length > size) {
+                break;
+            }
+            int slot = head.getInt();
+            long hash = head.getLong();
+            int idLength = head.getShort() & 0xFFFF;
+            // 正文首字节即类型序号，墓碑记录没有正文
+            if (!scanner.ensure(idLength + (op == OP_PUT ? 1 : 0))) {
+                break;
+            }
+            byte[] idBytes = new byte[idLength];
+            head.get(idBytes);
+            String id = new String(idBytes, StandardCharsets.UTF_8);
+
+            if (op == OP_PUT) {
+                index.put(id, new Entry(offset, slot, hash));
+                setSlotType(slot, head.get());
+            } else {
+                index.remove(id);
+            }
+
+            scanner.seek(offset + length);
+            validEnd = offset + length;
+        }
+
+        // 截断异常退出时写了一半的记录
+        if (validEnd < size) {
+            log.warn("⚠️ 文档日志尾部存在不完整记录，截断 {} 字节", size - validEnd);
+            logChannel.truncate(validEnd);
+            logChannel.position(validEnd);
+        }
+
+        // 未被存活文档引用的向量行（被覆盖、删除或未完成的写入）全部视为墓碑
+        for (Map.Entry<String, Entry> e : index.entrySet()) {
+            int slot = e.getValue().slot();
+            if (slot >= slotCount) {
+                throw new IOException("向量文件与文档日志不一致: " + e.getKey());
+            }
+            slotIds.put(slot, e.getKey());
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (!slotIds.containsKey(slot)) {
+                deadSlots.set(slot);
+            }
+        }
+    }
+
+    private long appendRecord(byte op, int slot, long hash, String id, byte[] payload) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_BYTES + idBytes.length + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(op);
+        buffer.putInt(length);
+        buffer.putInt(slot);
+        buffer.putLong(hash);
+        buffer.putShort((short) idBytes.length);
+        buffer.put(idBytes);
+        buffer.put(payload);
+        buffer.flip();
+
+        long offset = logChannel.position();
+        while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+        }
+        return offset;
+    }
+
+    private Document readDocument(Entry entry) throws IOException {
+        ByteBuffer buffer = readRecord(entry.offset());
+        buffer.position(1 + 4 + 4 + 8);
+        byte[] idBytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(idBytes);
+
+        Document doc = new Document();
+        doc.setId(new String(idBytes, StandardCharsets.UTF_8));
+        decodePayload(buffer, doc);
+
+        float[] embedding = new float[dimension];
+        matrix.get(entry.slot() * dimension, embedding);
+        doc.setEmbedding(embedding);
+        return doc;
+    }
+
+    /**
+     * 读取完整的一条日志记录
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(5);
+        readFully(head, offset);
+        head.flip();
+        head.get();
+        ByteBuffer record = ByteBuffer.allocate(head.getInt());
+        readFully(record, offset);
+        record.flip();
+        return record;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (logChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("文档日志意外结束");
+            }
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        int dead = deadSlots.cardinality();
+        if (dead >= 64 && dead > slotCount * compactRatio) {
+            doCompact();
+        }
+    }
+
+    private void doCompact() throws IOException {
+        long start = System.currentTimeMillis();
+        Path dir = Paths.get(storagePath);
+        long oldGeneration = fileGeneration;
+        long newGeneration = oldGeneration + 1;
+        Path newLogPath = logPath(dir, newGeneration);
+        Path newMatrixPath = matrixPath(dir, newGeneration);
+
+        // 按原日志顺序写出存活文档
+        List<Map.Entry<String, Entry>> live = new ArrayList<>(index.entrySet());
+        live.sort(Comparator.comparingLong(e -> e.getValue().offset()));
+
+        int newCapacity = Math.max(INITIAL_CAPACITY, live.size() * 2);
+        Map<String, Entry> newIndex = new HashMap<>();
+        byte[] newSlotTypes = new byte[newCapacity];
+        try (FileChannel newLog = FileChannel.open(newLogPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel newMatrixChannel = FileChannel.open(newMatrixPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            MappedByteBuffer newMatrix = newMatrixChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                MATRIX_HEADER_BYTES + (long) newCapacity * dimension * Float.BYTES);
+            newMatrix.putInt(0, MATRIX_MAGIC);
+            newMatrix.putInt(4, dimension);
+            newMatrix.putInt(8, live.size());
+            FloatBuffer newRows = newMatrix.position(MATRIX_HEADER_BYTES).slice().asFloatBuffer();
+
+            float[] row = new float[dimension];
+            int newSlot = 0;
+            for (Map.Entry<String, Entry> e : live) {
+                Entry entry = e.getValue();
+
+                ByteBuffer record = readRecord(entry.offset());
+                record.putInt(5, newSlot);
+
+                long newOffset = newLog.position();
+                while (record.hasRemaining()) {
+                    newLog.write(record);
+                }
+
+                matrix.get(entry.slot() * dimension, row);
+                newRows.put(newSlot * dimension, row);
+                newIndex.put(e.getKey(), new Entry(newOffset, newSlot, entry.hash()));
+                newSlotTypes[newSlot] = slotTypes[entry.slot()];
+                newSlot++;
+            }
+            newMatrix.force();
+            newLog.force(true);
+        } catch (IOException | RuntimeException e) {
+            // 旧文件仍处于打开状态，放弃本次压缩即可
+            deleteQuietly(newLogPath, newMatrixPath);
+            throw e;
+        }
+
+        // 提交点：MANIFEST 替换前崩溃，重启仍使用旧文件；替换后使用新文件
+        try {
+            writeManifest(dir, newGeneration);
+        } catch (IOException e) {
+            deleteQuietly(newLogPath, newMatrixPath);
+            throw e;
+        }
+
+        closeFiles();
+        try {
+            fileGeneration = newGeneration;
+            openFiles(dir);
+        } catch (IOException e) {
+            // 新文件无法打开：回退到旧文件（尚未删除，与内存索引一致），保持存储可用
+            log.error("打开压缩后的文件失败，回退到压缩前的文件", e);
+            closeQuietly();
+            fileGeneration = oldGeneration;
+            writeManifest(dir, oldGeneration);
+            openFiles(dir);
+            deleteQuietly(newLogPath, newMatrixPath);
+            throw e;
+        }
+
+        index.clear();
+        index.putAll(newIndex);
+        deadSlots.clear();
+        slotIds.clear();
+        slotTypes = newSlotTypes;
+        newIndex.forEach((id, entry) -> slotIds.put(entry.slot(), id));
+        deleteQuietly(logPath(dir, oldGeneration), matrixPath(dir, oldGeneration));
+
+        log.info("🧹 嵌入式向量库压缩完成: {} 个文档, 第 {} 代, 耗时 {}ms",
+            index.size(), newGeneration, System.currentTimeMillis() - start);
+    }
+
+    private void closeQuietly() {
+        try {
+            closeFiles();
+        } catch (IOException e) {
+            log.debug("关闭文件失败", e);
+        }
+    }
+
+    /**
+     * 顺序读取文档日志的缓冲读取器
+     * buffer 的读位置对应文件偏移 {@link #offset()}，跳过正文时缓冲内可达则直接移动，否则丢弃缓冲从目标位置重新读取
+     */
+    private static final class LogScanner {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES).flip();
+        /**
+         * 下一次读入缓冲的文件偏移
+         */
+        private long readPosition;
+
+        LogScanner(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        ByteBuffer buffer() {
+            return buffer;
+        }
+
+        long offset() {
+            return readPosition - buffer.remaining();
+        }
+
+        /**
+         * 确保缓冲中至少有 n 个字节可读，文件剩余不足时返回 false
+         */
+        boolean ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < n && readPosition < size) {
+                int read = channel.read(buffer, readPosition);
+                if (read < 0) {
+                    break;
+                }
+                readPosition += read;
+            }
+            buffer.flip();
+            return buffer.remaining() >= n;
+        }
+
+        void seek(long target) {
+            long skip = target - offset();
+            if (skip >= 0 && skip <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) skip);
+            } else {
+                buffer.clear().flip();
+                readPosition = target;
+            }
+        }
+    }
+
+    // ==================== 编码 ====================
+
+    /**
+     * 记录正文：类型序号(1) + 内容长度(4) + 内容 + 元数据长度(4) + 元数据JSON
+     */
+    private byte[] encodePayload(Document document) throws IOException {
+        byte[] content = document.getContent() != null
+            ? document.getContent().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] metadata = document.getMetadata() != null && !document.getMetadata().isEmpty()
+            ? objectMapper.writeValueAsBytes(document.getMetadata()) : new byte[0];
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + content.length + 4 + metadata.length);
+        buffer.put(typeOrdinal(document.getType()));
+        buffer.putInt(content.length);
+        buffer.put(content);
+        buffer.putInt(metadata.length);
+        buffer.put(metadata);
+        return buffer.array();
+    }
+
+    private void decodePayload(ByteBuffer buffer, Document doc) throws IOException {
+        byte type = buffer.get();
+        if (type >= 0) {
+            doc.setType(DocumentType.values()[type]);
+        }
+
+        byte[] content = new byte[buffer.getInt()];
+        buffer.get(content);
+        doc.setContent(new String(content, StandardCharsets.UTF_8));
+
+        byte[] metadata = new byte[buffer.getInt()];
+        buffer.get(metadata);
+        doc.setMetadata(metadata.length > 0
+            ? objectMapper.readValue(metadata, new TypeReference<Map<String, Object>>() {})
+            : new HashMap<>());
+    }
+
+    /**
+     * FNV-1a 64位哈希，用于判断文档内容是否变化
+     */
+    private long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // ==================== 向量 ====================
+
+    /**
+     * 生成本地向量（特征哈希）
+     * 对单词与相邻字符二元组做哈希映射，中文无空格也能得到有意义的相似度。
+     * 实际应用中可替换为真实的embedding模型。
+     */
+    private float[] embed(String text) {
+        float[] vector = new float[dimension];
+        if (text == null) {
+            return vector;
+        }
+        String normalized = text.toLowerCase();
+        for (String word : normalized.split("\\s+")) {
+            if (!word.isEmpty()) {
+                addFeature(vector, word);
+            }
+        }
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            char a = normalized.charAt(i);
+            char b = normalized.charAt(i + 1);
+            if (!Character.isWhitespace(a) && !Character.isWhitespace(b)) {
+                addFeature(vector, normalized.substring(i, i + 2));
+            }
+        }
+        return vector;
+    }
+
+    private void addFeature(float[] vector, String feature) {
+        int h = feature.hashCode() * 0x9E3779B9;
+        int bucket = Math.floorMod(h, dimension);
+        vector[bucket] += (h & 0x10000) == 0 ? 1f : -1f;
+    }
+
+    private float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inv;
+        }
+        return result;
     }
-}
\ No newline at end of file
+}
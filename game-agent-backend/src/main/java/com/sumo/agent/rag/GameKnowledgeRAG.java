@@ -4,14 +4,25 @@
  */
 package com.sumo.agent.rag;
 
+import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.metrics.GameMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
 
 import jakarta.annotation.PostConstruct;
-import java.util.Arrays;
+import jakarta.annotation.PreDestroy;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -26,8 +37,31 @@ public class GameKnowledgeRAG {
     @Autowired(required = false)
     private VectorStore vectorStore;
     
+    @Autowired(required = false)
+    private GameMetrics gameMetrics;
+    
+    /**
+     * 单次RAG检索的截止时间（毫秒），超时后使用已返回的部分结果
+     */
+    @Value("${agent.rag.retrieval-timeout-ms:800}")
+    private long retrievalTimeoutMs;
+    
+    /**
+     * 并发检索线程数
+     */
+    @Value("${agent.rag.retrieval-threads:6}")
+    private int retrievalThreads;
+    
+    /**
+     * 片段级检索的召回倍数：先取 topK * overfetch 个片段，再合并为 topK 个父文档
+     */
+    @Value("${agent.rag.chunk.overfetch:3}")
+    private int passageOverfetch;
+    
+    private ExecutorService retrievalExecutor;
+    
     /**
-     * 初始化知识库
+     * 初始化检索线程池
      */
     @PostConstruct
     public void initKnowledgeBase() {
@@ -36,53 +70,98 @@ public class GameKnowledgeRAG {
             return;
         }
         
-        log.info("🎯 初始化游戏知识库...");
-        
-        // 1. 加载游戏设计模式
-        loadGameDesignPatterns();
-        
-        // 2. 加载教育理论
-        loadEducationTheories();
-        
-        // 3. 加载成功案例
-        loadSuccessCases();
+        AtomicInteger threadIndex = new AtomicInteger();
+        retrievalExecutor = Executors.newFixedThreadPool(retrievalThreads, r -> {
+            Thread t = new Thread(r, "rag-retrieval-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
         
-        // 4. 加载游戏素材
-        loadGameAssets();
-        
-        log.info("✅ 知识库初始化完成");
+        // 知识文档由 KnowledgeIngestionService 在启动完成后后台导入
+        log.info("✅ RAG检索服务就绪");
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (retrievalExecutor != null) {
+            retrievalExecutor.shutdownNow();
+        }
     }
     
     /**
-     * 检索增强的游戏生成
+     * 检索增强的游戏生成，游戏类型从用户输入中推断
      */
     public GameGenerationContext enhanceWithRAG(String userInput, String ageGroup) {
+        return enhanceWithRAG(userInput, ageGroup, extractGameType(userInput));
+    }
+    
+    /**
+     * 检索增强的游戏生成
+     * 三路检索并发执行，整体受 retrieval-timeout-ms 约束；
+     * 超时未返回的检索以空结果代替，生成流程不被慢存储拖住。
+     * 文档类型、游戏类型与年龄段以过滤条件下推到存储，查询串只保留用户需求本身。
+     */
+    public GameGenerationContext enhanceWithRAG(String userInput, String ageGroup, GameConfig.GameType gameType) {
         if (vectorStore == null) {
             return new GameGenerationContext(userInput);
         }
         
         log.info("🔍 使用RAG增强游戏生成...");
+        long start = System.currentTimeMillis();
+        
+        // 通用游戏不限定游戏类型
+        Set<String> gameTypes = gameType == null || gameType == GameConfig.GameType.UNIVERSAL
+            ? null : Set.of(gameType.name());
         
         // 1. 检索相关的游戏设计知识
-        List<VectorStore.Document> designDocs = vectorStore.search(
-            "游戏设计 " + userInput + " " + ageGroup,
-            5
-        );
+        CompletableFuture<List<VectorStore.Document>> designFuture = searchPassages(SearchRequest.builder()
+            .query(userInput)
+            .topK(5)
+            .types(EnumSet.of(VectorStore.DocumentType.DESIGN_PATTERN, VectorStore.DocumentType.GAME_ASSET))
+            .gameTypes(gameTypes)
+            .ageGroup(ageGroup)
+            .build());
         
         // 2. 检索教育理论
-        List<VectorStore.Document> eduDocs = vectorStore.search(
-            "儿童教育 认知发展 " + ageGroup,
-            3
-        );
+        CompletableFuture<List<VectorStore.Document>> eduFuture = searchPassages(SearchRequest.builder()
+            .query(userInput)
+            .topK(3)
+            .types(EnumSet.of(VectorStore.DocumentType.EDUCATION_THEORY))
+            .ageGroup(ageGroup)
+            .build());
         
         // 3. 检索成功案例
-        List<VectorStore.Document> cases = vectorStore.search(
-            "成功游戏案例 " + extractGameType(userInput),
-            3
-        );
+        CompletableFuture<List<VectorStore.Document>> casesFuture = searchPassages(SearchRequest.builder()
+            .query(userInput)
+            .topK(3)
+            .types(EnumSet.of(VectorStore.DocumentType.SUCCESS_CASE))
+            .gameTypes(gameTypes)
+            .ageGroup(ageGroup)
+            .build());
+        
+        boolean partial = false;
+        try {
+            CompletableFuture.allOf(designFuture, eduFuture, casesFuture)
+                .get(retrievalTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            partial = true;
+            log.warn("⏱️ RAG检索超过 {}ms，使用部分结果", retrievalTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            partial = true;
+        } catch (Exception e) {
+            // 单路失败不影响其他已完成的检索
+            partial = true;
+            log.warn("RAG检索部分失败: {}", e.getMessage());
+        }
+        
+        List<VectorStore.Document> designDocs = resultOrEmpty(designFuture);
+        List<VectorStore.Document> eduDocs = resultOrEmpty(eduFuture);
+        List<VectorStore.Document> cases = resultOrEmpty(casesFuture);
         
         // 4. 构建增强的上下文
         GameGenerationContext context = new GameGenerationContext(userInput);
+        context.setPartial(partial);
         context.setDesignPatterns(extractContent(designDocs));
         context.setEducationTheories(extractContent(eduDocs));
         context.setSuccessCases(extractContent(cases));
@@ -91,177 +170,62 @@ public class GameKnowledgeRAG {
         String enhancedPrompt = buildEnhancedPrompt(context);
         context.setEnhancedPrompt(enhancedPrompt);
         
-        log.info("📚 检索到 {} 个相关文档", 
-            designDocs.size() + eduDocs.size() + cases.size());
+        log.info("📚 检索到 {} 个相关文档, 耗时 {}ms{}", 
+            designDocs.size() + eduDocs.size() + cases.size(),
+            System.currentTimeMillis() - start,
+            partial ? "（部分结果）" : "");
         
         return context;
     }
     
     /**
-     * 加载游戏设计模式
-     */
-    private void loadGameDesignPatterns() {
-        List<VectorStore.Document> patterns = Arrays.asList(
-            new VectorStore.Document(
-                "pattern-math-visual",
-                "数学游戏设计模式：\n" +
-                "- 使用视觉辅助：用图形、颜色帮助理解数字概念\n" +
-                "- 递进式难度：从简单到复杂，每关增加少许难度\n" +
-                "- 即时反馈：答对立即给予视觉和声音奖励\n" +
-                "- 错误友好：答错不惩罚，引导正确答案",
-                VectorStore.DocumentType.DESIGN_PATTERN
-            ),
-            
-            new VectorStore.Document(
-                "pattern-memory-game",
-                "记忆游戏设计模式：\n" +
-                "- 开始展示所有卡片3-5秒\n" +
-                "- 使用主题相关的图片（动物、水果等）\n" +
-                "- 配对成功有动画效果\n" +
-                "- 记录时间和步数，鼓励挑战最佳成绩",
-                VectorStore.DocumentType.DESIGN_PATTERN
-            ),
-            
-            new VectorStore.Document(
-                "pattern-word-game",
-                "单词游戏设计模式：\n" +
-                "- 图文结合：每个单词配图片\n" +
-                "- 发音功能：点击可听标准发音\n" +
-                "- 拼写辅助：显示字母轮廓\n" +
-                "- 主题分组：按场景组织单词（家庭、学校、动物）",
-                VectorStore.DocumentType.DESIGN_PATTERN
-            )
-        );
-        
-        vectorStore.saveAll(patterns);
-        log.info("📐 加载了 {} 个游戏设计模式", patterns.size());
-    }
-    
-    /**
-     * 加载教育理论
+     * 片段级检索，结果按父文档合并
      */
-    private void loadEducationTheories() {
-        List<VectorStore.Document> theories = Arrays.asList(
-            new VectorStore.Document(
-                "theory-piaget",
-                "皮亚杰认知发展理论应用：\n" +
-                "【2-7岁 前运算阶段】\n" +
-                "- 需要具体形象的表现\n" +
-                "- 游戏应包含大量图像和动画\n" +
-                "- 避免抽象概念\n" +
-                "【7-11岁 具体运算阶段】\n" +
-                "- 可以理解逻辑关系\n" +
-                "- 适合规则类游戏\n" +
-                "- 可以处理多步骤任务",
-                VectorStore.DocumentType.EDUCATION_THEORY
-            ),
-            
-            new VectorStore.Document(
-                "theory-gamification",
-                "游戏化学习要素：\n" +
-                "- 明确的目标：让孩子知道要完成什么\n" +
-                "- 进度可视化：进度条、关卡、徽章\n" +
-                "- 即时反馈：对错立即响应\n" +
-                "- 适度挑战：不太易不太难\n" +
-                "- 成就系统：积分、排行榜、奖励",
-                VectorStore.DocumentType.EDUCATION_THEORY
-            ),
-            
-            new VectorStore.Document(
-                "theory-attention-span",
-                "儿童注意力时长：\n" +
-                "- 3-4岁：3-8分钟\n" +
-                "- 5-6岁：10-15分钟\n" +
-                "- 7-9岁：15-20分钟\n" +
-                "- 10-12岁：20-30分钟\n" +
-                "游戏设计应考虑关卡时长",
-                VectorStore.DocumentType.EDUCATION_THEORY
-            )
-        );
-        
-        vectorStore.saveAll(theories);
-        log.info("📖 加载了 {} 个教育理论", theories.size());
+    private CompletableFuture<List<VectorStore.Document>> searchPassages(SearchRequest request) {
+        int topK = request.getTopK();
+        request.setTopK(topK * passageOverfetch);
+        long start = System.nanoTime();
+        return vectorStore.searchAsync(request, retrievalExecutor)
+            .whenComplete((passages, error) -> recordSearch(start, error))
+            .thenApply(passages -> DocumentChunker.collapse(passages, topK));
     }
     
     /**
-     * 加载成功案例
+     * 记录检索耗时；超过截止时间才返回的检索记为 timeout（结果已被丢弃）
      */
-    private void loadSuccessCases() {
-        List<VectorStore.Document> cases = Arrays.asList(
-            new VectorStore.Document(
-                "case-math-adventure",
-                "成功案例：数学大冒险\n" +
-                "- 目标用户：5-8岁\n" +
-                "- 特色：将数学题融入冒险故事\n" +
-                "- 成功要素：\n" +
-                "  * 每答对一题，英雄前进一步\n" +
-                "  * 错误时给出视觉提示\n" +
-                "  * 收集宝石作为奖励\n" +
-                "- 效果：平均游戏时长15分钟，完成率85%",
-                VectorStore.DocumentType.SUCCESS_CASE
-            ),
-            
-            new VectorStore.Document(
-                "case-animal-memory",
-                "成功案例：动物记忆卡\n" +
-                "- 目标用户：3-6岁\n" +
-                "- 特色：真实动物照片+叫声\n" +
-                "- 成功要素：\n" +
-                "  * 翻牌有翻转动画\n" +
-                "  * 配对成功播放动物叫声\n" +
-                "  * 三个难度级别（4/6/8对）\n" +
-                "- 效果：重玩率高达70%",
-                VectorStore.DocumentType.SUCCESS_CASE
-            )
-        );
-        
-        vectorStore.saveAll(cases);
-        log.info("🏆 加载了 {} 个成功案例", cases.size());
+    private void recordSearch(long start, Throwable error) {
+        if (gameMetrics == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        String outcome = error != null ? "error"
+            : nanos > TimeUnit.MILLISECONDS.toNanos(retrievalTimeoutMs) ? "timeout" : "success";
+        gameMetrics.recordRagSearch(nanos, outcome);
     }
     
     /**
-     * 加载游戏素材
+     * 取已完成的检索结果，未完成或失败的返回空列表
      */
-    private void loadGameAssets() {
-        List<VectorStore.Document> assets = Arrays.asList(
-            new VectorStore.Document(
-                "assets-themes",
-                "热门游戏主题：\n" +
-                "- 动物世界：农场动物、野生动物、海洋生物\n" +
-                "- 太空探索：星球、火箭、外星人\n" +
-                "- 童话王国：公主、骑士、魔法\n" +
-                "- 恐龙时代：霸王龙、三角龙、翼龙\n" +
-                "- 超级英雄：拯救世界、打败坏人",
-                VectorStore.DocumentType.GAME_ASSET
-            ),
-            
-            new VectorStore.Document(
-                "assets-rewards",
-                "奖励机制素材：\n" +
-                "- 视觉奖励：星星、烟花、彩虹\n" +
-                "- 声音奖励：欢呼声、掌声、胜利音乐\n" +
-                "- 收集要素：贴纸、徽章、宝石\n" +
-                "- 进度奖励：解锁新关卡、新角色",
-                VectorStore.DocumentType.GAME_ASSET
-            )
-        );
-        
-        vectorStore.saveAll(assets);
-        log.info("🎨 加载了 {} 个游戏素材", assets.size());
+    private List<VectorStore.Document> resultOrEmpty(CompletableFuture<List<VectorStore.Document>> future) {
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            return future.join();
+        }
+        future.cancel(true);
+        return List.of();
     }
     
     /**
      * 提取游戏类型
      */
-    private String extractGameType(String userInput) {
+    private GameConfig.GameType extractGameType(String userInput) {
         if (userInput.contains("数学") || userInput.contains("计算") || userInput.contains("加法")) {
-            return "数学游戏";
+            return GameConfig.GameType.MATH;
         } else if (userInput.contains("单词") || userInput.contains("英语") || userInput.contains("字母")) {
-            return "语言游戏";
+            return GameConfig.GameType.WORD;
         } else if (userInput.contains("记忆") || userInput.contains("记住")) {
-            return "记忆游戏";
+            return GameConfig.GameType.MEMORY;
         }
-        return "教育游戏";
+        return GameConfig.GameType.UNIVERSAL;
     }
     
     /**
@@ -312,6 +276,7 @@ public class GameKnowledgeRAG {
         private List<String> educationTheories;
         private List<String> successCases;
         private String enhancedPrompt;
+        private boolean partial;
         
         public GameGenerationContext(String userInput) {
             this.userInput = userInput;
@@ -331,5 +296,7 @@ public class GameKnowledgeRAG {
         public void setSuccessCases(List<String> cases) { this.successCases = cases; }
         public String getEnhancedPrompt() { return enhancedPrompt; }
         public void setEnhancedPrompt(String prompt) { this.enhancedPrompt = prompt; }
+        public boolean isPartial() { return partial; }
+        public void setPartial(boolean partial) { this.partial = partial; }
     }
 }
\ No newline at end of file
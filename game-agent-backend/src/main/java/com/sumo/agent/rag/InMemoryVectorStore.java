@@ -4,159 +4,721 @@
  */
 package com.sumo.agent.rag;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumo.agent.rag.MemorySegment.PendingDocument;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 /**
  * 内存向量存储实现
  * 无需外部依赖，适合开发和小规模应用
+ *
+ * 存储由若干不可变段（{@link MemorySegment}）组成，每段按列存储词典、倒排表、文档列与向量。
+ *
+ * 并发模型（写时复制 + 原子发布）：
+ * 1. 所有段、各段的存活位图与存活文档数打包为一个不可变的 {@link State}，保存在 volatile 字段中。
+ *    检索、按id查询、统计与快照只读取一次该引用，全程不加锁，也不会看到写到一半的数据；
+ *    volatile 写/读建立 happens-before，段与位图在发布前完成构建，发布后不再修改。
+ * 2. 写入方由一把互斥锁串行化，读线程从不等待写锁。分词与元数据编码在获取锁之前完成。
+ *    新文档先进入写缓冲，每次写操作把缓冲构建为尾段随新状态发布，写入后立即可检索；
+ *    缓冲达到 BUFFER_DOCS 时封存为正式段。
+ * 3. 删除与覆盖写不修改已发布的位图，而是复制该段的存活位图后清除对应位，随新状态一起发布。
+ * 4. 段按大小分层合并（相邻段大小接近时合并），已删除文档超过阈值的段单独重写，
+ *    合并直接搬运倒排表，不重新分词。合并在写锁内完成，只阻塞其他写入方。
+ *
+ * 词项的文档频率按段累加，段内已删除的文档在合并前仍计入，对 idf 的影响很小。
+ *
+ * 启用快照后，当前状态定期写入二进制快照文件，关闭时再写一次；快照写出的是某一时刻发布的状态，
+ * 不阻塞写入。启动时流式加载快照，段结构直接还原而不重新分词，知识导入按内容哈希跳过未变化的文件，
+ * 因此启动耗时与快照大小成正比，而不随导入成本增长。
  */
 @Slf4j
 @Service
 @ConditionalOnProperty(name = "agent.rag.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryVectorStore implements VectorStore {
-    
-    // 使用Map存储文档
-    private final Map<String, Document> documents = new ConcurrentHashMap<>();
-    
-    // 简单的倒排索引（用于关键词搜索）
-    private final Map<String, Set<String>> invertedIndex = new ConcurrentHashMap<>();
-    
+
+    // 写缓冲达到该文档数时封存为段
+    private static final int BUFFER_DOCS = 64;
+
+    // 相邻段中前一段的存活文档数小于后一段的该倍数时合并
+    private static final int MERGE_FACTOR = 2;
+
+    // 段内已删除文档达到该数量且超过 PURGE_RATIO 时重写
+    private static final int PURGE_MIN_DELETED = 1024;
+    private static final double PURGE_RATIO = 0.3;
+
+    /**
+     * 某一时刻发布的不可变状态
+     *
+     * @param segments 按写入顺序排列的段，最后一个可能是由写缓冲构建的尾段
+     * @param live 与 segments 一一对应的存活位图，发布后不再修改
+     * @param liveCount 存活文档总数
+     */
+    private record State(MemorySegment[] segments, BitSet[] live, int liveCount) {
+        static final State EMPTY = new State(new MemorySegment[0], new BitSet[0], 0);
+    }
+
+    private volatile State state = State.EMPTY;
+
+    // ==================== 写入方状态（只在持有 writeLock 时访问） ====================
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final List<MemorySegment> sealed = new ArrayList<>();
+    private final List<BitSet> sealedLive = new ArrayList<>();
+    private final LinkedHashMap<String, PendingDocument> buffer = new LinkedHashMap<>();
+    private MemorySegment tail;
+
+    // 由第一个带向量的文档确定维度，-1 表示尚无向量
+    private int embeddingDim = -1;
+
+    // ==================== 快照 ====================
+
+    private static final int SNAPSHOT_MAGIC = 0x494D5653; // "IMVS"
+    private static final int SNAPSHOT_VERSION = 3;
+
+    @Value("${agent.rag.memory.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${agent.rag.memory.snapshot.path:./rag-data/memory-store.snap}")
+    private String snapshotPath;
+
+    /**
+     * 定期快照间隔（秒），只有数据发生变化时才写入
+     */
+    @Value("${agent.rag.memory.snapshot.interval-seconds:300}")
+    private long snapshotIntervalSeconds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 写入计数，与上次快照时的值比较判断是否需要重新快照
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long snapshotModifications;
+
+    // 快照可能由定时任务与关闭钩子同时触发，写临时文件需要互斥（与写入方无关）
+    private final Object snapshotMonitor = new Object();
+
+    private ScheduledExecutorService snapshotScheduler;
+
+    @PostConstruct
+    public void init() {
+        if (!snapshotEnabled) {
+            return;
+        }
+
+        loadSnapshot();
+
+        if (snapshotIntervalSeconds > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "memory-store-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfChanged,
+                snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (snapshotEnabled) {
+            snapshotIfChanged();
+        }
+    }
+
     @Override
     public void save(Document document) {
-        // 1. 存储文档
-        documents.put(document.getId(), document);
-        
-        // 2. 更新倒排索引（简单分词）
-        String[] words = document.getContent().toLowerCase().split("\\s+");
-        for (String word : words) {
-            invertedIndex.computeIfAbsent(word, k -> new HashSet<>())
-                        .add(document.getId());
-        }
-        
+        write(List.of(document));
         log.debug("📝 保存文档: {}", document.getId());
     }
-    
+
     @Override
     public void saveAll(List<Document> docs) {
-        docs.forEach(this::save);
+        write(docs);
         log.info("📚 批量保存 {} 个文档", docs.size());
     }
-    
+
     @Override
     public List<Document> search(String query, int topK) {
         log.debug("🔍 搜索: {}", query);
-        
-        // 简单的关键词匹配评分
-        Map<String, Double> scores = new HashMap<>();
-        
-        String[] queryWords = query.toLowerCase().split("\\s+");
-        
-        for (Document doc : documents.values()) {
-            double score = calculateScore(doc, queryWords);
-            if (score > 0) {
-                scores.put(doc.getId(), score);
-            }
-        }
-        
-        // 按分数排序，返回top-k
-        return scores.entrySet().stream()
-            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-            .limit(topK)
-            .map(entry -> documents.get(entry.getKey()))
-            .collect(Collectors.toList());
-    }
-    
+        return search(SearchRequest.builder()
+            .query(query)
+            .topK(topK)
+            .fields(EnumSet.allOf(SearchRequest.Field.class))
+            .build());
+    }
+
+    /**
+     * 带过滤条件的检索，在一次读取到的状态上执行，不加锁
+     * 1. 各段的存活位图与类型、游戏类型位图求交得到候选集
+     * 2. 只解码查询词的倒排表，对落在候选集中的文档累加 TF-IDF 分数，idf 按全部段统计
+     * 3. 有过滤条件时，满足条件但没有关键词命中的文档排在最后（除非设置了 minScore）
+     */
+    @Override
+    public List<Document> search(SearchRequest request) {
+        State current = state;
+        MemorySegment[] segments = current.segments();
+        boolean checkAge = request.getMinAge() != null || request.getMaxAge() != null;
+        double minScore = request.getMinScore() != null ? request.getMinScore() : 0;
+
+        BitSet[] candidates = new BitSet[segments.length];
+        for (int s = 0; s < segments.length; s++) {
+            candidates[s] = segments[s].filter(request, current.live()[s]);
+        }
+        List<Map<Integer, Double>> scores = score(request.getQuery(), current, candidates);
+
+        // 小顶堆保留得分最高的 topK 个文档
+        int topK = request.getTopK();
+        PriorityQueue<Hit> heap = new PriorityQueue<>(Comparator.comparingDouble(Hit::score));
+        for (int s = 0; s < segments.length; s++) {
+            MemorySegment segment = segments[s];
+            for (Map.Entry<Integer, Double> e : scores.get(s).entrySet()) {
+                int ordinal = e.getKey();
+                double score = e.getValue() * typeWeight(segment.types[ordinal]);
+                if (score <= minScore || (checkAge && !segment.matchesAge(request, ordinal))) {
+                    continue;
+                }
+                if (heap.size() < topK) {
+                    heap.offer(new Hit(s, ordinal, score));
+                } else if (heap.peek().score() < score) {
+                    heap.poll();
+                    heap.offer(new Hit(s, ordinal, score));
+                }
+            }
+        }
+
+        List<Hit> ranked = new ArrayList<>(heap);
+        ranked.sort(Comparator.comparingDouble(Hit::score).reversed());
+
+        List<Document> results = new ArrayList<>(ranked.size());
+        for (Hit hit : ranked) {
+            results.add(request.project(segments[hit.segment()].toDocument(hit.ordinal(), objectMapper)));
+        }
+
+        if (request.hasFilters() && request.getMinScore() == null) {
+            for (int s = 0; s < segments.length && results.size() < topK; s++) {
+                BitSet bits = candidates[s];
+                for (int i = bits.nextSetBit(0); i >= 0 && results.size() < topK; i = bits.nextSetBit(i + 1)) {
+                    if (!scores.get(s).containsKey(i) && (!checkAge || segments[s].matchesAge(request, i))) {
+                        results.add(request.project(segments[s].toDocument(i, objectMapper)));
+                    }
+                }
+            }
+        }
+
+        log.debug("🔍 检索: {}, {} 个段, 命中 {} 个", request.getQuery(), segments.length,
+            scores.stream().mapToInt(Map::size).sum());
+        return results;
+    }
+
+    /**
+     * 按id查询，从最新的段向前查找存活文档，不加锁
+     */
     @Override
     public Document findById(String id) {
-        return documents.get(id);
+        State current = state;
+        for (int s = current.segments().length - 1; s >= 0; s--) {
+            MemorySegment segment = current.segments()[s];
+            Integer ordinal = segment.ordinals.get(id);
+            if (ordinal != null && current.live()[s].get(ordinal)) {
+                return segment.toDocument(ordinal, objectMapper);
+            }
+        }
+        return null;
     }
-    
+
+    /**
+     * 遍历当前状态的全部存活文档，不加锁
+     */
+    @Override
+    public List<Document> findAllWithMetadata(String key) {
+        State current = state;
+        List<Document> documents = new ArrayList<>();
+        for (int s = 0; s < current.segments().length; s++) {
+            MemorySegment segment = current.segments()[s];
+            BitSet live = current.live()[s];
+            for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+                Document doc = segment.toDocument(i, objectMapper);
+                if (doc.getMetadata() != null && doc.getMetadata().containsKey(key)) {
+                    documents.add(doc);
+                }
+            }
+        }
+        return documents;
+    }
+
     @Override
     public void delete(String id) {
-        Document doc = documents.remove(id);
-        if (doc != null) {
-            // 从倒排索引中删除
-            String[] words = doc.getContent().toLowerCase().split("\\s+");
-            for (String word : words) {
-                Set<String> docIds = invertedIndex.get(word);
-                if (docIds != null) {
-                    docIds.remove(id);
-                    if (docIds.isEmpty()) {
-                        invertedIndex.remove(word);
-                    }
+        writeLock.lock();
+        try {
+            Set<BitSet> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+            boolean removed = buffer.remove(id) != null || deleteSealed(id, owned);
+            if (removed) {
+                tail = buffer.isEmpty() ? null : MemorySegment.build(buffer.values(), embeddingDim);
+                maintainSegments();
+                publish();
+                modifications.incrementAndGet();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 写入一批文档并发布新状态
+     * 每次调用只构建一次尾段，批量导入时新状态的发布成本按批摊销。
+     */
+    private void write(List<Document> docs) {
+        List<PendingDocument> pending = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            pending.add(toPending(doc));
+        }
+
+        writeLock.lock();
+        try {
+            // 本次写操作中新建、尚未发布的位图，可以直接修改
+            Set<BitSet> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (PendingDocument doc : pending) {
+                if (buffer.remove(doc.id()) == null) {
+                    deleteSealed(doc.id(), owned);
+                }
+                buffer.put(doc.id(), checkEmbedding(doc));
+                if (buffer.size() >= BUFFER_DOCS) {
+                    seal(owned);
                 }
             }
+            tail = buffer.isEmpty() ? null : MemorySegment.build(buffer.values(), embeddingDim);
+            maintainSegments();
+            publish();
+            modifications.addAndGet(pending.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 分词与元数据编码，不需要持有写锁
+     */
+    private PendingDocument toPending(Document doc) {
+        Map<String, Object> meta = doc.getMetadata();
+        byte[] metadataBytes = null;
+        if (meta != null && !meta.isEmpty()) {
+            try {
+                metadataBytes = objectMapper.writeValueAsBytes(meta);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("元数据无法序列化", e);
+            }
+        }
+        Integer minAge = SearchRequest.intValue(meta, SearchRequest.META_MIN_AGE);
+        Integer maxAge = SearchRequest.intValue(meta, SearchRequest.META_MAX_AGE);
+        Object gameType = meta != null ? meta.get(SearchRequest.META_GAME_TYPE) : null;
+
+        return new PendingDocument(doc.getId(), doc.getContent(), doc.getType(), metadataBytes,
+            minAge != null ? minAge : MemorySegment.NO_AGE,
+            maxAge != null ? maxAge : MemorySegment.NO_AGE,
+            gameType != null ? gameType.toString() : null,
+            doc.getEmbedding(),
+            termFrequencies(doc.getContent()));
+    }
+
+    /**
+     * 校验向量维度，不一致时丢弃该文档的向量
+     */
+    private PendingDocument checkEmbedding(PendingDocument doc) {
+        if (doc.embedding() == null) {
+            return doc;
+        }
+        if (embeddingDim < 0) {
+            embeddingDim = doc.embedding().length;
+        }
+        if (doc.embedding().length != embeddingDim) {
+            log.warn("⚠️ 向量维度 {} 与存储维度 {} 不一致，忽略该文档的向量: {}",
+                doc.embedding().length, embeddingDim, doc.id());
+            return doc.withoutEmbedding();
+        }
+        return doc;
+    }
+
+    /**
+     * 在已封存的段中删除文档：复制该段的存活位图后清除对应位
+     *
+     * @param owned 本次写操作中已复制过的位图，避免同一操作内重复复制
+     */
+    private boolean deleteSealed(String id, Set<BitSet> owned) {
+        for (int s = sealed.size() - 1; s >= 0; s--) {
+            Integer ordinal = sealed.get(s).ordinals.get(id);
+            BitSet live = sealedLive.get(s);
+            if (ordinal == null || !live.get(ordinal)) {
+                continue;
+            }
+            if (!owned.contains(live)) {
+                live = (BitSet) live.clone();
+                sealedLive.set(s, live);
+                owned.add(live);
+            }
+            live.clear(ordinal);
+            return true;
         }
+        return false;
     }
-    
+
     /**
-     * 计算文档相关性分数（简化版TF-IDF）
+     * 将写缓冲封存为段
      */
-    private double calculateScore(Document doc, String[] queryWords) {
-        String content = doc.getContent().toLowerCase();
-        double score = 0;
-        
-        for (String word : queryWords) {
-            // 计算词频
-            int count = countOccurrences(content, word);
-            if (count > 0) {
-                // 简单的TF分数
-                double tf = 1 + Math.log(count);
-                
-                // 简单的IDF分数（文档越少包含该词，分数越高）
-                Set<String> docsWithWord = invertedIndex.get(word);
-                double idf = docsWithWord != null ? 
-                    Math.log(documents.size() / (double) docsWithWord.size()) : 0;
-                
-                score += tf * idf;
+    private void seal(Set<BitSet> owned) {
+        MemorySegment segment = MemorySegment.build(buffer.values(), embeddingDim);
+        BitSet live = segment.newLiveBits();
+        sealed.add(segment);
+        sealedLive.add(live);
+        owned.add(live);
+        buffer.clear();
+    }
+
+    /**
+     * 段维护：重写删除过多的段，再从末尾起合并大小接近的相邻段（分层合并，
+     * 每个文档被合并的次数约为 log(文档数)）
+     */
+    private void maintainSegments() {
+        for (int s = 0; s < sealed.size(); s++) {
+            MemorySegment segment = sealed.get(s);
+            int deleted = segment.size - sealedLive.get(s).cardinality();
+            if (deleted >= PURGE_MIN_DELETED && deleted > segment.size * PURGE_RATIO) {
+                mergeRange(s, s + 1);
+            }
+        }
+
+        while (sealed.size() >= 2) {
+            int last = sealed.size() - 1;
+            int previousLive = sealedLive.get(last - 1).cardinality();
+            int lastLive = sealedLive.get(last).cardinality();
+            if (previousLive >= lastLive * MERGE_FACTOR) {
+                break;
+            }
+            mergeRange(last - 1, last + 1);
+        }
+
+        // 全部删除的段直接移除
+        for (int s = sealed.size() - 1; s >= 0; s--) {
+            if (sealedLive.get(s).isEmpty()) {
+                sealed.remove(s);
+                sealedLive.remove(s);
             }
         }
-        
-        // 考虑文档类型权重
-        if (doc.getType() == DocumentType.SUCCESS_CASE) {
-            score *= 1.5;  // 成功案例权重更高
-        } else if (doc.getType() == DocumentType.EDUCATION_THEORY) {
-            score *= 1.3;  // 教育理论权重次之
+    }
+
+    /**
+     * 将 [from, to) 范围内的段合并为一个新段
+     */
+    private void mergeRange(int from, int to) {
+        long start = System.currentTimeMillis();
+        List<MemorySegment> segments = new ArrayList<>(sealed.subList(from, to));
+        List<BitSet> live = new ArrayList<>(sealedLive.subList(from, to));
+        MemorySegment merged = MemorySegment.merge(segments, live, embeddingDim);
+
+        sealed.subList(from, to).clear();
+        sealedLive.subList(from, to).clear();
+        sealed.add(from, merged);
+        sealedLive.add(from, merged.newLiveBits());
+
+        if (merged.size >= PURGE_MIN_DELETED) {
+            log.info("🧹 内存向量库合并 {} 个段: {} 个文档, {} 个词项, 耗时 {}ms",
+                segments.size(), merged.size, merged.terms.length, System.currentTimeMillis() - start);
         }
-        
-        return score;
     }
-    
+
     /**
-     * 统计词频
+     * 以当前的段列表与尾段构建不可变状态并发布
      */
-    private int countOccurrences(String text, String word) {
-        int count = 0;
-        int index = 0;
-        while ((index = text.indexOf(word, index)) != -1) {
-            count++;
-            index += word.length();
+    private void publish() {
+        int count = sealed.size() + (tail != null ? 1 : 0);
+        MemorySegment[] segments = new MemorySegment[count];
+        BitSet[] live = new BitSet[count];
+        int liveCount = 0;
+        for (int s = 0; s < sealed.size(); s++) {
+            segments[s] = sealed.get(s);
+            live[s] = sealedLive.get(s);
+            liveCount += live[s].cardinality();
+        }
+        if (tail != null) {
+            segments[count - 1] = tail;
+            live[count - 1] = tail.newLiveBits();
+            liveCount += tail.size;
         }
-        return count;
+        state = new State(segments, live, liveCount);
     }
-    
+
+    /**
+     * 分词（按空白切分、转小写）并统计词频，保持首次出现顺序
+     */
+    private Map<String, Integer> termFrequencies(String content) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        if (content == null) {
+            return frequencies;
+        }
+        for (String word : content.toLowerCase().split("\\s+")) {
+            if (!word.isEmpty()) {
+                frequencies.merge(word, 1, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    // ==================== 检索 ====================
+
+    private record Hit(int segment, int ordinal, double score) {}
+
+    /**
+     * 累加各段候选文档的 TF-IDF 分数（简化版）
+     * tf = 1 + ln(词频)，idf = ln(存活文档数 / 各段文档频率之和)
+     */
+    private List<Map<Integer, Double>> score(String query, State current, BitSet[] candidates) {
+        MemorySegment[] segments = current.segments();
+        List<Map<Integer, Double>> scores = new ArrayList<>(segments.length);
+        for (int s = 0; s < segments.length; s++) {
+            scores.add(new HashMap<>());
+        }
+        if (query == null) {
+            return scores;
+        }
+
+        for (String word : termFrequencies(query).keySet()) {
+            int docFreq = 0;
+            for (MemorySegment segment : segments) {
+                docFreq += segment.docFreq(word);
+            }
+            if (docFreq <= 0) {
+                continue;
+            }
+            // 文档越少包含该词，分数越高
+            double idf = Math.log(current.liveCount() / (double) docFreq);
+            if (idf <= 0) {
+                continue;
+            }
+            for (int s = 0; s < segments.length; s++) {
+                segments[s].score(word, idf, candidates[s], scores.get(s));
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * 文档类型权重
+     */
+    private double typeWeight(byte type) {
+        if (type == DocumentType.SUCCESS_CASE.ordinal()) {
+            return 1.5;  // 成功案例权重更高
+        } else if (type == DocumentType.EDUCATION_THEORY.ordinal()) {
+            return 1.3;  // 教育理论权重次之
+        }
+        return 1.0;
+    }
+
+    // ==================== 快照 ====================
+
+    /**
+     * 立即写入快照，写出调用时已发布的状态，不阻塞写入与检索
+     */
+    public void snapshot() {
+        synchronized (snapshotMonitor) {
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                log.error("写入内存向量库快照失败", e);
+            }
+        }
+    }
+
+    private void snapshotIfChanged() {
+        if (modifications.get() != snapshotModifications) {
+            snapshot();
+        }
+    }
+
+    /**
+     * 快照格式 v3（大端），按段写出，加载时无需重新分词：
+     * <pre>
+     * magic(4) version(4) 写入时间(8)
+     * 段数(4)，每段：存活位图 + 段数据（格式见 {@link MemorySegment#writeTo}）
+     * CRC32(8)
+     * </pre>
+     * 先写临时文件再原子替换，写到一半退出不会损坏旧快照。
+     */
+    private void writeSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        Path path = Paths.get(snapshotPath);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        // 先取计数再取状态：期间发生的写入会让下一次定时快照再写一次
+        long modificationsAtStart = modifications.get();
+        State current = state;
+
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), crc))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(current.segments().length);
+            for (int s = 0; s < current.segments().length; s++) {
+                MemorySegment.writeBits(out, current.live()[s]);
+                current.segments()[s].writeTo(out);
+            }
+
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        snapshotModifications = modificationsAtStart;
+        log.info("💾 内存向量库快照已写入: {} 个文档, {} 个段, {} 字节, 耗时 {}ms",
+            current.liveCount(), current.segments().length, Files.size(path), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 流式加载快照；文件不存在、版本不符或校验失败时从空库启动，由知识导入重新写入
+     */
+    private void loadSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        CRC32 crc = new CRC32();
+        writeLock.lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(path), 1 << 16))) {
+            DataInputStream body = new DataInputStream(new CheckedInputStream(in, crc));
+            if (body.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("不是内存向量库快照文件");
+            }
+            int version = body.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("不支持的快照版本: " + version);
+            }
+            body.readLong();
+
+            List<MemorySegment> segments = new ArrayList<>();
+            List<BitSet> live = new ArrayList<>();
+            int count = body.readInt();
+            for (int s = 0; s < count; s++) {
+                live.add(MemorySegment.readBits(body));
+                segments.add(MemorySegment.readFrom(body));
+            }
+
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("快照校验失败");
+            }
+
+            sealed.clear();
+            sealedLive.clear();
+            buffer.clear();
+            tail = null;
+            sealed.addAll(segments);
+            sealedLive.addAll(live);
+            for (MemorySegment segment : segments) {
+                if (segment.embeddingDim > 0) {
+                    embeddingDim = segment.embeddingDim;
+                }
+            }
+            publish();
+
+            snapshotModifications = modifications.get();
+            log.info("✅ 已从快照恢复内存向量库: {} 个文档, {} 个段, 耗时 {}ms",
+                state.liveCount(), segments.size(), System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ 加载内存向量库快照失败，从空库启动: {}", e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ==================== 统计 ====================
+
     /**
      * 获取统计信息
      */
     public Map<String, Object> getStats() {
+        State current = state;
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalDocuments", documents.size());
-        stats.put("indexedWords", invertedIndex.size());
-        
-        // 按类型统计
-        Map<DocumentType, Long> typeCount = documents.values().stream()
-            .collect(Collectors.groupingBy(
-                Document::getType, 
-                Collectors.counting()
-            ));
+        stats.put("totalDocuments", current.liveCount());
+
+        int total = 0;
+        Set<String> words = new HashSet<>();
+        Map<DocumentType, Integer> typeCount = new EnumMap<>(DocumentType.class);
+        for (int s = 0; s < current.segments().length; s++) {
+            MemorySegment segment = current.segments()[s];
+            BitSet live = current.live()[s];
+            total += segment.size;
+            for (int i = 0; i < segment.terms.length; i++) {
+                words.add(segment.terms[i]);
+            }
+            // 按类型统计
+            segment.typeBits.forEach((type, bits) -> {
+                BitSet liveOfType = (BitSet) bits.clone();
+                liveOfType.and(live);
+                if (!liveOfType.isEmpty()) {
+                    typeCount.merge(type, liveOfType.cardinality(), Integer::sum);
+                }
+            });
+        }
+        stats.put("deletedDocuments", total - current.liveCount());
+        stats.put("indexedWords", words.size());
+        stats.put("segments", current.segments().length);
         stats.put("documentsByType", typeCount);
-        
+        stats.put("memory", memoryReport(current));
         return stats;
     }
-}
\ No newline at end of file
+
+    /**
+     * 各组成部分的堆内存估算（字节），按64位JVM、压缩指针估算对象头与引用
+     */
+    public Map<String, Long> getMemoryReport() {
+        return memoryReport(state);
+    }
+
+    private Map<String, Long> memoryReport(State current) {
+        Map<String, Long> report = new LinkedHashMap<>();
+        for (String key : List.of("termDictionary", "postings", "documentIds", "contents",
+                "metadata", "columns", "embeddings", "filterBitsets")) {
+            report.put(key, 0L);
+        }
+        long liveBits = 0;
+        for (int s = 0; s < current.segments().length; s++) {
+            current.segments()[s].addMemory(report);
+            liveBits += current.live()[s].size() / 8;
+        }
+        report.merge("filterBitsets", liveBits, Long::sum);
+        report.put("total", report.values().stream().mapToLong(Long::longValue).sum());
+        return report;
+    }
+}
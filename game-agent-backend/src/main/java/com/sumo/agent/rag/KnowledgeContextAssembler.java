@@ -0,0 +1,185 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.core.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 知识上下文组装器
+ * 位于意图分析与Agent执行之间：按 GameConfig 检索知识，去重并按token预算截断，
+ * 组装结果按 (gameType, ageGroup, theme) 缓存，避免每次生成都走一次检索。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "agent.rag.enabled", havingValue = "true")
+public class KnowledgeContextAssembler {
+
+    @Autowired
+    private GameKnowledgeRAG gameKnowledgeRAG;
+
+    /**
+     * 知识上下文的token预算
+     */
+    @Value("${agent.rag.context.max-tokens:600}")
+    private int maxTokens;
+
+    @Value("${agent.rag.context.cache-size:256}")
+    private int cacheSize;
+
+    @Value("${agent.rag.context.cache-ttl-minutes:60}")
+    private long cacheTtlMinutes;
+
+    private final Map<String, CachedContext> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedContext> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private long hits;
+    private long misses;
+
+    /**
+     * 组装知识上下文
+     *
+     * @param config 游戏配置
+     * @return 组装结果，没有可用知识时 text 为空串
+     */
+    public AssembledContext assemble(GameConfig config) {
+        String key = cacheKey(config);
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            CachedContext cached = cache.get(key);
+            if (cached != null && cached.expiresAt() > now) {
+                hits++;
+                log.debug("📦 命中知识上下文缓存: {}", key);
+                return cached.context().withCached(true);
+            }
+            misses++;
+        }
+
+        String gameType = config.getGameType() != null ? config.getGameType().getDisplayName() : "教育游戏";
+        String query = gameType + " " + (config.getTheme() != null ? config.getTheme() : "");
+        GameKnowledgeRAG.GameGenerationContext rag = gameKnowledgeRAG.enhanceWithRAG(query, config.getAgeGroup(), config.getGameType());
+
+        AssembledContext context = build(rag);
+
+        // 部分结果不入缓存，避免一次超时长期影响生成质量
+        if (!rag.isPartial()) {
+            synchronized (cache) {
+                cache.put(key, new CachedContext(context, now + cacheTtlMinutes * 60_000));
+            }
+        }
+
+        log.info("🧩 组装知识上下文: {} 个片段, 约 {} tokens", context.snippetCount(), context.tokens());
+        return context;
+    }
+
+    /**
+     * 清空缓存（知识库更新后调用）
+     */
+    public void invalidate() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        synchronized (cache) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("size", cache.size());
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            return stats;
+        }
+    }
+
+    /**
+     * 去重并按预算组装，三类知识按排名轮流取用，保证每类都有机会进入上下文
+     */
+    private AssembledContext build(GameKnowledgeRAG.GameGenerationContext rag) {
+        List<Section> sections = List.of(
+            new Section("相关游戏设计模式", rag.getDesignPatterns()),
+            new Section("教育理论指导", rag.getEducationTheories()),
+            new Section("成功案例参考", rag.getSuccessCases())
+        );
+
+        Set<String> seen = new HashSet<>();
+        Map<String, List<String>> selected = new LinkedHashMap<>();
+        sections.forEach(s -> selected.put(s.title(), new ArrayList<>()));
+
+        int used = 0;
+        int count = 0;
+        int maxRank = sections.stream().mapToInt(s -> s.snippets().size()).max().orElse(0);
+        for (int rank = 0; rank < maxRank; rank++) {
+            for (Section section : sections) {
+                if (rank >= section.snippets().size()) {
+                    continue;
+                }
+                String snippet = section.snippets().get(rank).trim();
+                if (snippet.isEmpty() || !seen.add(normalize(snippet))) {
+                    continue;
+                }
+                int tokens = TokenEstimator.estimate(snippet);
+                if (used + tokens > maxTokens) {
+                    continue;
+                }
+                selected.get(section.title()).add(snippet);
+                used += tokens;
+                count++;
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        selected.forEach((title, snippets) -> {
+            if (!snippets.isEmpty()) {
+                text.append("=== ").append(title).append(" ===\n");
+                snippets.forEach(s -> text.append(s).append("\n\n"));
+            }
+        });
+
+        String result = text.toString().trim();
+        return new AssembledContext(result, TokenEstimator.estimate(result), count, false);
+    }
+
+    private String normalize(String snippet) {
+        return snippet.replaceAll("\\s+", " ");
+    }
+
+    private String cacheKey(GameConfig config) {
+        return config.getGameType() + "|" + config.getAgeGroup() + "|" + config.getTheme();
+    }
+
+    private record Section(String title, List<String> snippets) {}
+
+    private record CachedContext(AssembledContext context, long expiresAt) {}
+
+    /**
+     * 组装好的知识上下文
+     *
+     * @param text 可直接拼入提示词的文本
+     * @param tokens 估算的token数
+     * @param snippetCount 片段数量
+     * @param cached 是否来自缓存
+     */
+    public record AssembledContext(String text, int tokens, int snippetCount, boolean cached) {
+        AssembledContext withCached(boolean cached) {
+            return new AssembledContext(text, tokens, snippetCount, cached);
+        }
+    }
+}
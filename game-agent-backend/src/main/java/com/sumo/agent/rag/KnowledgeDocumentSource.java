@@ -0,0 +1,66 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Elasticsearch 索引中的文档 _source
+ * 直接由客户端反序列化，embedding 以 float[] 接收，无需经过 Map 与 List<Double> 转换
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KnowledgeDocumentSource {
+
+    private String id;
+
+    private String content;
+
+    private VectorStore.DocumentType type;
+
+    /**
+     * 检索时默认通过 _source 过滤排除，仅在显式要求时返回
+     */
+    private float[] embedding;
+
+    private Map<String, Object> metadata;
+
+    @JsonProperty("created_at")
+    private Date createdAt;
+
+    /**
+     * 由 Document 构建索引文档
+     */
+    public static KnowledgeDocumentSource from(VectorStore.Document document) {
+        KnowledgeDocumentSource source = new KnowledgeDocumentSource();
+        source.setId(document.getId());
+        source.setContent(document.getContent());
+        source.setType(document.getType());
+        source.setEmbedding(document.getEmbedding());
+        source.setMetadata(document.getMetadata());
+        source.setCreatedAt(new Date());
+        return source;
+    }
+
+    /**
+     * 转换为 Document
+     */
+    public VectorStore.Document toDocument() {
+        VectorStore.Document doc = new VectorStore.Document();
+        doc.setId(id);
+        doc.setContent(content);
+        doc.setType(type);
+        doc.setEmbedding(embedding);
+        doc.setMetadata(metadata);
+        return doc;
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * 知识库文件导入服务
+ * 从 classpath:knowledge/ 与外部目录读取 Markdown/JSON 知识文档，经 DocumentChunker 切分为片段后写入 VectorStore。
+ *
+ * - 按文件内容哈希判断是否变化，未变化的文件不会重复写入
+ * - 启动时从存储中按来源（{@link #META_SOURCE}）重建已写入状态，删除停机期间被删除的文件对应的文档
+ * - 外部目录变化时增量更新：新增/修改的文件重新写入，删除或缩短的文件删除多余片段
+ * - 解析失败的文件保留上一次写入的文档，不视为空文件
+ * - 导入在后台线程执行，不阻塞应用启动
+ *
+ * Markdown 文件可在开头用 front matter 指定 id、type 及其他元数据：
+ * <pre>
+ * ---
+ * id: pattern-math-visual
+ * type: DESIGN_PATTERN
+ * gameType: MATH
+ * minAge: 5
+ * maxAge: 8
+ * ---
+ * 正文...
+ * </pre>
+ * gameType、minAge、maxAge 用于检索时的过滤（见 {@link SearchRequest}），不声明则视为通用知识。
+ * JSON 文件可以是单个对象或对象数组，字段为 id/type/content/metadata。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "agent.rag.enabled", havingValue = "true")
+public class KnowledgeIngestionService {
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
+    /**
+     * 元数据：来源文件
+     */
+    public static final String META_SOURCE = "source";
+
+    /**
+     * 元数据：来源文件内容哈希
+     */
+    public static final String META_SOURCE_HASH = "sourceHash";
+
+    /**
+     * 元数据：来源文件切分出的文档数，重建状态时用于发现写入不完整的来源
+     */
+    public static final String META_SOURCE_DOCUMENTS = "sourceDocuments";
+
+    @Autowired(required = false)
+    private VectorStore vectorStore;
+
+    @Autowired(required = false)
+    private KnowledgeContextAssembler knowledgeContextAssembler;
+
+    @Autowired
+    private DocumentChunker documentChunker;
+
+    /**
+     * 外部知识目录，不存在时只导入内置知识
+     */
+    @Value("${agent.rag.knowledge.dir:./knowledge}")
+    private String knowledgeDir;
+
+    @Value("${agent.rag.knowledge.watch:true}")
+    private boolean watchEnabled;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 来源 -> 已写入状态
+     */
+    private final Map<String, SourceState> sources = new ConcurrentHashMap<>();
+
+    private final ExecutorService ingestExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "knowledge-ingest");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile WatchService watchService;
+
+    /**
+     * 已写入的来源状态
+     *
+     * @param hash 内容哈希，从存储重建时片段哈希不一致或片段不全则为 null（需重新写入）
+     */
+    private record SourceState(String hash, List<String> documentIds) {}
+
+    /**
+     * 应用启动完成后在后台导入
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (vectorStore == null) {
+            return;
+        }
+        ingestExecutor.submit(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                boolean restored = restoreSources();
+                Set<String> seen = new HashSet<>();
+                int changed = ingestClasspath(seen) + ingestDirectory(seen);
+                if (restored) {
+                    changed += removeMissingSources(seen);
+                }
+                log.info("✅ 知识库导入完成: {} 个来源, {} 个有更新, 耗时 {}ms",
+                    sources.size(), changed, System.currentTimeMillis() - start);
+                if (changed > 0) {
+                    invalidateContextCache();
+                }
+                if (watchEnabled) {
+                    startWatching();
+                }
+            } catch (Exception e) {
+                log.error("❌ 知识库导入失败", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestExecutor.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("关闭目录监听失败", e);
+            }
+        }
+    }
+
+    /**
+     * 获取导入统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sources", sources.size());
+        stats.put("documents", sources.values().stream().mapToInt(s -> s.documentIds().size()).sum());
+        stats.put("knowledgeDir", knowledgeDir);
+        stats.put("watching", watchService != null);
+        return stats;
+    }
+
+    // ==================== 导入 ====================
+
+    /**
+     * 从存储中重建 来源 -> 文档 的状态，使重启后的增量判断与清理基于存储中的实际文档
+     * 同一来源的片段哈希不一致或片段数少于写入时的文档数（上次写入中断或部分失败）时不记录哈希，该来源会被重新写入
+     *
+     * @return 是否成功重建（读取存储失败时为 false）
+     */
+    private boolean restoreSources() {
+        List<VectorStore.Document> stored;
+        try {
+            stored = vectorStore.findAllWithMetadata(META_SOURCE);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ 无法从存储重建知识来源，停机期间删除或缩短的文件可能残留旧文档: {}", e.getMessage());
+            return false;
+        }
+
+        Map<String, List<String>> idsBySource = new LinkedHashMap<>();
+        Map<String, Set<Object>> hashesBySource = new HashMap<>();
+        Map<String, Set<Object>> countsBySource = new HashMap<>();
+        for (VectorStore.Document doc : stored) {
+            String source = String.valueOf(doc.getMetadata().get(META_SOURCE));
+            idsBySource.computeIfAbsent(source, k -> new ArrayList<>()).add(doc.getId());
+            hashesBySource.computeIfAbsent(source, k -> new HashSet<>()).add(doc.getMetadata().get(META_SOURCE_HASH));
+            countsBySource.computeIfAbsent(source, k -> new HashSet<>()).add(doc.getMetadata().get(META_SOURCE_DOCUMENTS));
+        }
+        idsBySource.forEach((source, ids) -> {
+            Set<Object> hashes = hashesBySource.get(source);
+            Set<Object> counts = countsBySource.get(source);
+            boolean complete = counts.size() == 1 && counts.iterator().next() instanceof Number n && n.intValue() == ids.size();
+            String hash = complete && hashes.size() == 1 && hashes.iterator().next() instanceof String h ? h : null;
+            sources.put(source, new SourceState(hash, ids));
+        });
+        log.info("📚 存储中已有 {} 个知识来源, {} 个文档", idsBySource.size(), stored.size());
+        return true;
+    }
+
+    /**
+     * 删除本次扫描中不存在的来源（停机期间被删除的文件）
+     */
+    private int removeMissingSources(Set<String> seen) {
+        List<String> missing = sources.keySet().stream().filter(source -> !seen.contains(source)).toList();
+        missing.forEach(this::removeSource);
+        return missing.size();
+    }
+
+    /**
+     * 导入内置知识（classpath:knowledge/）
+     *
+     * @param seen 收集扫描到的来源
+     */
+    private int ingestClasspath(Set<String> seen) throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        int changed = 0;
+        for (String pattern : List.of("classpath*:knowledge/**/*.md", "classpath*:knowledge/**/*.json")) {
+            for (Resource resource : resolver.getResources(pattern)) {
+                String url = resource.getURL().toString();
+                String relative = url.substring(url.lastIndexOf("knowledge/") + "knowledge/".length());
+                seen.add(CLASSPATH_PREFIX + relative);
+                try (InputStream in = resource.getInputStream()) {
+                    String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    if (ingestSource(CLASSPATH_PREFIX + relative, relative, text)) {
+                        changed++;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 导入外部目录
+     *
+     * @param seen 收集扫描到的来源
+     */
+    private int ingestDirectory(Set<String> seen) throws IOException {
+        Path dir = Paths.get(knowledgeDir);
+        if (!Files.isDirectory(dir)) {
+            log.debug("外部知识目录不存在，跳过: {}", dir.toAbsolutePath());
+            return 0;
+        }
+        int changed = 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(this::isKnowledgeFile).toList()) {
+                seen.add(sourceOf(file));
+                if (ingestFile(dir, file)) {
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private String sourceOf(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private boolean ingestFile(Path dir, Path file) {
+        try {
+            String relative = dir.relativize(file).toString().replace('\\', '/');
+            return ingestSource(sourceOf(file), relative,
+                Files.readString(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("读取知识文件失败: {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * 导入单个来源
+     *
+     * @param source 来源标识（classpath相对路径或文件绝对路径）
+     * @param relative 相对知识根目录的路径，用于推断默认id和类型
+     * @param text 文件内容
+     * @return 是否有写入
+     */
+    private boolean ingestSource(String source, String relative, String text) {
+        String hash = sha256(text);
+
+        SourceState previous = sources.get(source);
+        if (previous != null && hash.equals(previous.hash())) {
+            return false;
+        }
+
+        List<VectorStore.Document> documents = parse(relative, text);
+        if (documents == null) {
+            // 解析失败：保留已写入的文档，文件修正后再更新
+            return false;
+        }
+        documents.forEach(doc -> {
+            doc.getMetadata().put(META_SOURCE, source);
+            doc.getMetadata().put(META_SOURCE_HASH, hash);
+            doc.getMetadata().put(META_SOURCE_DOCUMENTS, documents.size());
+        });
+
+        try {
+            vectorStore.saveAll(documents);
+        } catch (RuntimeException e) {
+            // 不记录新哈希：下次导入（文件变化、重启）时整体重新写入
+            log.error("❌ 导入知识失败，稍后重试: {}", source, e);
+            return false;
+        }
+
+        // 删除文件变短后多出的旧片段
+        List<String> newIds = ids(documents);
+        if (previous != null) {
+            previous.documentIds().stream()
+                .filter(id -> !newIds.contains(id))
+                .forEach(vectorStore::delete);
+        }
+        sources.put(source, new SourceState(hash, newIds));
+        log.debug("📥 导入知识: {} -> {} 个文档", source, documents.size());
+        return true;
+    }
+
+    private void removeSource(String source) {
+        SourceState state = sources.remove(source);
+        if (state != null) {
+            state.documentIds().forEach(vectorStore::delete);
+            log.info("🗑️ 移除知识: {} ({} 个文档)", source, state.documentIds().size());
+        }
+    }
+
+    // ==================== 目录监听 ====================
+
+    private void startWatching() throws IOException {
+        Path dir = Paths.get(knowledgeDir);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        Map<WatchKey, Path> keys = new HashMap<>();
+        registerAll(dir, keys);
+
+        Thread watcher = new Thread(() -> watchLoop(dir, keys), "knowledge-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("👀 监听知识目录: {}", dir.toAbsolutePath());
+    }
+
+    private void registerAll(Path root, Map<WatchKey, Path> keys) throws IOException {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path d : dirs.filter(Files::isDirectory).toList()) {
+                keys.put(d.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE), d);
+            }
+        }
+    }
+
+    private void watchLoop(Path root, Map<WatchKey, Path> keys) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // 合并短时间内的连续事件（编辑器保存通常触发多次）
+                Thread.sleep(300);
+
+                Set<Path> changed = new LinkedHashSet<>();
+                do {
+                    Path base = keys.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (base != null && event.context() instanceof Path name) {
+                            changed.add(base.resolve(name));
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+
+                for (Path path : changed) {
+                    if (Files.isDirectory(path)) {
+                        registerAll(path, keys);
+                    }
+                }
+                ingestExecutor.submit(() -> applyChanges(root, changed));
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("知识目录监听异常", e);
+        }
+    }
+
+    private void applyChanges(Path root, Set<Path> changed) {
+        int updated = 0;
+        for (Path path : changed) {
+            String source = sourceOf(path);
+            if (Files.isRegularFile(path) && isKnowledgeFile(path)) {
+                if (ingestFile(root, path)) {
+                    updated++;
+                }
+            } else if (!Files.exists(path)) {
+                // 删除的可能是文件，也可能是整个目录
+                List<String> removed = sources.keySet().stream()
+                    .filter(s -> s.equals(source) || s.startsWith(source + java.io.File.separator))
+                    .toList();
+                removed.forEach(this::removeSource);
+                updated += removed.size();
+            } else if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    for (Path file : files.filter(this::isKnowledgeFile).toList()) {
+                        if (ingestFile(root, file)) {
+                            updated++;
+                        }
+                    }
+                } catch (IOException e) {
+                    log.error("读取知识目录失败: {}", path, e);
+                }
+            }
+        }
+        if (updated > 0) {
+            log.info("🔄 知识库增量更新: {} 个来源", updated);
+            invalidateContextCache();
+        }
+    }
+
+    private void invalidateContextCache() {
+        if (knowledgeContextAssembler != null) {
+            knowledgeContextAssembler.invalidate();
+        }
+    }
+
+    // ==================== 解析 ====================
+
+    private boolean isKnowledgeFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return Files.isRegularFile(path) && (name.endsWith(".md") || name.endsWith(".json"));
+    }
+
+    /**
+     * 解析知识文件，失败时返回 null（与内容为空的文件区分）
+     */
+    private List<VectorStore.Document> parse(String relative, String text) {
+        try {
+            return relative.toLowerCase().endsWith(".json")
+                ? parseJson(relative, text)
+                : parseMarkdown(relative, text);
+        } catch (Exception e) {
+            log.error("解析知识文件失败，保留上一次导入的内容: {}", relative, e);
+            return null;
+        }
+    }
+
+    private List<VectorStore.Document> parseMarkdown(String relative, String text) {
+        Map<String, Object> frontMatter = new LinkedHashMap<>();
+        String body = text;
+        if (text.startsWith("---")) {
+            int end = text.indexOf("\n---", 3);
+            if (end > 0) {
+                for (String line : text.substring(3, end).split("\n")) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        frontMatter.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                    }
+                }
+                int bodyStart = text.indexOf('\n', end + 4);
+                body = bodyStart > 0 ? text.substring(bodyStart + 1) : "";
+            }
+        }
+
+        String id = (String) frontMatter.remove("id");
+        String type = (String) frontMatter.remove("type");
+        return documentChunker.chunk(
+            id != null ? id : defaultId(relative),
+            body.trim(),
+            resolveType(type, relative),
+            frontMatter
+        );
+    }
+
+    private List<VectorStore.Document> parseJson(String relative, String text) throws IOException {
+        JsonNode root = objectMapper.readTree(text);
+        List<JsonNode> nodes = new ArrayList<>();
+        if (root.isArray()) {
+            root.forEach(nodes::add);
+        } else {
+            nodes.add(root);
+        }
+
+        List<VectorStore.Document> documents = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            JsonNode node = nodes.get(i);
+            String id = node.hasNonNull("id") ? node.get("id").asText()
+                : defaultId(relative) + (nodes.size() > 1 ? "-" + i : "");
+            String type = node.hasNonNull("type") ? node.get("type").asText() : null;
+            Map<String, Object> metadata = node.has("metadata")
+                ? objectMapper.convertValue(node.get("metadata"), objectMapper.getTypeFactory()
+                    .constructMapType(LinkedHashMap.class, String.class, Object.class))
+                : new LinkedHashMap<>();
+            documents.addAll(documentChunker.chunk(id, node.path("content").asText(""), resolveType(type, relative), metadata));
+        }
+        return documents;
+    }
+
+    /**
+     * 类型优先取显式声明，其次按所在目录名推断（如 design-pattern/ -> DESIGN_PATTERN）
+     */
+    private VectorStore.DocumentType resolveType(String declared, String relative) {
+        if (declared != null && !declared.isBlank()) {
+            return VectorStore.DocumentType.valueOf(declared.trim().toUpperCase());
+        }
+        int slash = relative.indexOf('/');
+        if (slash > 0) {
+            String dirName = relative.substring(0, slash).toUpperCase().replace('-', '_');
+            for (VectorStore.DocumentType type : VectorStore.DocumentType.values()) {
+                if (type.name().equals(dirName)) {
+                    return type;
+                }
+            }
+        }
+        return VectorStore.DocumentType.GAME_TEMPLATE;
+    }
+
+    private String defaultId(String relative) {
+        int dot = relative.lastIndexOf('.');
+        return (dot > 0 ? relative.substring(0, dot) : relative).replace('/', '-');
+    }
+
+    private List<String> ids(List<VectorStore.Document> documents) {
+        return documents.stream().map(VectorStore.Document::getId).toList();
+    }
+
+    private String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,675 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumo.agent.rag.VectorStore.Document;
+import com.sumo.agent.rag.VectorStore.DocumentType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 内存向量库的不可变段
+ * 段构建完成后不再修改，检索线程无需加锁即可读取；删除由存储为每个段维护的存活位图表达。
+ *
+ * 段内按列存储：
+ * 1. 词典：词 -> 段内词项id
+ * 2. 文档列：段内序号索引的 id、内容、类型、元数据（JSON字节）与年龄区间
+ * 3. 倒排表：每个词项一个字节数组，按 (文档序号差值, 词频) 变长字节编码
+ * 4. 向量：段内所有 embedding 连续存放在一个 float 数组中
+ */
+final class MemorySegment {
+
+    /**
+     * 年龄列中表示“未声明”的值
+     */
+    static final int NO_AGE = Integer.MIN_VALUE;
+
+    /**
+     * 待写入的文档，分词与元数据编码在获取写锁前完成
+     */
+    record PendingDocument(
+        String id,
+        String content,
+        DocumentType type,
+        byte[] metadata,
+        int minAge,
+        int maxAge,
+        String gameType,
+        float[] embedding,
+        Map<String, Integer> termFrequencies
+    ) {
+        PendingDocument withoutEmbedding() {
+            return new PendingDocument(id, content, type, metadata, minAge, maxAge, gameType, null, termFrequencies);
+        }
+    }
+
+    final int size;
+
+    final Map<String, Integer> ordinals;
+    final String[] ids;
+    final String[] contents;
+    final byte[] types;
+    final byte[][] metadata;
+    final int[] minAges;
+    final int[] maxAges;
+
+    final int embeddingDim;
+    final float[] embeddings;
+    final BitSet embeddingBits;
+
+    final Map<String, Integer> termIds;
+    final String[] terms;
+    final byte[][] postings;
+    /**
+     * 段内包含该词项的文档数（含段构建后被删除的文档，段合并时修正）
+     */
+    final int[] docFreqs;
+
+    final Map<DocumentType, BitSet> typeBits;
+    final Map<String, BitSet> gameTypeBits;
+    /**
+     * 未声明游戏类型的通用文档
+     */
+    final BitSet anyGameTypeBits;
+
+    private MemorySegment(Builder b) {
+        size = b.docCount;
+        ordinals = b.ordinals;
+        ids = Arrays.copyOf(b.ids, size);
+        contents = Arrays.copyOf(b.contents, size);
+        types = Arrays.copyOf(b.types, size);
+        metadata = Arrays.copyOf(b.metadata, size);
+        minAges = Arrays.copyOf(b.minAges, size);
+        maxAges = Arrays.copyOf(b.maxAges, size);
+
+        embeddingDim = b.embeddingDim;
+        embeddings = b.embeddingDim > 0 ? Arrays.copyOf(b.embeddings, size * b.embeddingDim) : new float[0];
+        embeddingBits = b.embeddingBits;
+
+        termIds = b.termIds;
+        terms = Arrays.copyOf(b.terms, b.termCount);
+        postings = new byte[b.termCount][];
+        for (int i = 0; i < b.termCount; i++) {
+            postings[i] = Arrays.copyOf(b.postings[i], b.postingLengths[i]);
+        }
+        docFreqs = Arrays.copyOf(b.docFreqs, b.termCount);
+
+        typeBits = b.typeBits;
+        gameTypeBits = b.gameTypeBits;
+        anyGameTypeBits = b.anyGameTypeBits;
+    }
+
+    /**
+     * 由待写入文档构建段
+     */
+    static MemorySegment build(Collection<PendingDocument> documents, int embeddingDim) {
+        Builder builder = new Builder(documents.size(), embeddingDim);
+        for (PendingDocument doc : documents) {
+            int ordinal = builder.addColumns(doc.id(), doc.content(),
+                (byte) (doc.type() != null ? doc.type().ordinal() : -1),
+                doc.metadata(), doc.minAge(), doc.maxAge(), doc.gameType());
+            if (doc.embedding() != null) {
+                builder.setEmbedding(ordinal, doc.embedding(), 0);
+            }
+            for (Map.Entry<String, Integer> e : doc.termFrequencies().entrySet()) {
+                builder.appendPosting(builder.internTerm(e.getKey()), ordinal, e.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 合并多个段，只保留存活文档
+     * 倒排表直接解码后按新序号重新编码，不重新分词
+     *
+     * @param segments 按写入顺序排列的段
+     * @param live 与 segments 一一对应的存活位图
+     */
+    static MemorySegment merge(List<MemorySegment> segments, List<BitSet> live, int embeddingDim) {
+        int total = 0;
+        for (BitSet bits : live) {
+            total += bits.cardinality();
+        }
+        Builder builder = new Builder(total, embeddingDim);
+
+        for (int s = 0; s < segments.size(); s++) {
+            MemorySegment segment = segments.get(s);
+            BitSet liveBits = live.get(s);
+
+            // 1. 文档列，记录旧序号 -> 新序号
+            int[] remap = new int[segment.size];
+            Arrays.fill(remap, -1);
+            for (int old = liveBits.nextSetBit(0); old >= 0 && old < segment.size; old = liveBits.nextSetBit(old + 1)) {
+                int ordinal = builder.addColumns(segment.ids[old], segment.contents[old], segment.types[old],
+                    segment.metadata[old], segment.minAges[old], segment.maxAges[old], segment.gameTypeOf(old));
+                if (segment.embeddingBits.get(old)) {
+                    builder.setEmbedding(ordinal, segment.embeddings, old * segment.embeddingDim);
+                }
+                remap[old] = ordinal;
+            }
+
+            // 2. 倒排表：各段依次处理，新序号保持递增
+            for (int termId = 0; termId < segment.terms.length; termId++) {
+                byte[] buffer = segment.postings[termId];
+                int pos = 0;
+                int old = -1;
+                int target = -1;
+                while (pos < buffer.length) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = buffer[pos++];
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    int tf = 0;
+                    shift = 0;
+                    do {
+                        b = buffer[pos++];
+                        tf |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    old += delta;
+
+                    if (remap[old] >= 0) {
+                        if (target < 0) {
+                            target = builder.internTerm(segment.terms[termId]);
+                        }
+                        builder.appendPosting(target, remap[old], tf);
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 新的全存活位图
+     */
+    BitSet newLiveBits() {
+        BitSet bits = new BitSet(size);
+        bits.set(0, size);
+        return bits;
+    }
+
+    int docFreq(String term) {
+        Integer termId = termIds.get(term);
+        return termId != null ? docFreqs[termId] : 0;
+    }
+
+    /**
+     * 解码词项的倒排表，对落在候选集中的文档累加 (1 + ln tf) * idf
+     */
+    void score(String term, double idf, BitSet candidates, Map<Integer, Double> scores) {
+        Integer termId = termIds.get(term);
+        if (termId == null) {
+            return;
+        }
+        byte[] buffer = postings[termId];
+        int pos = 0;
+        int ordinal = -1;
+        while (pos < buffer.length) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[pos++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            int tf = 0;
+            shift = 0;
+            do {
+                b = buffer[pos++];
+                tf |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            ordinal += delta;
+            if (candidates.get(ordinal)) {
+                scores.merge(ordinal, (1 + Math.log(tf)) * idf, Double::sum);
+            }
+        }
+    }
+
+    /**
+     * 存活位图与类型、游戏类型位图求交得到候选文档
+     */
+    BitSet filter(SearchRequest request, BitSet live) {
+        if (!request.hasFilters()) {
+            return live;
+        }
+        BitSet bits = (BitSet) live.clone();
+
+        if (request.getTypes() != null && !request.getTypes().isEmpty()) {
+            BitSet typeMask = new BitSet();
+            for (DocumentType type : request.getTypes()) {
+                BitSet b = typeBits.get(type);
+                if (b != null) {
+                    typeMask.or(b);
+                }
+            }
+            bits.and(typeMask);
+        }
+
+        if (request.getGameTypes() != null && !request.getGameTypes().isEmpty()) {
+            BitSet gameMask = (BitSet) anyGameTypeBits.clone();
+            for (String gameType : request.getGameTypes()) {
+                BitSet b = gameTypeBits.get(gameType);
+                if (b != null) {
+                    gameMask.or(b);
+                }
+            }
+            bits.and(gameMask);
+        }
+        return bits;
+    }
+
+    /**
+     * 按年龄列判断区间是否相交，未声明的边界视为不限
+     */
+    boolean matchesAge(SearchRequest request, int ordinal) {
+        if (request.getMinAge() != null && maxAges[ordinal] != NO_AGE && maxAges[ordinal] < request.getMinAge()) {
+            return false;
+        }
+        return request.getMaxAge() == null || minAges[ordinal] == NO_AGE || minAges[ordinal] <= request.getMaxAge();
+    }
+
+    DocumentType typeOf(int ordinal) {
+        return types[ordinal] >= 0 ? DocumentType.values()[types[ordinal]] : null;
+    }
+
+    private String gameTypeOf(int ordinal) {
+        for (Map.Entry<String, BitSet> e : gameTypeBits.entrySet()) {
+            if (e.getValue().get(ordinal)) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 由列数据还原文档对象
+     */
+    Document toDocument(int ordinal, ObjectMapper objectMapper) {
+        Document doc = new Document(ids[ordinal], contents[ordinal], typeOf(ordinal));
+        byte[] bytes = metadata[ordinal];
+        if (bytes != null && bytes.length > 0) {
+            try {
+                doc.setMetadata(objectMapper.readValue(bytes, new TypeReference<Map<String, Object>>() {}));
+            } catch (IOException e) {
+                doc.setMetadata(new HashMap<>());
+            }
+        }
+        if (embeddingBits.get(ordinal)) {
+            doc.setEmbedding(Arrays.copyOfRange(embeddings, ordinal * embeddingDim, (ordinal + 1) * embeddingDim));
+        }
+        return doc;
+    }
+
+    // ==================== 序列化 ====================
+
+    /**
+     * 段格式：
+     * <pre>
+     * 文档数(4)
+     * 文档列 * 文档数：id、类型序号(1)、内容、元数据JSON、minAge(4)、maxAge(4)
+     * 向量维度(4)，维度>0时：向量位图 + float * 文档数 * 维度
+     * 游戏类型数(4)，每项：游戏类型 + 位图；通用文档位图
+     * 词项数(4)，每项：词、文档频率(4)、倒排表字节
+     * </pre>
+     * 字符串与字节数组均为 长度(4) + 内容，位图为 long 数(4) + long * n。
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeString(out, ids[i]);
+            out.writeByte(types[i]);
+            writeString(out, contents[i]);
+            writeBytes(out, metadata[i]);
+            out.writeInt(minAges[i]);
+            out.writeInt(maxAges[i]);
+        }
+
+        out.writeInt(embeddingDim);
+        if (embeddingDim > 0) {
+            writeBits(out, embeddingBits);
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            for (int i = 0; i < size * embeddingDim; i++) {
+                if (!buffer.hasRemaining()) {
+                    out.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+                buffer.putFloat(embeddings[i]);
+            }
+            out.write(buffer.array(), 0, buffer.position());
+        }
+
+        out.writeInt(gameTypeBits.size());
+        for (Map.Entry<String, BitSet> e : gameTypeBits.entrySet()) {
+            writeString(out, e.getKey());
+            writeBits(out, e.getValue());
+        }
+        writeBits(out, anyGameTypeBits);
+
+        out.writeInt(terms.length);
+        for (int i = 0; i < terms.length; i++) {
+            writeString(out, terms[i]);
+            out.writeInt(docFreqs[i]);
+            writeBytes(out, postings[i]);
+        }
+    }
+
+    static MemorySegment readFrom(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        String[] ids = new String[count];
+        String[] contents = new String[count];
+        byte[] types = new byte[count];
+        byte[][] metadata = new byte[count][];
+        int[] minAges = new int[count];
+        int[] maxAges = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = readString(in);
+            types[i] = in.readByte();
+            contents[i] = readString(in);
+            byte[] meta = readBytes(in);
+            metadata[i] = meta.length > 0 ? meta : null;
+            minAges[i] = in.readInt();
+            maxAges[i] = in.readInt();
+        }
+
+        int embeddingDim = in.readInt();
+        Builder builder = new Builder(count, embeddingDim);
+        if (embeddingDim > 0) {
+            builder.embeddingBits.or(readBits(in));
+            float[] values = new float[count * embeddingDim];
+            byte[] chunk = new byte[1 << 16];
+            int read = 0;
+            while (read < values.length) {
+                int n = Math.min(chunk.length / Float.BYTES, values.length - read);
+                in.readFully(chunk, 0, n * Float.BYTES);
+                ByteBuffer.wrap(chunk, 0, n * Float.BYTES).asFloatBuffer().get(values, read, n);
+                read += n;
+            }
+            builder.embeddings = values;
+        }
+
+        int gameTypes = in.readInt();
+        for (int i = 0; i < gameTypes; i++) {
+            builder.gameTypeBits.put(readString(in), readBits(in));
+        }
+        builder.anyGameTypeBits.or(readBits(in));
+
+        builder.docCount = count;
+        builder.ids = ids;
+        builder.contents = contents;
+        builder.types = types;
+        builder.metadata = metadata;
+        builder.minAges = minAges;
+        builder.maxAges = maxAges;
+        for (int i = 0; i < count; i++) {
+            builder.ordinals.put(ids[i], i);
+            if (types[i] >= 0) {
+                builder.typeBits.computeIfAbsent(DocumentType.values()[types[i]], t -> new BitSet()).set(i);
+            }
+        }
+
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; i++) {
+            int termId = builder.internTerm(readString(in));
+            builder.docFreqs[termId] = in.readInt();
+            builder.postings[termId] = readBytes(in);
+            builder.postingLengths[termId] = builder.postings[termId].length;
+        }
+        return builder.build();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    // ==================== 内存估算 ====================
+
+    /**
+     * 将本段各组成部分的堆内存估算累加到报告中，按64位JVM、压缩指针估算对象头与引用
+     */
+    void addMemory(Map<String, Long> report) {
+        // HashMap 条目：Node(32) + 装箱的 Integer(16) + 桶数组引用(约 8)
+        final long mapEntry = 56;
+
+        long dictionary = (long) termIds.size() * mapEntry + arrayBytes(terms.length, 4);
+        long postingBytes = arrayBytes(postings.length, 4) + arrayBytes(docFreqs.length, 4);
+        for (int i = 0; i < terms.length; i++) {
+            dictionary += stringBytes(terms[i]);
+            postingBytes += arrayBytes(postings[i].length, 1);
+        }
+
+        long idBytes = (long) ordinals.size() * mapEntry + arrayBytes(ids.length, 4);
+        long contentBytes = arrayBytes(contents.length, 4);
+        long metadataBytes = arrayBytes(metadata.length, 4);
+        for (int i = 0; i < size; i++) {
+            idBytes += stringBytes(ids[i]);
+            contentBytes += stringBytes(contents[i]);
+            metadataBytes += metadata[i] != null ? arrayBytes(metadata[i].length, 1) : 0;
+        }
+        long columnBytes = arrayBytes(types.length, 1) + arrayBytes(minAges.length, 4) * 2;
+
+        long bitsetBytes = embeddingBits.size() / 8 + anyGameTypeBits.size() / 8;
+        for (BitSet bits : typeBits.values()) {
+            bitsetBytes += bits.size() / 8;
+        }
+        for (BitSet bits : gameTypeBits.values()) {
+            bitsetBytes += bits.size() / 8;
+        }
+
+        report.merge("termDictionary", dictionary, Long::sum);
+        report.merge("postings", postingBytes, Long::sum);
+        report.merge("documentIds", idBytes, Long::sum);
+        report.merge("contents", contentBytes, Long::sum);
+        report.merge("metadata", metadataBytes, Long::sum);
+        report.merge("columns", columnBytes, Long::sum);
+        report.merge("embeddings", arrayBytes(embeddings.length, 4), Long::sum);
+        report.merge("filterBitsets", bitsetBytes, Long::sum);
+    }
+
+    static long arrayBytes(int length, int elementBytes) {
+        return 16 + (long) length * elementBytes;
+    }
+
+    /**
+     * String 对象(24) + value 数组；只含 Latin-1 字符时每字符1字节，否则2字节
+     */
+    private static long stringBytes(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int perChar = 1;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                perChar = 2;
+                break;
+            }
+        }
+        return 24 + arrayBytes(s.length(), perChar);
+    }
+
+    // ==================== 构建 ====================
+
+    /**
+     * 段构建器，只在写线程中使用
+     */
+    private static final class Builder {
+
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private String[] ids;
+        private String[] contents;
+        private byte[] types;
+        private byte[][] metadata;
+        private int[] minAges;
+        private int[] maxAges;
+        private int docCount;
+
+        private final int embeddingDim;
+        private float[] embeddings = new float[0];
+        private final BitSet embeddingBits = new BitSet();
+
+        private final Map<String, Integer> termIds = new HashMap<>();
+        private String[] terms = new String[64];
+        private byte[][] postings = new byte[64][];
+        private int[] postingLengths = new int[64];
+        private int[] lastDocs = new int[64];
+        private int[] docFreqs = new int[64];
+        private int termCount;
+
+        private final Map<DocumentType, BitSet> typeBits = new EnumMap<>(DocumentType.class);
+        private final Map<String, BitSet> gameTypeBits = new HashMap<>();
+        private final BitSet anyGameTypeBits = new BitSet();
+
+        Builder(int expectedDocs, int embeddingDim) {
+            int capacity = Math.max(1, expectedDocs);
+            ids = new String[capacity];
+            contents = new String[capacity];
+            types = new byte[capacity];
+            metadata = new byte[capacity][];
+            minAges = new int[capacity];
+            maxAges = new int[capacity];
+            this.embeddingDim = embeddingDim;
+        }
+
+        int addColumns(String id, String content, byte type, byte[] meta, int minAge, int maxAge, String gameType) {
+            int ordinal = docCount++;
+            if (ordinal == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                contents = Arrays.copyOf(contents, capacity);
+                types = Arrays.copyOf(types, capacity);
+                metadata = Arrays.copyOf(metadata, capacity);
+                minAges = Arrays.copyOf(minAges, capacity);
+                maxAges = Arrays.copyOf(maxAges, capacity);
+            }
+            ordinals.put(id, ordinal);
+            ids[ordinal] = id;
+            contents[ordinal] = content;
+            types[ordinal] = type;
+            metadata[ordinal] = meta;
+            minAges[ordinal] = minAge;
+            maxAges[ordinal] = maxAge;
+
+            if (type >= 0) {
+                typeBits.computeIfAbsent(DocumentType.values()[type], t -> new BitSet()).set(ordinal);
+            }
+            if (gameType != null) {
+                gameTypeBits.computeIfAbsent(gameType, g -> new BitSet()).set(ordinal);
+            } else {
+                anyGameTypeBits.set(ordinal);
+            }
+            return ordinal;
+        }
+
+        void setEmbedding(int ordinal, float[] source, int offset) {
+            long required = (long) (ordinal + 1) * embeddingDim;
+            if (required > embeddings.length) {
+                long capacity = Math.max(required, (long) ids.length * embeddingDim);
+                embeddings = Arrays.copyOf(embeddings, (int) Math.min(capacity, Integer.MAX_VALUE - 8));
+            }
+            System.arraycopy(source, offset, embeddings, ordinal * embeddingDim, embeddingDim);
+            embeddingBits.set(ordinal);
+        }
+
+        int internTerm(String term) {
+            Integer termId = termIds.get(term);
+            if (termId != null) {
+                return termId;
+            }
+            if (termCount == terms.length) {
+                int capacity = terms.length * 2;
+                terms = Arrays.copyOf(terms, capacity);
+                postings = Arrays.copyOf(postings, capacity);
+                postingLengths = Arrays.copyOf(postingLengths, capacity);
+                lastDocs = Arrays.copyOf(lastDocs, capacity);
+                docFreqs = Arrays.copyOf(docFreqs, capacity);
+            }
+            int id = termCount++;
+            terms[id] = term;
+            postings[id] = new byte[8];
+            lastDocs[id] = -1;
+            termIds.put(term, id);
+            return id;
+        }
+
+        /**
+         * 追加倒排条目：(与上一条的序号差值, 词频)，均为变长字节编码
+         */
+        void appendPosting(int termId, int ordinal, int tf) {
+            byte[] buffer = postings[termId];
+            int length = postingLengths[termId];
+            if (length + 10 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + 10));
+                postings[termId] = buffer;
+            }
+            length = writeVarInt(buffer, length, ordinal - lastDocs[termId]);
+            length = writeVarInt(buffer, length, tf);
+            postingLengths[termId] = length;
+            lastDocs[termId] = ordinal;
+            docFreqs[termId]++;
+        }
+
+        private static int writeVarInt(byte[] buffer, int pos, int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[pos++] = (byte) value;
+            return pos;
+        }
+
+        MemorySegment build() {
+            return new MemorySegment(this);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 检索请求
+ * 在查询文本之外携带结构化过滤条件，由各存储实现下推执行，
+ * 取代在查询串里拼接“儿童教育 认知发展”之类的关键词来引导结果。
+ *
+ * 元数据约定（知识文件 front matter 中声明）：
+ * - gameType：适用的游戏类型（GameConfig.GameType 名称）
+ * - minAge / maxAge：适用年龄区间
+ * 未声明这些字段的文档视为通用知识，总能通过对应过滤。
+ */
+@Data
+@Builder
+public class SearchRequest {
+
+    public static final String META_GAME_TYPE = "gameType";
+    public static final String META_MIN_AGE = "minAge";
+    public static final String META_MAX_AGE = "maxAge";
+
+    private static final Pattern AGE_RANGE = Pattern.compile("(\\d+)\\s*(?:[-到至~]\\s*(\\d+))?");
+
+    /**
+     * 返回的字段
+     */
+    public enum Field {
+        CONTENT,
+        METADATA,
+        EMBEDDING
+    }
+
+    private String query;
+
+    @Builder.Default
+    private int topK = 5;
+
+    /**
+     * 文档类型过滤，为空表示不过滤
+     */
+    private Set<VectorStore.DocumentType> types;
+
+    /**
+     * 游戏类型过滤（元数据 gameType），为空表示不过滤
+     */
+    private Set<String> gameTypes;
+
+    /**
+     * 年龄区间过滤，与文档的 [minAge, maxAge] 有交集即通过
+     */
+    private Integer minAge;
+    private Integer maxAge;
+
+    /**
+     * 最低相关度，按各实现自身的打分尺度解释：
+     * 内存实现为关键词分数，嵌入式实现为余弦相似度，ES 为融合后的分数
+     */
+    private Double minScore;
+
+    /**
+     * 返回的字段，id 与 type 总是返回；默认返回内容与元数据，不返回向量
+     */
+    @Builder.Default
+    private Set<Field> fields = EnumSet.of(Field.CONTENT, Field.METADATA);
+
+    /**
+     * 是否带有需要过滤的条件（不含 minScore）
+     */
+    public boolean hasFilters() {
+        return (types != null && !types.isEmpty())
+            || (gameTypes != null && !gameTypes.isEmpty())
+            || minAge != null
+            || maxAge != null;
+    }
+
+    /**
+     * 文档是否满足过滤条件，供无法下推过滤的实现在内存中判断
+     */
+    public boolean matches(VectorStore.Document doc) {
+        if (types != null && !types.isEmpty() && !types.contains(doc.getType())) {
+            return false;
+        }
+        return matchesGameType(doc.getMetadata()) && matchesAge(doc.getMetadata());
+    }
+
+    /**
+     * 元数据中的游戏类型是否匹配，未声明游戏类型的文档视为通用
+     */
+    public boolean matchesGameType(Map<String, Object> metadata) {
+        if (gameTypes == null || gameTypes.isEmpty()) {
+            return true;
+        }
+        Object gameType = metadata != null ? metadata.get(META_GAME_TYPE) : null;
+        return gameType == null || gameTypes.contains(gameType.toString());
+    }
+
+    /**
+     * 元数据中的年龄区间是否与请求区间相交，未声明的边界视为不限
+     */
+    public boolean matchesAge(Map<String, Object> metadata) {
+        if (minAge == null && maxAge == null) {
+            return true;
+        }
+        Integer docMin = intValue(metadata, META_MIN_AGE);
+        Integer docMax = intValue(metadata, META_MAX_AGE);
+        if (minAge != null && docMax != null && docMax < minAge) {
+            return false;
+        }
+        return maxAge == null || docMin == null || docMin <= maxAge;
+    }
+
+    public boolean includes(Field field) {
+        return fields == null || fields.contains(field);
+    }
+
+    /**
+     * 按字段投影，返回新的文档对象，不修改存储中的文档
+     */
+    public VectorStore.Document project(VectorStore.Document doc) {
+        VectorStore.Document projected = new VectorStore.Document(doc.getId(),
+            includes(Field.CONTENT) ? doc.getContent() : null, doc.getType());
+        if (includes(Field.METADATA) && doc.getMetadata() != null) {
+            projected.getMetadata().putAll(doc.getMetadata());
+        }
+        if (includes(Field.EMBEDDING)) {
+            projected.setEmbedding(doc.getEmbedding());
+        }
+        return projected;
+    }
+
+    /**
+     * 读取整数元数据，兼容 front matter 中以字符串形式声明的数字
+     */
+    static Integer intValue(Map<String, Object> metadata, String key) {
+        Object value = metadata != null ? metadata.get(key) : null;
+        if (value instanceof Number n) {
+            return n.intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public static class SearchRequestBuilder {
+
+        /**
+         * 按年龄组设置年龄区间，如 "6-8"、"5岁"；无法解析时不设置
+         */
+        public SearchRequestBuilder ageGroup(String ageGroup) {
+            if (ageGroup == null) {
+                return this;
+            }
+            Matcher matcher = AGE_RANGE.matcher(ageGroup);
+            if (matcher.find()) {
+                int from = Integer.parseInt(matcher.group(1));
+                int to = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : from;
+                minAge(Math.min(from, to));
+                maxAge(Math.max(from, to));
+            }
+            return this;
+        }
+    }
+}
@@ -5,6 +5,8 @@
 package com.sumo.agent.rag;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * 向量存储接口
@@ -22,6 +24,15 @@ public interface VectorStore {
      */
     void saveAll(List<Document> documents);
     
+    /**
+     * 写入（save/saveAll/delete）返回后，最长多久才能被检索到，单位毫秒
+     * 写入即可见的存储返回 0；近实时的存储（如按 refresh 间隔刷新的 Elasticsearch）返回刷新所需的时间，
+     * 检索缓存据此在写入可见后再失效一次。
+     */
+    default long writeVisibilityDelayMillis() {
+        return 0;
+    }
+    
     /**
      * 检索相似文档
      * 
@@ -31,6 +42,43 @@ public interface VectorStore {
      */
     List<Document> search(String query, int topK);
     
+    /**
+     * 异步检索相似文档
+     * 默认在给定线程池中执行同步检索，支持异步IO的实现可覆盖以避免占用线程
+     * 
+     * @param query 查询文本
+     * @param topK 返回top-k个结果
+     * @param executor 执行同步检索的线程池
+     * @return 相似文档列表
+     */
+    default CompletableFuture<List<Document>> searchAsync(String query, int topK, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> search(query, topK), executor);
+    }
+    
+    /**
+     * 带过滤条件的检索
+     * 默认实现多取候选后在内存中过滤与投影，无法应用 minScore；
+     * 能在索引层下推过滤的实现应覆盖此方法
+     * 
+     * @param request 检索请求
+     * @return 满足过滤条件的相似文档列表
+     */
+    default List<Document> search(SearchRequest request) {
+        int candidates = request.hasFilters() ? request.getTopK() * 4 : request.getTopK();
+        return search(request.getQuery(), candidates).stream()
+            .filter(request::matches)
+            .limit(request.getTopK())
+            .map(request::project)
+            .toList();
+    }
+    
+    /**
+     * 异步执行带过滤条件的检索
+     */
+    default CompletableFuture<List<Document>> searchAsync(SearchRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> search(request), executor);
+    }
+    
     /**
      * 根据ID获取文档
      */
@@ -41,6 +89,12 @@ public interface VectorStore {
      */
     void delete(String id);
     
+    /**
+     * 列出元数据中带有指定字段的全部文档（向量可能为空）
+     * 用于持久化存储重启后按来源核对已写入的知识
+     */
+    List<Document> findAllWithMetadata(String key);
+    
     /**
      * 文档类
      */
@@ -0,0 +1,245 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumo.agent.core.GameArtifact;
+import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.core.GameGeneratorAgent;
+import com.sumo.agent.core.GameGeneratorAgent.GameGenerationResult;
+import com.sumo.agent.core.GameGeneratorAgent.GenerationPlan;
+import com.sumo.agent.core.GenerationTimings;
+import com.sumo.agent.model.SavedGame;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量游戏生成服务
+ * 老师一次提交多个需求时使用，避免前端逐个串行请求：
+ *
+ * 1. 先对全部输入做意图分析与Agent选择（规则匹配，耗时可忽略）
+ * 2. 按 Agent + 模型 分组，每组内最多 per-model-concurrency 个任务并行，
+ *    内置模板游戏与大模型生成互不阻塞，同一模型不会被一次批量请求打满
+ * 3. 每完成一个游戏立即推送结果，不等待整批结束
+ * 4. 需要保存时在全部完成后一次性写入存储
+ */
+@Slf4j
+@Service
+public class BatchGenerationService {
+
+    @Autowired
+    private GameGeneratorAgent gameGeneratorAgent;
+
+    @Autowired
+    private GameStorageService gameStorageService;
+
+    @Value("${agent.game.batch.max-items:20}")
+    private int maxItems;
+
+    @Value("${agent.game.batch.per-model-concurrency:2}")
+    private int perModelConcurrency;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 批量生成事件
+     * type=item：单个游戏完成（index 为输入中的下标）；type=completed：整批结束的汇总
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class BatchEvent {
+        private String type;
+        private Integer index;
+        private String userInput;
+        private Boolean success;
+        private String agentName;
+        private GameArtifact gameData;
+        private GameConfig config;
+        private String error;
+        private Long elapsedMs;
+        private Map<String, Double> timings;
+        // 汇总字段
+        private Integer total;
+        private Integer succeeded;
+        private Integer failed;
+        private Map<Integer, String> savedGameIds;
+    }
+
+    /**
+     * 单个任务：计划失败时 plan 为 null，error 为原因
+     */
+    private record Task(int index, String userInput, GenerationPlan plan, String error) {
+
+        String lane() {
+            return plan != null ? plan.lane() : "invalid";
+        }
+    }
+
+    /**
+     * 批量生成游戏
+     *
+     * @param userInputs 用户输入列表
+     * @param options 所有游戏共用的选项（如 model）
+     * @param save 是否在全部完成后保存成功的游戏
+     * @throws IllegalArgumentException 输入为空或超过 max-items
+     */
+    public Flux<BatchEvent> generate(List<String> userInputs, String sessionId, Map<String, Object> options, boolean save) {
+        if (userInputs == null || userInputs.isEmpty()) {
+            throw new IllegalArgumentException("批量生成的输入不能为空");
+        }
+        if (userInputs.size() > maxItems) {
+            throw new IllegalArgumentException("单次批量生成最多 " + maxItems + " 个游戏，实际 " + userInputs.size());
+        }
+
+        long start = System.currentTimeMillis();
+        List<Task> tasks = plan(userInputs, sessionId, options);
+
+        AtomicInteger succeeded = new AtomicInteger();
+        ConcurrentLinkedQueue<IndexedGame> toSave = new ConcurrentLinkedQueue<>();
+
+        Flux<BatchEvent> items = Flux.fromIterable(tasks)
+            .groupBy(Task::lane)
+            .flatMap(lane -> lane.flatMap(
+                task -> Mono.fromCallable(() -> execute(task)).subscribeOn(Schedulers.boundedElastic()),
+                Math.max(1, perModelConcurrency)))
+            .doOnNext(event -> {
+                if (Boolean.TRUE.equals(event.getSuccess())) {
+                    succeeded.incrementAndGet();
+                    if (save) {
+                        toSave.add(new IndexedGame(event.getIndex(), toSavedGame(event)));
+                    }
+                }
+            });
+
+        Mono<BatchEvent> summary = Mono.fromCallable(() -> {
+            BatchEvent event = new BatchEvent();
+            event.setType("completed");
+            event.setTotal(tasks.size());
+            event.setSucceeded(succeeded.get());
+            event.setFailed(tasks.size() - succeeded.get());
+            if (save) {
+                event.setSavedGameIds(saveAll(toSave));
+            }
+            event.setElapsedMs(System.currentTimeMillis() - start);
+            log.info("📦 批量生成完成: {}/{} 成功, 耗时 {}ms", event.getSucceeded(), event.getTotal(), event.getElapsedMs());
+            return event;
+        }).subscribeOn(Schedulers.boundedElastic());
+
+        return items.concatWith(summary);
+    }
+
+    private List<Task> plan(List<String> userInputs, String sessionId, Map<String, Object> options) {
+        List<Task> tasks = new ArrayList<>(userInputs.size());
+        for (int i = 0; i < userInputs.size(); i++) {
+            String userInput = userInputs.get(i);
+            try {
+                if (userInput == null || userInput.isBlank()) {
+                    throw new IllegalArgumentException("输入为空");
+                }
+                tasks.add(new Task(i, userInput, gameGeneratorAgent.plan(userInput, sessionId, options), null));
+            } catch (Exception e) {
+                log.warn("批量生成第 {} 项无法处理: {}", i, e.getMessage());
+                tasks.add(new Task(i, userInput, null, e.getMessage()));
+            }
+        }
+        log.info("📦 批量生成 {} 个游戏, 分组: {}", tasks.size(),
+            tasks.stream().map(Task::lane).distinct().toList());
+        return tasks;
+    }
+
+    private BatchEvent execute(Task task) {
+        long start = System.currentTimeMillis();
+        BatchEvent event = new BatchEvent();
+        event.setType("item");
+        event.setIndex(task.index());
+        event.setUserInput(task.userInput());
+
+        if (task.plan() == null) {
+            event.setSuccess(false);
+            event.setError(task.error());
+            return event;
+        }
+
+        GameGenerationResult result;
+        try {
+            result = gameGeneratorAgent.execute(task.plan());
+        } catch (Exception e) {
+            log.error("❌ 批量生成第 {} 项失败", task.index(), e);
+            result = GameGenerationResult.failure(e.getMessage());
+        }
+
+        event.setSuccess(result.success());
+        event.setAgentName(task.plan().agent().getName());
+        if (result.success()) {
+            event.setGameData(result.artifact());
+            event.setConfig(result.config());
+        } else {
+            event.setError(result.error());
+        }
+        if (GenerationTimings.isRequested(task.plan().context().getAttributes())) {
+            event.setTimings(result.timings());
+        }
+        event.setElapsedMs(System.currentTimeMillis() - start);
+        return event;
+    }
+
+    // ==================== 批量保存 ====================
+
+    private record IndexedGame(int index, SavedGame game) {}
+
+    private SavedGame toSavedGame(BatchEvent event) {
+        GameArtifact artifact = event.getGameData();
+        GameConfig config = event.getConfig();
+
+        SavedGame game = new SavedGame();
+        game.setTitle(config.getTitle() != null && !config.getTitle().isBlank() ? config.getTitle() : "未命名游戏");
+        game.setType(artifact.type());
+        game.setAgeGroup(config.getAgeGroup());
+        game.setDifficulty(config.getDifficulty() != null ? config.getDifficulty().name() : null);
+        game.setTheme(config.getTheme());
+        game.setHtml(artifact.html().asString());
+        game.setSeed(artifact.seed());
+        try {
+            game.setConfig(objectMapper.writeValueAsString(config));
+        } catch (JsonProcessingException e) {
+            log.warn("序列化游戏配置失败: {}", e.getMessage());
+        }
+        return game;
+    }
+
+    /**
+     * 按输入顺序保存，返回 下标 -> 游戏ID
+     */
+    private Map<Integer, String> saveAll(ConcurrentLinkedQueue<IndexedGame> games) {
+        List<IndexedGame> ordered = games.stream()
+            .sorted(Comparator.comparingInt(IndexedGame::index))
+            .toList();
+        List<SavedGame> saved = gameStorageService.saveGames(ordered.stream().map(IndexedGame::game).toList());
+
+        Map<Integer, String> ids = new TreeMap<>();
+        for (IndexedGame entry : ordered) {
+            if (saved.contains(entry.game())) {
+                ids.put(entry.index(), entry.game().getId());
+            }
+        }
+        return ids;
+    }
+}
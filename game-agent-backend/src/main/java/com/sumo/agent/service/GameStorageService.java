@@ -1,9 +1,14 @@
 package com.sumo.agent.service;
 
+import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.core.GameGeneratorAgent;
+import com.sumo.agent.metrics.GameMetrics;
 import com.sumo.agent.model.SavedGame;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -17,11 +22,14 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 /**
  * 游戏存储服务
  * 将游戏保存为文件系统中的HTML和JSON文件
+ * 带种子的可复现游戏（数学、记忆）只保存JSON元数据与渲染版本，读取时按 (配置, 种子) 重新渲染，
+ * 渲染版本已变化时标记 renderStale
  */
 @Service
 public class GameStorageService {
@@ -31,6 +39,12 @@ public class GameStorageService {
     @Value("${game.storage.path:./saved-games}")
     private String storagePath;
 
+    @Autowired
+    private GameGeneratorAgent gameGeneratorAgent;
+
+    @Autowired(required = false)
+    private GameMetrics gameMetrics;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @PostConstruct
@@ -55,6 +69,10 @@ public class GameStorageService {
      * 保存游戏
      */
     public SavedGame saveGame(SavedGame game) throws IOException {
+        return timed("save", () -> doSaveGame(game), SavedGame::getFileSize);
+    }
+
+    private SavedGame doSaveGame(SavedGame game) throws IOException {
         // 生成唯一ID
         if (game.getId() == null || game.getId().isEmpty()) {
             game.setId(generateGameId());
@@ -65,13 +83,17 @@ public class GameStorageService {
         String htmlFileName = String.format("%s_%s.html", game.getId(), safeTitle);
         String metaFileName = String.format("%s_%s.json", game.getId(), safeTitle);
 
-        // 保存HTML文件
-        Path htmlPath = Paths.get(storagePath, htmlFileName);
-        Files.write(htmlPath, game.getHtml().getBytes(StandardCharsets.UTF_8));
-
-        // 设置文件信息
-        game.setFileName(htmlFileName);
-        game.setFileSize(Files.size(htmlPath));
+        if (isReplayable(game)) {
+            // 可按种子复现：不保存HTML，读取时重新渲染
+            game.setFileName(null);
+            game.setFileSize(0);
+        } else {
+            // 保存HTML文件
+            Path htmlPath = Paths.get(storagePath, htmlFileName);
+            Files.write(htmlPath, game.getHtml().getBytes(StandardCharsets.UTF_8));
+            game.setFileName(htmlFileName);
+            game.setFileSize(Files.size(htmlPath));
+        }
         game.setUpdatedAt(LocalDateTime.now());
 
         // 保存元数据文件
@@ -84,7 +106,9 @@ public class GameStorageService {
         metadata.setDifficulty(game.getDifficulty());
         metadata.setTheme(game.getTheme());
         metadata.setConfig(game.getConfig());
-        metadata.setFileName(htmlFileName);
+        metadata.setSeed(game.getFileName() == null ? game.getSeed() : null);
+        metadata.setRenderVersion(game.getFileName() == null ? game.getRenderVersion() : null);
+        metadata.setFileName(game.getFileName());
         metadata.setFileSize(game.getFileSize());
         metadata.setCreatedAt(game.getCreatedAt());
         metadata.setUpdatedAt(game.getUpdatedAt());
@@ -93,15 +117,39 @@ public class GameStorageService {
                 .writeValueAsString(metadata);
         Files.write(metaPath, jsonContent.getBytes(StandardCharsets.UTF_8));
 
-        logger.info("游戏已保存: {} -> {}", game.getTitle(), htmlFileName);
+        logger.info("游戏已保存: {} -> {}", game.getTitle(),
+                game.getFileName() != null ? htmlFileName : metaFileName + "（种子 " + game.getSeed() + "）");
 
         return game;
     }
 
+    /**
+     * 批量保存游戏
+     * 单个游戏保存失败只记录日志，不影响其余游戏
+     *
+     * @return 保存成功的游戏
+     */
+    public List<SavedGame> saveGames(List<SavedGame> games) {
+        List<SavedGame> saved = new ArrayList<>(games.size());
+        for (SavedGame game : games) {
+            try {
+                saved.add(saveGame(game));
+            } catch (IOException | RuntimeException e) {
+                logger.error("批量保存游戏失败: {}", game.getTitle(), e);
+            }
+        }
+        logger.info("批量保存游戏: {}/{} 成功", saved.size(), games.size());
+        return saved;
+    }
+
     /**
      * 获取所有保存的游戏列表
      */
     public List<SavedGame> listGames() throws IOException {
+        return timed("list", this::doListGames, games -> 0);
+    }
+
+    private List<SavedGame> doListGames() throws IOException {
         List<SavedGame> games = new ArrayList<>();
 
         Path dir = Paths.get(storagePath);
@@ -130,8 +178,13 @@ public class GameStorageService {
 
     /**
      * 根据ID获取游戏
+     * 读取字节数只计磁盘上的HTML，按种子重新渲染的游戏记为 0
      */
     public SavedGame getGame(String gameId) throws IOException {
+        return timed("get", () -> doGetGame(gameId), game -> game != null ? game.getFileSize() : 0);
+    }
+
+    private SavedGame doGetGame(String gameId) throws IOException {
         Path dir = Paths.get(storagePath);
 
         // 查找对应的JSON文件
@@ -148,7 +201,14 @@ public class GameStorageService {
         String metaContent = Files.readString(metaPath.get(), StandardCharsets.UTF_8);
         SavedGame game = objectMapper.readValue(metaContent, SavedGame.class);
 
-        // 读取HTML内容
+        // 读取HTML内容，只保存了种子的游戏重新渲染
+        if (game.getFileName() == null) {
+            if (game.getSeed() != null) {
+                checkRenderVersion(game);
+                game.setHtml(replay(game));
+            }
+            return game;
+        }
         Path htmlPath = Paths.get(storagePath, game.getFileName());
         if (Files.exists(htmlPath)) {
             String htmlContent = Files.readString(htmlPath, StandardCharsets.UTF_8);
@@ -158,10 +218,73 @@ public class GameStorageService {
         return game;
     }
 
+    /**
+     * 是否可以只保存配置与种子：按种子重新渲染的结果必须与提交的HTML完全一致，且能取得渲染版本
+     * （如页面以非默认运行时模式生成、或在前端被修改过，则仍保存HTML）
+     * 可以时记录当前渲染版本
+     */
+    private boolean isReplayable(SavedGame game) {
+        if (game.getSeed() == null || game.getConfig() == null || game.getHtml() == null) {
+            return false;
+        }
+        try {
+            GameConfig config = parseConfig(game.getConfig());
+            String renderVersion = gameGeneratorAgent.renderVersion(config.getGameType());
+            if (renderVersion == null || !game.getHtml().equals(replay(config, game.getSeed()))) {
+                return false;
+            }
+            game.setRenderVersion(renderVersion);
+            return true;
+        } catch (Exception e) {
+            logger.debug("游戏无法按种子复现，保存HTML: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 模板或生成逻辑在保存后发生变化时，重新渲染的页面可能与保存时不同：
+     * 仍返回重新渲染的结果，但标记 renderStale 并记录日志（没有版本的旧记录同样视为已变化）
+     */
+    private void checkRenderVersion(SavedGame game) {
+        String current = null;
+        try {
+            current = gameGeneratorAgent.renderVersion(parseConfig(game.getConfig()).getGameType());
+        } catch (Exception e) {
+            logger.debug("获取渲染版本失败: {}", e.getMessage());
+        }
+        if (current == null || !current.equals(game.getRenderVersion())) {
+            logger.warn("游戏 {} 保存时的渲染版本 {} 与当前版本 {} 不一致，重新渲染的页面可能已变化",
+                    game.getId(), game.getRenderVersion(), current);
+            game.setRenderStale(true);
+        }
+    }
+
+    private String replay(SavedGame game) throws IOException {
+        return replay(parseConfig(game.getConfig()), game.getSeed());
+    }
+
+    private String replay(GameConfig config, long seed) throws IOException {
+        GameGeneratorAgent.GameGenerationResult result = gameGeneratorAgent.replay(config, seed, null);
+        if (!result.success()) {
+            throw new IOException("按种子重新渲染游戏失败: " + result.error());
+        }
+        return result.artifact().html().asString();
+    }
+
+    private GameConfig parseConfig(String config) throws IOException {
+        return objectMapper.readerFor(GameConfig.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValue(config);
+    }
+
     /**
      * 删除游戏
      */
     public boolean deleteGame(String gameId) throws IOException {
+        return timed("delete", () -> doDeleteGame(gameId), deleted -> 0);
+    }
+
+    private boolean doDeleteGame(String gameId) throws IOException {
         Path dir = Paths.get(storagePath);
 
         // 查找并删除相关文件
@@ -190,22 +313,51 @@ public class GameStorageService {
             return stats;
         }
 
-        List<Path> htmlFiles = Files.list(dir)
-                .filter(path -> path.toString().endsWith(".html"))
-                .collect(Collectors.toList());
+        // 以元数据文件计数（只保存种子的游戏没有HTML文件）
+        List<Path> files = Files.list(dir).collect(Collectors.toList());
+        long totalGames = files.stream().filter(path -> path.toString().endsWith(".json")).count();
 
         long totalSize = 0;
-        for (Path path : htmlFiles) {
-            totalSize += Files.size(path);
+        for (Path path : files) {
+            if (path.toString().endsWith(".html")) {
+                totalSize += Files.size(path);
+            }
         }
 
-        stats.put("totalGames", htmlFiles.size());
+        stats.put("totalGames", totalGames);
         stats.put("totalSize", totalSize);
         stats.put("storagePath", storagePath);
 
         return stats;
     }
 
+    /**
+     * 存储操作
+     */
+    @FunctionalInterface
+    private interface StorageOperation<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * 执行存储操作并记录耗时与字节数
+     */
+    private <T> T timed(String operation, StorageOperation<T> action, ToLongFunction<T> bytes) throws IOException {
+        long start = System.nanoTime();
+        boolean success = false;
+        long size = 0;
+        try {
+            T result = action.call();
+            success = true;
+            size = bytes.applyAsLong(result);
+            return result;
+        } finally {
+            if (gameMetrics != null) {
+                gameMetrics.recordStorage(operation, System.nanoTime() - start, success, size);
+            }
+        }
+    }
+
     /**
      * 生成唯一的游戏ID
      */
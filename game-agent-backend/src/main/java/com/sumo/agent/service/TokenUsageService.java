@@ -0,0 +1,261 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.service;
+
+import com.sumo.agent.core.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 大模型 Token 用量统计与预算
+ *
+ * 用量：每次调用优先取模型返回的 usage，缺失时用 {@link TokenEstimator} 按提示词与输出估算（标记 estimated），
+ * 按 全局累计 / 当日 / 模型 / 会话 四个维度汇总。会话数超过 max-sessions 时淘汰最久未使用的会话。
+ *
+ * 预算：调用前按 (已用量 + 本次提示词估算) 检查会话上限与全局每日上限（0 表示不限）：
+ * - 达到上限的 downgrade-ratio 后改用 fallback-model（更便宜的模型）
+ * - 达到上限后不再调用大模型，改用内置模板游戏
+ */
+@Slf4j
+@Service
+public class TokenUsageService {
+
+    @Value("${agent.llm.budget.enabled:true}")
+    private boolean budgetEnabled;
+
+    @Value("${agent.llm.budget.session-tokens:200000}")
+    private long sessionLimit;
+
+    @Value("${agent.llm.budget.global-daily-tokens:0}")
+    private long globalDailyLimit;
+
+    @Value("${agent.llm.budget.downgrade-ratio:0.8}")
+    private double downgradeRatio;
+
+    @Value("${agent.llm.budget.fallback-model:default}")
+    private String fallbackModel;
+
+    @Value("${agent.llm.usage.max-sessions:10000}")
+    private int maxSessions;
+
+    /**
+     * 预算检查结果
+     */
+    public enum Action {
+        /** 按原模型调用 */
+        ALLOW,
+        /** 改用 fallback-model */
+        DOWNGRADE,
+        /** 不调用大模型，使用内置游戏 */
+        BUILTIN
+    }
+
+    /**
+     * @param model 实际应使用的模型 key（BUILTIN 时为 null）
+     * @param reason 降级原因，ALLOW 时为 null
+     */
+    public record Decision(Action action, String model, String reason) {}
+
+    /**
+     * 单次调用的用量
+     *
+     * @param estimated 模型未返回用量、由本地估算得出
+     */
+    public record CallUsage(String model, int inputTokens, int outputTokens, boolean estimated) {
+
+        public int totalTokens() {
+            return inputTokens + outputTokens;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("model", model);
+            map.put("inputTokens", inputTokens);
+            map.put("outputTokens", outputTokens);
+            map.put("estimated", estimated);
+            return map;
+        }
+    }
+
+    /**
+     * 累计用量（线程安全）
+     */
+    public static final class Usage {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder estimatedCalls = new LongAdder();
+        private final LongAdder inputTokens = new LongAdder();
+        private final LongAdder outputTokens = new LongAdder();
+        private volatile long lastUsedAt;
+
+        void add(CallUsage usage) {
+            calls.increment();
+            if (usage.estimated()) {
+                estimatedCalls.increment();
+            }
+            inputTokens.add(usage.inputTokens());
+            outputTokens.add(usage.outputTokens());
+            lastUsedAt = System.currentTimeMillis();
+        }
+
+        public long totalTokens() {
+            return inputTokens.sum() + outputTokens.sum();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", calls.sum());
+            map.put("estimatedCalls", estimatedCalls.sum());
+            map.put("inputTokens", inputTokens.sum());
+            map.put("outputTokens", outputTokens.sum());
+            map.put("totalTokens", totalTokens());
+            map.put("lastUsedAt", lastUsedAt);
+            return map;
+        }
+    }
+
+    private record DailyUsage(LocalDate date, Usage usage) {}
+
+    private final Usage total = new Usage();
+    private final AtomicReference<DailyUsage> today = new AtomicReference<>(new DailyUsage(LocalDate.now(), new Usage()));
+    private final Map<String, Usage> byModel = new ConcurrentHashMap<>();
+    private final Map<String, Usage> sessions = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Usage> eldest) {
+            return size() > maxSessions;
+        }
+    });
+
+    /**
+     * 调用前检查预算
+     *
+     * @param sessionId 会话ID，可为空（只检查全局预算）
+     * @param model 请求的模型 key（已规范化）
+     * @param promptTokens 本次提示词的估算 token 数
+     */
+    public Decision check(String sessionId, String model, int promptTokens) {
+        if (!budgetEnabled) {
+            return new Decision(Action.ALLOW, model, null);
+        }
+        Usage session = sessionId != null ? sessions.get(sessionId) : null;
+        double sessionRatio = ratio((session != null ? session.totalTokens() : 0) + promptTokens, sessionLimit);
+        double globalRatio = ratio(today().totalTokens() + promptTokens, globalDailyLimit);
+        String scope = sessionRatio >= globalRatio ? "会话" : "全局每日";
+        double ratio = Math.max(sessionRatio, globalRatio);
+
+        if (ratio >= 1.0) {
+            log.warn("💸 {} token 预算已用尽（会话 {}），改用内置游戏", scope, sessionId);
+            return new Decision(Action.BUILTIN, null, scope + " token 预算已用尽");
+        }
+        if (ratio >= downgradeRatio && !fallbackModel.equals(model)) {
+            log.info("💸 {} token 用量已达预算的 {}%（会话 {}），模型 {} 降级为 {}",
+                scope, Math.round(ratio * 100), sessionId, model, fallbackModel);
+            return new Decision(Action.DOWNGRADE, fallbackModel, scope + " token 用量接近预算");
+        }
+        return new Decision(Action.ALLOW, model, null);
+    }
+
+    /**
+     * 记录一次调用的用量
+     *
+     * @param promptTokens 模型返回的输入 token 数，缺失时为 null
+     * @param completionTokens 模型返回的输出 token 数，缺失时为 null
+     * @param promptText 提示词全文，用于估算
+     * @param completionText 模型输出，用于估算
+     */
+    public CallUsage record(String sessionId, String model, Integer promptTokens, Integer completionTokens,
+                            String promptText, String completionText) {
+        // 真实调用的输入不会为 0，0 视为模型未返回用量
+        boolean estimated = promptTokens == null || promptTokens <= 0 || completionTokens == null;
+        CallUsage usage = estimated
+            ? new CallUsage(model, TokenEstimator.estimate(promptText), TokenEstimator.estimate(completionText), true)
+            : new CallUsage(model, promptTokens, completionTokens, false);
+
+        total.add(usage);
+        today().add(usage);
+        byModel.computeIfAbsent(model, k -> new Usage()).add(usage);
+        if (sessionId != null) {
+            sessions.computeIfAbsent(sessionId, k -> new Usage()).add(usage);
+        }
+        return usage;
+    }
+
+    /**
+     * 会话用量，不存在时返回 null
+     */
+    public Map<String, Object> getSessionUsage(String sessionId) {
+        Usage usage = sessions.get(sessionId);
+        if (usage == null) {
+            return null;
+        }
+        Map<String, Object> result = usage.toMap();
+        result.put("sessionId", sessionId);
+        result.put("limit", sessionLimit);
+        result.put("remaining", sessionLimit > 0 ? Math.max(0, sessionLimit - usage.totalTokens()) : null);
+        return result;
+    }
+
+    /**
+     * 汇总用量：累计、当日、按模型，以及预算配置
+     */
+    public Map<String, Object> getSummary() {
+        DailyUsage day = currentDay();
+        Map<String, Object> todayMap = day.usage().toMap();
+        todayMap.put("date", day.date().toString());
+        todayMap.put("limit", globalDailyLimit);
+        todayMap.put("remaining", globalDailyLimit > 0 ? Math.max(0, globalDailyLimit - day.usage().totalTokens()) : null);
+
+        Map<String, Object> models = new TreeMap<>();
+        byModel.forEach((model, usage) -> models.put(model, usage.toMap()));
+
+        Map<String, Object> budget = new LinkedHashMap<>();
+        budget.put("enabled", budgetEnabled);
+        budget.put("sessionTokens", sessionLimit);
+        budget.put("globalDailyTokens", globalDailyLimit);
+        budget.put("downgradeRatio", downgradeRatio);
+        budget.put("fallbackModel", fallbackModel);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("total", total.toMap());
+        summary.put("today", todayMap);
+        summary.put("models", models);
+        summary.put("sessions", sessions.size());
+        summary.put("budget", budget);
+        return summary;
+    }
+
+    private Usage today() {
+        return currentDay().usage();
+    }
+
+    /**
+     * 当日用量，跨天时换成新的计数
+     */
+    private DailyUsage currentDay() {
+        LocalDate now = LocalDate.now();
+        DailyUsage day = today.get();
+        while (!day.date().equals(now)) {
+            DailyUsage next = new DailyUsage(now, new Usage());
+            if (today.compareAndSet(day, next)) {
+                return next;
+            }
+            day = today.get();
+        }
+        return day;
+    }
+
+    private static double ratio(long used, long limit) {
+        return limit > 0 ? (double) used / limit : 0.0;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.template;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 预编译的游戏模板
+ * 模板只在加载时解析一次，拆分为静态字节片段与动态插槽交替排列：
+ * static[0] slot[0] static[1] slot[1] ... static[n]
+ * 静态片段是所有请求共享的 UTF-8 字节数组，渲染时只编码插槽的值。
+ *
+ * 插槽语法（与页面脚本中的 ${...} 模板字符串不冲突）：
+ * - {{name}}   HTML 转义后输出，用于标题等文本
+ * - {{{name}}} 原样输出，用于内嵌的 JSON 数据
+ * - {{@name}}  编译期指令，由编译方解析为文本并并入静态片段（如运行时样式与脚本的引用），内容不再解析插槽
+ */
+public final class CompiledTemplate {
+
+    private final String name;
+    private final byte[][] statics;
+    private final String[] slots;
+    private final boolean[] raw;
+    private final int staticLength;
+    private final String version;
+
+    private CompiledTemplate(String name, byte[][] statics, String[] slots, boolean[] raw) {
+        this.name = name;
+        this.statics = statics;
+        this.slots = slots;
+        this.raw = raw;
+        int length = 0;
+        for (byte[] part : statics) {
+            length += part.length;
+        }
+        this.staticLength = length;
+        this.version = digest(statics, slots, raw);
+    }
+
+    /**
+     * 编译结果的内容哈希（SHA-256 前 12 位十六进制），覆盖静态片段（含已展开的指令）与插槽
+     */
+    private static String digest(byte[][] statics, String[] slots, boolean[] raw) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < slots.length; i++) {
+                md.update(statics[i]);
+                md.update((byte) 0);
+                md.update(slots[i].getBytes(StandardCharsets.UTF_8));
+                md.update((byte) (raw[i] ? 1 : 2));
+            }
+            md.update(statics[slots.length]);
+            return HexFormat.of().formatHex(md.digest(), 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 解析模板文本
+     *
+     * @throws IllegalArgumentException 插槽未闭合
+     */
+    public static CompiledTemplate compile(String name, String source) {
+        return compile(name, source, directive -> "");
+    }
+
+    /**
+     * 解析模板文本，{{@name}} 指令通过 directives 解析
+     *
+     * @throws IllegalArgumentException 插槽未闭合
+     */
+    public static CompiledTemplate compile(String name, String source, Function<String, String> directives) {
+        List<byte[]> statics = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        List<Boolean> raw = new ArrayList<>();
+        StringBuilder pending = new StringBuilder();
+
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            boolean isRaw = source.startsWith("{{{", open);
+            String close = isRaw ? "}}}" : "}}";
+            int start = open + (isRaw ? 3 : 2);
+            int end = source.indexOf(close, start);
+            if (end < 0) {
+                throw new IllegalArgumentException("模板 " + name + " 的插槽未闭合，位置: " + open);
+            }
+            pending.append(source, pos, open);
+            String slot = source.substring(start, end).strip();
+            if (slot.startsWith("@")) {
+                pending.append(directives.apply(slot.substring(1)));
+            } else {
+                statics.add(pending.toString().getBytes(StandardCharsets.UTF_8));
+                pending.setLength(0);
+                slots.add(slot);
+                raw.add(isRaw);
+            }
+            pos = end + close.length();
+        }
+        pending.append(source.substring(pos));
+        statics.add(pending.toString().getBytes(StandardCharsets.UTF_8));
+
+        boolean[] rawFlags = new boolean[raw.size()];
+        for (int i = 0; i < rawFlags.length; i++) {
+            rawFlags[i] = raw.get(i);
+        }
+        return new CompiledTemplate(name, statics.toArray(new byte[0][]), slots.toArray(new String[0]), rawFlags);
+    }
+
+    /**
+     * 渲染为 UTF-8 字节：先编码插槽值，再按总长度一次分配输出数组，静态片段直接拷贝
+     *
+     * @param values 插槽值，缺失的插槽输出为空
+     */
+    public byte[] render(Map<String, ?> values) {
+        byte[][] encoded = encodeSlots(values);
+        int length = staticLength;
+        for (byte[] value : encoded) {
+            length += value.length;
+        }
+
+        byte[] out = new byte[length];
+        int pos = 0;
+        for (int i = 0; i < slots.length; i++) {
+            System.arraycopy(statics[i], 0, out, pos, statics[i].length);
+            pos += statics[i].length;
+            System.arraycopy(encoded[i], 0, out, pos, encoded[i].length);
+            pos += encoded[i].length;
+        }
+        byte[] last = statics[slots.length];
+        System.arraycopy(last, 0, out, pos, last.length);
+        return out;
+    }
+
+    /**
+     * 渲染到输出流，静态片段直接写出，不拼接完整页面
+     */
+    public void writeTo(OutputStream out, Map<String, ?> values) throws IOException {
+        prepare(values).writeTo(out);
+    }
+
+    /**
+     * 只编码插槽值，返回可按片段写出的页面内容，静态片段与模板共享
+     */
+    public HtmlContent prepare(Map<String, ?> values) {
+        return new Prepared(encodeSlots(values));
+    }
+
+    private byte[][] encodeSlots(Map<String, ?> values) {
+        byte[][] encoded = new byte[slots.length][];
+        for (int i = 0; i < slots.length; i++) {
+            Object value = values.get(slots[i]);
+            String text = value != null ? value.toString() : "";
+            encoded[i] = (raw[i] ? text : escapeHtml(text)).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    static String escapeHtml(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            String replacement = switch (text.charAt(i)) {
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '&' -> "&amp;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(text.charAt(i));
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : text;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 已编码插槽的渲染结果：static[0] slot[0] ... static[n] 按顺序写出
+     */
+    private final class Prepared implements HtmlContent {
+
+        private final byte[][] encoded;
+        private final long length;
+
+        Prepared(byte[][] encoded) {
+            this.encoded = encoded;
+            long total = staticLength;
+            for (byte[] value : encoded) {
+                total += value.length;
+            }
+            this.length = total;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            for (int i = 0; i < slots.length; i++) {
+                out.write(statics[i]);
+                out.write(encoded[i]);
+            }
+            out.write(statics[slots.length]);
+        }
+
+        @Override
+        public InputStream openStream() {
+            List<InputStream> parts = new ArrayList<>(slots.length * 2 + 1);
+            for (int i = 0; i < slots.length; i++) {
+                parts.add(new ByteArrayInputStream(statics[i]));
+                parts.add(new ByteArrayInputStream(encoded[i]));
+            }
+            parts.add(new ByteArrayInputStream(statics[slots.length]));
+            return new SequenceInputStream(Collections.enumeration(parts));
+        }
+
+        @Override
+        public String toString() {
+            return asString();
+        }
+    }
+
+    /**
+     * 插槽名称（按出现顺序）
+     */
+    public List<String> getSlots() {
+        return List.of(slots);
+    }
+
+    /**
+     * 模板版本：模板文件或内联/引用的运行时资源变化时随之变化
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * 静态片段总字节数
+     */
+    public int getStaticLength() {
+        return staticLength;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.template;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内置游戏的共享运行时资源（CSS/JS）
+ * 启动时从 agent.game.runtime.location 加载 模板名.css / 模板名.js，按内容哈希生成版本号。
+ *
+ * 两种输出模式：
+ * - INLINE：样式与脚本内联到页面中，页面可离线打开（导出、保存到本地时使用）
+ * - EXTERNAL：页面只引用 {base-url}/{版本}/{文件名}，资源由 GameRuntimeController 以不可变缓存的方式提供，
+ *   响应与保存的游戏只包含数据与引用，浏览器跨游戏复用缓存
+ */
+@Slf4j
+@Component
+public class GameRuntimeAssets {
+
+    /**
+     * 运行时资源的输出模式
+     */
+    public enum Mode {
+        INLINE,
+        EXTERNAL;
+
+        /**
+         * 解析请求选项中的模式（不区分大小写），无法识别时返回 defaultMode
+         */
+        public static Mode parse(Object value, Mode defaultMode) {
+            if (value == null) {
+                return defaultMode;
+            }
+            try {
+                return Mode.valueOf(value.toString().trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return defaultMode;
+            }
+        }
+    }
+
+    /**
+     * 运行时资源
+     *
+     * @param name 文件名，如 math-game.css
+     * @param version 内容哈希（SHA-256 前 12 位十六进制）
+     * @param content UTF-8 内容，所有请求共享，不可修改
+     */
+    public record Asset(String name, String version, byte[] content, String contentType) {}
+
+    @Value("${agent.game.runtime.location:classpath:/game-runtime/}")
+    private String location;
+
+    @Value("${agent.game.runtime.base-url:/api/game/runtime}")
+    private String baseUrl;
+
+    @Value("${agent.game.runtime.mode:inline}")
+    private String defaultMode;
+
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        try {
+            for (String pattern : new String[]{"*.css", "*.js"}) {
+                for (Resource resource : resolver.getResources(location + pattern)) {
+                    String name = resource.getFilename();
+                    try (InputStream in = resource.getInputStream()) {
+                        byte[] content = in.readAllBytes();
+                        assets.put(name, new Asset(name, hash(content), content,
+                            name.endsWith(".css") ? "text/css;charset=UTF-8" : "application/javascript;charset=UTF-8"));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载游戏运行时资源失败: " + location, e);
+        }
+        log.info("📦 已加载 {} 个游戏运行时资源，默认模式: {}", assets.size(), getDefaultMode());
+    }
+
+    public Asset get(String name) {
+        return assets.get(name);
+    }
+
+    public Mode getDefaultMode() {
+        return Mode.parse(defaultMode, Mode.INLINE);
+    }
+
+    /**
+     * 解析模板中的 {{@styles}} / {{@scripts}} 指令
+     *
+     * @param template 模板名，对应 模板名.css / 模板名.js
+     */
+    public String resolveDirective(String template, String directive, Mode mode) {
+        return switch (directive) {
+            case "styles" -> styles(template, mode);
+            case "scripts" -> scripts(template, mode);
+            default -> throw new IllegalArgumentException("未知的模板指令: @" + directive);
+        };
+    }
+
+    private String styles(String template, Mode mode) {
+        Asset asset = assets.get(template + ".css");
+        if (asset == null) {
+            return "";
+        }
+        if (mode == Mode.EXTERNAL) {
+            return "<link rel=\"stylesheet\" href=\"" + url(asset) + "\">";
+        }
+        return "<style>\n" + new String(asset.content(), StandardCharsets.UTF_8) + "    </style>";
+    }
+
+    private String scripts(String template, Mode mode) {
+        Asset asset = assets.get(template + ".js");
+        if (asset == null) {
+            return "";
+        }
+        if (mode == Mode.EXTERNAL) {
+            return "<script src=\"" + url(asset) + "\"></script>";
+        }
+        return "<script>\n" + new String(asset.content(), StandardCharsets.UTF_8) + "    </script>";
+    }
+
+    /**
+     * 带版本的资源地址，内容变化时地址随之变化
+     */
+    public String url(Asset asset) {
+        return baseUrl + "/" + asset.version() + "/" + asset.name();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
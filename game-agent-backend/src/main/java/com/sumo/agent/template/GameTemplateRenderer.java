@@ -0,0 +1,166 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.template;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内置游戏模板渲染器
+ * 按名称从 agent.game.template-path 加载 HTML 模板，首次使用时编译为 {@link CompiledTemplate} 并缓存，
+ * 之后每次渲染只编码插槽值并拷贝共享的静态片段。
+ * 模板中的 {{@styles}} / {{@scripts}} 按运行时模式（{@link GameRuntimeAssets.Mode}）在编译期展开，
+ * 每种模式各缓存一份编译结果。
+ */
+@Slf4j
+@Component
+public class GameTemplateRenderer {
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private GameRuntimeAssets runtimeAssets;
+
+    @Value("${agent.game.template-path:classpath:/game-templates/}")
+    private String templatePath;
+
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+    private final Map<String, RenderStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 按默认运行时模式渲染模板为 UTF-8 字节
+     *
+     * @param name 模板名（不含 .html 后缀），如 "math-game"
+     * @param values 插槽值
+     */
+    public byte[] render(String name, Map<String, ?> values) {
+        return render(name, values, runtimeAssets.getDefaultMode());
+    }
+
+    /**
+     * 渲染模板为 UTF-8 字节
+     *
+     * @param mode 运行时资源内联或外部引用
+     */
+    public byte[] render(String name, Map<String, ?> values, GameRuntimeAssets.Mode mode) {
+        long start = System.nanoTime();
+        byte[] html = getTemplate(name, mode).render(values);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        stats.computeIfAbsent(name, k -> new RenderStats()).record(micros);
+        log.debug("🖌️ 渲染模板 {}: {} 字节, 耗时 {}µs", name, html.length, micros);
+        return html;
+    }
+
+    /**
+     * 渲染模板为可分块写出的页面内容，只编码插槽值，不拼接完整页面
+     */
+    public HtmlContent renderContent(String name, Map<String, ?> values, GameRuntimeAssets.Mode mode) {
+        long start = System.nanoTime();
+        HtmlContent html = getTemplate(name, mode).prepare(values);
+        long micros = (System.nanoTime() - start) / 1000;
+
+        stats.computeIfAbsent(name, k -> new RenderStats()).record(micros);
+        log.debug("🖌️ 渲染模板 {}: {} 字节, 耗时 {}µs", name, html.contentLength(), micros);
+        return html;
+    }
+
+    /**
+     * 渲染模板为字符串
+     */
+    public String renderToString(String name, Map<String, ?> values) {
+        return new String(render(name, values), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 渲染模板为字符串
+     */
+    public String renderToString(String name, Map<String, ?> values, GameRuntimeAssets.Mode mode) {
+        return new String(render(name, values, mode), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解析请求选项中的运行时模式，未指定时使用 agent.game.runtime.mode
+     */
+    public GameRuntimeAssets.Mode resolveMode(Object option) {
+        return GameRuntimeAssets.Mode.parse(option, runtimeAssets.getDefaultMode());
+    }
+
+    /**
+     * 获取编译后的模板，首次访问时加载并编译
+     *
+     * @throws IllegalStateException 模板不存在或无法读取
+     */
+    public CompiledTemplate getTemplate(String name, GameRuntimeAssets.Mode mode) {
+        return templates.computeIfAbsent(name + "@" + mode, key -> load(name, mode));
+    }
+
+    /**
+     * 清空编译缓存，模板文件修改后调用
+     */
+    public void invalidate() {
+        templates.clear();
+    }
+
+    private CompiledTemplate load(String name, GameRuntimeAssets.Mode mode) {
+        String location = templatePath + name + ".html";
+        Resource resource = resourceLoader.getResource(location);
+        if (!resource.exists()) {
+            throw new IllegalStateException("游戏模板不存在: " + location);
+        }
+        try (InputStream in = resource.getInputStream()) {
+            CompiledTemplate template = CompiledTemplate.compile(name, new String(in.readAllBytes(), StandardCharsets.UTF_8),
+                directive -> runtimeAssets.resolveDirective(name, directive, mode));
+            log.info("📄 编译游戏模板 {} ({}): {} 个插槽, 静态部分 {} 字节",
+                name, mode, template.getSlots().size(), template.getStaticLength());
+            return template;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取游戏模板失败: " + location, e);
+        }
+    }
+
+    /**
+     * 获取各模板的渲染统计（次数与平均耗时，单位微秒）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<>();
+        stats.forEach((name, s) -> result.put(name, s.toMap()));
+        return result;
+    }
+
+    private static final class RenderStats {
+        private long count;
+        private long totalMicros;
+        private long maxMicros;
+
+        synchronized void record(long micros) {
+            count++;
+            totalMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("renders", count);
+            map.put("avgMicros", count == 0 ? 0 : totalMicros / count);
+            map.put("maxMicros", maxMicros);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.template;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 游戏页面内容（UTF-8）
+ * Agent 的结果中以它代替完整的 HTML 字符串：内容可以分块写入输出流（如响应体），
+ * 不必先拼接成字符串再转义、复制；确实需要字符串时调用 {@link #asString()}。
+ *
+ * 序列化为 JSON 时输出为普通字符串字段（前端无感知），写出过程按块读取并转义，不生成中间字符串。
+ */
+@JsonSerialize(using = HtmlContent.Serializer.class)
+public interface HtmlContent {
+
+    /**
+     * UTF-8 字节数
+     */
+    long contentLength();
+
+    /**
+     * 写出全部内容
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * 以输入流读取内容
+     */
+    InputStream openStream();
+
+    /**
+     * 物化为字符串（会复制完整页面，只在确实需要字符串时使用）
+     */
+    default String asString() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) contentLength());
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 包装已有的字符串（如大模型返回的页面）
+     */
+    static HtmlContent of(String html) {
+        return of(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 包装 UTF-8 字节，字节数组在多个请求间共享，调用方不得再修改
+     */
+    static HtmlContent of(byte[] utf8) {
+        return new HtmlContent() {
+            @Override
+            public long contentLength() {
+                return utf8.length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(utf8);
+            }
+
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(utf8);
+            }
+
+            @Override
+            public String toString() {
+                return asString();
+            }
+        };
+    }
+
+    /**
+     * 以 JSON 字符串输出，边读边转义
+     */
+    class Serializer extends StdSerializer<HtmlContent> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(HtmlContent.class);
+        }
+
+        @Override
+        public void serialize(HtmlContent value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            try (Reader reader = new InputStreamReader(value.openStream(), StandardCharsets.UTF_8)) {
+                gen.writeString(reader, -1);
+            }
+        }
+    }
+}
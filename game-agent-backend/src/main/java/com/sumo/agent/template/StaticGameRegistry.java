@@ -0,0 +1,244 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.template;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预置静态游戏注册表
+ * 交通安全、英语学习等预置游戏是现成的 HTML 文件，启动时一次性加载到内存，
+ * 只保存 UTF-8 字节与 gzip 压缩版本，请求时直接复用，不再读盘。
+ *
+ * - 启动时按 agent.game.static-games.dirs 依次查找，任一游戏缺失则启动失败
+ * - 开启 watch 时监听文件所在目录，文件修改后重新加载；重新加载失败时保留旧版本
+ */
+@Slf4j
+@Component
+public class StaticGameRegistry {
+
+    /**
+     * 已加载的静态游戏，不可修改，重新加载时整体替换
+     *
+     * @param name 游戏名（文件名去掉 .html）
+     * @param content UTF-8 字节
+     * @param gzipped gzip 压缩后的字节
+     * @param sha256 内容 SHA-256（十六进制）
+     * @param version 内容版本（SHA-256 前 12 位十六进制）
+     */
+    public record StaticGame(String name, Path path, byte[] content, byte[] gzipped,
+                             String sha256, String version, long loadedAt) {}
+
+    @Value("${agent.game.static-games.names:traffic_safety_game,english_learning_game}")
+    private String[] names;
+
+    @Value("${agent.game.static-games.dirs:game-agent-backend/saved-games,saved-games}")
+    private String[] dirs;
+
+    @Value("${agent.game.static-games.watch:true}")
+    private boolean watchEnabled;
+
+    private final Map<String, StaticGame> games = new ConcurrentHashMap<>();
+
+    private volatile WatchService watchService;
+
+    @PostConstruct
+    public void init() {
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            Path path = locate(name);
+            if (path == null) {
+                missing.add(name);
+                continue;
+            }
+            games.put(name, load(name, path));
+        }
+        if (!missing.isEmpty()) {
+            List<String> searched = Arrays.stream(dirs).map(d -> Paths.get(d.trim()).toAbsolutePath().toString()).toList();
+            throw new IllegalStateException("预置静态游戏缺失: " + missing + "，查找目录: " + searched);
+        }
+
+        long totalBytes = games.values().stream().mapToLong(g -> g.content().length).sum();
+        long gzipBytes = games.values().stream().mapToLong(g -> g.gzipped().length).sum();
+        log.info("🎁 已加载 {} 个预置静态游戏: {} 字节, gzip 后 {} 字节", games.size(), totalBytes, gzipBytes);
+
+        if (watchEnabled) {
+            try {
+                startWatching();
+            } catch (IOException e) {
+                log.warn("预置静态游戏目录监听启动失败，修改文件后需重启: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("关闭静态游戏目录监听失败", e);
+            }
+        }
+    }
+
+    /**
+     * 获取静态游戏
+     *
+     * @throws IllegalArgumentException 未注册的游戏名
+     */
+    public StaticGame get(String name) {
+        StaticGame game = games.get(name);
+        if (game == null) {
+            throw new IllegalArgumentException("未注册的预置静态游戏: " + name);
+        }
+        return game;
+    }
+
+    /**
+     * 查找静态游戏，不存在时返回 null
+     */
+    public StaticGame find(String name) {
+        return games.get(name);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        games.forEach((name, game) -> stats.put(name, Map.of(
+            "path", game.path().toString(),
+            "bytes", game.content().length,
+            "gzipBytes", game.gzipped().length,
+            "version", game.version(),
+            "loadedAt", game.loadedAt()
+        )));
+        return stats;
+    }
+
+    private Path locate(String name) {
+        for (String dir : dirs) {
+            Path path = Paths.get(dir.trim(), name + ".html");
+            if (Files.isRegularFile(path)) {
+                return path.toAbsolutePath().normalize();
+            }
+        }
+        return null;
+    }
+
+    private static StaticGame load(String name, Path path) {
+        try {
+            byte[] content = Files.readAllBytes(path);
+            String sha256 = hash(content);
+            return new StaticGame(name, path, content, gzip(content), sha256, sha256.substring(0, 12), System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取预置静态游戏失败: " + path, e);
+        }
+    }
+
+    // ==================== 文件监听 ====================
+
+    private void startWatching() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Map<WatchKey, Path> keys = new HashMap<>();
+        for (Path dir : games.values().stream().map(g -> g.path().getParent()).distinct().toList()) {
+            keys.put(dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        }
+
+        Thread watcher = new Thread(() -> watchLoop(keys), "static-game-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("👀 监听预置静态游戏目录: {}", keys.values());
+    }
+
+    private void watchLoop(Map<WatchKey, Path> keys) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // 合并短时间内的连续事件（编辑器保存通常触发多次）
+                Thread.sleep(300);
+
+                Set<Path> changed = new LinkedHashSet<>();
+                do {
+                    Path base = keys.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (base != null && event.context() instanceof Path name) {
+                            changed.add(base.resolve(name).toAbsolutePath().normalize());
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll()) != null);
+
+                games.values().stream()
+                    .filter(game -> changed.contains(game.path()))
+                    .toList()
+                    .forEach(this::reload);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reload(StaticGame previous) {
+        try {
+            StaticGame game = load(previous.name(), previous.path());
+            if (game.version().equals(previous.version())) {
+                return;
+            }
+            games.put(game.name(), game);
+            log.info("🔄 重新加载预置静态游戏: {} ({} 字节)", game.name(), game.content().length);
+        } catch (UncheckedIOException e) {
+            log.error("重新加载预置静态游戏失败，继续使用旧版本: {}", previous.path(), e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 3);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* 数学游戏运行时脚本 */
+// 游戏数据：题目由页面中的 GAME_DATA 提供
+let gameData = {
+    currentQuestion: 0,
+    score: 0,
+    correct: 0,
+    total: GAME_DATA.total,
+    questions: GAME_DATA.questions
+};
+
+let answered = false;
+
+function checkAnswer(button, value) {
+    if (answered) return;
+    answered = true;
+    
+    const currentQ = gameData.questions[gameData.currentQuestion];
+    const correct = value === currentQ.answer;
+    
+    if (correct) {
+        button.classList.add('correct');
+        gameData.score += 10;
+        gameData.correct++;
+        showCelebration('✨');
+        playSound('correct');
+    } else {
+        button.classList.add('wrong');
+        // 显示正确答案
+        const buttons = document.querySelectorAll('.option-btn');
+        buttons.forEach(btn => {
+            if (parseInt(btn.textContent) === currentQ.answer) {
+                btn.classList.add('correct');
+            }
+        });
+        playSound('wrong');
+    }
+    
+    updateScore();
+    
+    // 自动进入下一题
+    setTimeout(() => {
+        nextQuestion();
+    }, 1500);
+}
+
+function nextQuestion() {
+    answered = false;
+    gameData.currentQuestion++;
+    
+    if (gameData.currentQuestion >= gameData.questions.length) {
+        showResult();
+        return;
+    }
+    
+    loadQuestion();
+}
+
+function loadQuestion() {
+    const q = gameData.questions[gameData.currentQuestion];
+    document.getElementById('question').textContent = 
+        `${q.num1} ${q.operator} ${q.num2} = ?`;
+    
+    const optionsHtml = q.options.map(opt => 
+        `<button class="option-btn" onclick="checkAnswer(this, ${opt})">${opt}</button>`
+    ).join('');
+    
+    document.getElementById('options').innerHTML = optionsHtml;
+    
+    updateProgress();
+}
+
+function updateScore() {
+    document.getElementById('score').textContent = gameData.score;
+    document.getElementById('current').textContent = gameData.currentQuestion + 1;
+    const accuracy = gameData.currentQuestion > 0 ? 
+        Math.round((gameData.correct / (gameData.currentQuestion + 1)) * 100) : 0;
+    document.getElementById('accuracy').textContent = accuracy + '%';
+}
+
+function updateProgress() {
+    const progress = ((gameData.currentQuestion + 1) / gameData.total) * 100;
+    document.getElementById('progress').style.width = progress + '%';
+}
+
+function resetGame() {
+    gameData.currentQuestion = 0;
+    gameData.score = 0;
+    gameData.correct = 0;
+    answered = false;
+    loadQuestion();
+    updateScore();
+}
+
+function showCelebration(emoji) {
+    const celebration = document.createElement('div');
+    celebration.className = 'celebration';
+    celebration.textContent = emoji;
+    document.body.appendChild(celebration);
+    setTimeout(() => celebration.remove(), 1000);
+}
+
+function showResult() {
+    const accuracy = Math.round((gameData.correct / gameData.total) * 100);
+    alert(`🎉 游戏结束！\n得分：${gameData.score}\n正确率：${accuracy}%`);
+}
+
+function playSound(type) {
+    // 音效播放（需要添加音频文件）
+}
+
+// 初始化游戏
+window.onload = function() {
+    loadQuestion();
+    updateScore();
+};
@@ -0,0 +1,111 @@
+/* 记忆翻牌游戏运行时脚本 */
+// 游戏数据：图标与配对数由页面中的 GAME_DATA 提供
+const icons = GAME_DATA.icons;
+let cards = [...icons, ...icons];
+let flippedCards = [];
+let matchedPairs = 0;
+let moves = 0;
+let startTime = Date.now();
+let timerInterval;
+
+// 按 GAME_DATA.seed 初始化的伪随机数（mulberry32），相同种子得到相同的卡片顺序
+let rngState = GAME_DATA.seed !== undefined
+    ? ((GAME_DATA.seed % 4294967296) ^ Math.floor(GAME_DATA.seed / 4294967296)) >>> 0
+    : Math.floor(Math.random() * 4294967296);
+
+function random() {
+    rngState = (rngState + 0x6D2B79F5) >>> 0;
+    let t = rngState;
+    t = Math.imul(t ^ (t >>> 15), t | 1);
+    t ^= t + Math.imul(t ^ (t >>> 7), t | 61);
+    return ((t ^ (t >>> 14)) >>> 0) / 4294967296;
+}
+
+function shuffle(array) {
+    for (let i = array.length - 1; i > 0; i--) {
+        const j = Math.floor(random() * (i + 1));
+        [array[i], array[j]] = [array[j], array[i]];
+    }
+    return array;
+}
+
+function createBoard() {
+    const board = document.getElementById('gameBoard');
+    board.innerHTML = '';
+    shuffle(cards).forEach((icon, index) => {
+        const card = document.createElement('div');
+        card.className = 'card';
+        card.dataset.icon = icon;
+        card.dataset.index = index;
+        card.innerHTML = `
+            <div class="card-front">?</div>
+            <div class="card-back">${icon}</div>
+        `;
+        card.addEventListener('click', flipCard);
+        board.appendChild(card);
+    });
+}
+
+function flipCard() {
+    if (flippedCards.length >= 2) return;
+    if (this.classList.contains('flipped')) return;
+    
+    this.classList.add('flipped');
+    flippedCards.push(this);
+    
+    if (flippedCards.length === 2) {
+        moves++;
+        document.getElementById('moves').textContent = moves;
+        checkMatch();
+    }
+}
+
+function checkMatch() {
+    const [card1, card2] = flippedCards;
+    const match = card1.dataset.icon === card2.dataset.icon;
+    
+    setTimeout(() => {
+        if (match) {
+            card1.classList.add('matched');
+            card2.classList.add('matched');
+            matchedPairs++;
+            document.getElementById('pairs').textContent = matchedPairs;
+            
+            if (matchedPairs === GAME_DATA.pairs) {
+                endGame();
+            }
+        } else {
+            card1.classList.remove('flipped');
+            card2.classList.remove('flipped');
+        }
+        flippedCards = [];
+    }, 1000);
+}
+
+function endGame() {
+    clearInterval(timerInterval);
+    document.getElementById('winMessage').style.display = 'block';
+}
+
+function updateTimer() {
+    const elapsed = Math.floor((Date.now() - startTime) / 1000);
+    document.getElementById('time').textContent = elapsed;
+}
+
+function resetGame() {
+    flippedCards = [];
+    matchedPairs = 0;
+    moves = 0;
+    startTime = Date.now();
+    document.getElementById('moves').textContent = '0';
+    document.getElementById('pairs').textContent = '0';
+    document.getElementById('time').textContent = '0';
+    document.getElementById('winMessage').style.display = 'none';
+    createBoard();
+    clearInterval(timerInterval);
+    timerInterval = setInterval(updateTimer, 1000);
+}
+
+// 初始化游戏
+createBoard();
+timerInterval = setInterval(updateTimer, 1000);
@@ -0,0 +1,114 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.controller;
+
+import com.sumo.agent.core.GameArtifact;
+import com.sumo.agent.core.GameGeneratorAgent;
+import com.sumo.agent.service.BatchGenerationService;
+import com.sumo.agent.template.CompiledTemplate;
+import com.sumo.agent.template.HtmlContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 游戏页面直接返回接口（/api/game/generate/html）测试
+ * 应用同时引入 web 与 webflux，实际运行在 Servlet（Spring MVC）上，这里按 MVC 的异步分派验证响应体
+ */
+class GameChatControllerTest {
+
+    private final GameGeneratorAgent gameGeneratorAgent = mock(GameGeneratorAgent.class);
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        GameChatController controller = new GameChatController();
+        ReflectionTestUtils.setField(controller, "gameGeneratorAgent", gameGeneratorAgent);
+        ReflectionTestUtils.setField(controller, "batchGenerationService", mock(BatchGenerationService.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void generateHtmlWritesRenderedPage() throws Exception {
+        // 多个静态片段与插槽，插槽值需要转义且包含多字节字符
+        CompiledTemplate template = CompiledTemplate.compile("test",
+            "<!DOCTYPE html><html><head><title>{{title}}</title></head><body>"
+                + "x".repeat(20_000) + "<script>const q = {{{questions}}};</script></body></html>");
+        HtmlContent html = template.prepare(Map.of("title", "数学 <闯关>", "questions", "[1,2,3]"));
+        GameArtifact artifact = GameArtifact.builder()
+            .html(html)
+            .type("math")
+            .source(GameArtifact.Source.TEMPLATE)
+            .seed(42L)
+            .build();
+        when(gameGeneratorAgent.generateGame(anyString(), anyString(), any()))
+            .thenReturn(GameGeneratorAgent.GameGenerationResult.success(artifact, null, "数学游戏Agent"));
+
+        MvcResult started = mockMvc.perform(post("/api/game/generate/html")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"userInput\":\"做一个数学游戏\",\"sessionId\":\"s1\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        artifact.html().writeTo(expected);
+
+        mockMvc.perform(asyncDispatch(dispatch(started)))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_HTML))
+            .andExpect(header().longValue("Content-Length", artifact.contentLength()))
+            .andExpect(header().string("ETag", "\"" + artifact.contentHash() + "\""))
+            .andExpect(header().string("X-Session-Id", "s1"))
+            .andExpect(header().string("X-Game-Type", "math"))
+            .andExpect(header().string("X-Game-Seed", "42"))
+            .andExpect(content().bytes(expected.toByteArray()));
+    }
+
+    /**
+     * 第一次异步分派取得 Mono 的结果（响应头），响应体由 StreamingResponseBody 再次异步写出
+     */
+    private MvcResult dispatch(MvcResult started) throws Exception {
+        return mockMvc.perform(asyncDispatch(started))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    }
+
+    @Test
+    void generateHtmlReportsFailureAsPlainText() throws Exception {
+        when(gameGeneratorAgent.generateGame(anyString(), anyString(), any()))
+            .thenReturn(GameGeneratorAgent.GameGenerationResult.failure("生成失败"));
+
+        MvcResult started = mockMvc.perform(post("/api/game/generate/html")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"userInput\":\"做一个数学游戏\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(dispatch(started)))
+            .andExpect(status().isInternalServerError())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+            .andExpect(content().bytes("生成失败".getBytes(StandardCharsets.UTF_8)));
+    }
+}
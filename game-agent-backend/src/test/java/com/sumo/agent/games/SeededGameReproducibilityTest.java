@@ -0,0 +1,141 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.games;
+
+import com.sumo.agent.core.AgentContext;
+import com.sumo.agent.core.BaseAgent;
+import com.sumo.agent.core.GameArtifact;
+import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.template.GameRuntimeAssets;
+import com.sumo.agent.template.GameTemplateRenderer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 可复现游戏测试：相同的 (配置, 种子) 必须生成逐字节相同的页面
+ * 只保存种子的游戏存储依赖这一点，模板或生成逻辑引入不确定性（如 HashMap 遍历顺序、未使用种子的随机数）时在这里失败
+ */
+@SpringJUnitConfig({GameRuntimeAssets.class, GameTemplateRenderer.class, MathGameAgent.class, MemoryGameAgent.class})
+@TestPropertySource(properties = "agent.game.pool.size=2")
+class SeededGameReproducibilityTest {
+
+    private static final long[] SEEDS = {0L, 42L, -7L, 3061706713021007L};
+
+    @Autowired
+    private MathGameAgent mathGameAgent;
+
+    @Autowired
+    private MemoryGameAgent memoryGameAgent;
+
+    @Test
+    void mathVariantIsDeterminedBySeed() {
+        VariantPool<MathGameAgent.VariantKey, MathGameAgent.MathVariant> pool = variantPool();
+        for (GameConfig.DifficultyLevel difficulty : GameConfig.DifficultyLevel.values()) {
+            for (int maxNumber : new int[]{5, 20, 100}) {
+                MathGameAgent.VariantKey key = new MathGameAgent.VariantKey(maxNumber, difficulty);
+                for (long seed : SEEDS) {
+                    MathGameAgent.MathVariant first = pool.generate(key, seed);
+                    MathGameAgent.MathVariant second = pool.generate(key, seed);
+                    assertEquals(seed, first.seed());
+                    assertEquals(first.seed(), second.seed());
+                    assertEquals(first.questionsJson(), second.questionsJson(), key + " seed=" + seed);
+                }
+            }
+        }
+        MathGameAgent.VariantKey key = new MathGameAgent.VariantKey(100, GameConfig.DifficultyLevel.HARD);
+        assertNotEquals(pool.generate(key, 1L).questionsJson(), pool.generate(key, 2L).questionsJson());
+    }
+
+    @Test
+    void pooledMathVariantReproducesFromItsSeed() {
+        VariantPool<MathGameAgent.VariantKey, MathGameAgent.MathVariant> pool = variantPool();
+        MathGameAgent.VariantKey key = new MathGameAgent.VariantKey(20, GameConfig.DifficultyLevel.MEDIUM);
+        for (int i = 0; i < 5; i++) {
+            MathGameAgent.MathVariant taken = pool.take(key);
+            assertEquals(taken.questionsJson(), pool.generate(key, taken.seed()).questionsJson());
+        }
+    }
+
+    @Test
+    void mathGameWithSameSeedRendersIdenticalHtml() throws IOException {
+        assertIdenticalHtml(mathGameAgent, GameConfig.GameType.MATH);
+    }
+
+    @Test
+    void memoryGameWithSameSeedRendersIdenticalHtml() throws IOException {
+        assertIdenticalHtml(memoryGameAgent, GameConfig.GameType.MEMORY);
+    }
+
+    /**
+     * 未指定种子时结果中带的种子可以复现同一页面
+     */
+    @Test
+    void generatedSeedReproducesPage() throws IOException {
+        for (BaseAgent agent : List.of(mathGameAgent, memoryGameAgent)) {
+            GameConfig.GameType type = agent == mathGameAgent ? GameConfig.GameType.MATH : GameConfig.GameType.MEMORY;
+            GameArtifact generated = run(agent, config(type, GameConfig.DifficultyLevel.MEDIUM), null);
+            assertNotNull(generated.seed());
+            GameArtifact replayed = run(agent, config(type, GameConfig.DifficultyLevel.MEDIUM), generated.seed());
+            assertArrayEquals(bytes(generated), bytes(replayed), agent.getName());
+        }
+    }
+
+    private void assertIdenticalHtml(BaseAgent agent, GameConfig.GameType type) throws IOException {
+        for (GameConfig.DifficultyLevel difficulty : GameConfig.DifficultyLevel.values()) {
+            for (long seed : SEEDS) {
+                GameArtifact first = run(agent, config(type, difficulty), seed);
+                GameArtifact second = run(agent, config(type, difficulty), seed);
+                assertEquals(seed, first.seed());
+                assertArrayEquals(bytes(first), bytes(second), type + " " + difficulty + " seed=" + seed);
+                assertEquals(first.contentHash(), second.contentHash());
+            }
+        }
+    }
+
+    private static GameArtifact run(BaseAgent agent, GameConfig config, Long seed) {
+        AgentContext context = new AgentContext();
+        context.setGameConfig(config);
+        if (seed != null) {
+            context.setAttribute(AgentContext.ATTR_SEED, seed);
+        }
+        agent.run(context);
+        assertNotNull(context.getResult(), agent.getName() + " 没有生成结果");
+        return context.getResult();
+    }
+
+    private static GameConfig config(GameConfig.GameType type, GameConfig.DifficultyLevel difficulty) {
+        return GameConfig.builder()
+            .gameType(type)
+            .ageGroup("6-8")
+            .difficulty(difficulty)
+            .theme("space")
+            .title("测试游戏")
+            .build();
+    }
+
+    private static byte[] bytes(GameArtifact artifact) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        artifact.html().writeTo(out);
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private VariantPool<MathGameAgent.VariantKey, MathGameAgent.MathVariant> variantPool() {
+        return (VariantPool<MathGameAgent.VariantKey, MathGameAgent.MathVariant>)
+            ReflectionTestUtils.getField(mathGameAgent, "variantPool");
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 文档切分与合并测试：全部片段合并回父文档后不应出现切分时保留的重叠内容
+ */
+class DocumentChunkerTest {
+
+    private static final VectorStore.DocumentType TYPE = VectorStore.DocumentType.DESIGN_PATTERN;
+
+    @Test
+    void collapseRestoresHardSplitLine() {
+        String item = "- " + sentence(40);
+        String content = "数学游戏设计模式：\n【题目设计】\n" + item;
+
+        List<VectorStore.Document> chunks = chunker(300, 60).chunk("doc", content, TYPE, null);
+        assertTrue(chunks.size() > 2);
+        for (int i = 1; i < chunks.size(); i++) {
+            assertEquals(60, chunks.get(i).getMetadata().get(DocumentChunker.META_OVERLAP_CHARS));
+        }
+        assertEquals(content, collapse(chunks));
+    }
+
+    /**
+     * 不同长度与重叠下，硬切点落在行中、换行处或续行缩进中都能还原
+     */
+    @Test
+    void collapseRestoresHardSplitMultiLineUnit() {
+        String content = "记忆游戏设计模式：\n【卡片布局】\n- " + sentence(6)
+            + "\n    " + sentence(5) + "\n  " + sentence(7)
+            + "\n- 短条目\n【难度】\n- " + sentence(3);
+        for (int maxChars = 40; maxChars <= 160; maxChars += 7) {
+            for (int overlapChars : new int[]{0, 1, 10, 25, maxChars - 1}) {
+                List<VectorStore.Document> chunks = chunker(maxChars, overlapChars).chunk("doc", content, TYPE, null);
+                assertEquals(content, collapse(chunks), "max=" + maxChars + " overlap=" + overlapChars);
+            }
+        }
+    }
+
+    @Test
+    void unitOverlapStillRemovedByLine() {
+        StringBuilder content = new StringBuilder("数学游戏设计模式：\n【规则】");
+        for (int i = 0; i < 20; i++) {
+            content.append("\n- 第").append(i).append("条：").append(sentence(1));
+        }
+
+        List<VectorStore.Document> chunks = chunker(120, 40).chunk("doc", content.toString(), TYPE, null);
+        assertTrue(chunks.size() > 2);
+        chunks.forEach(chunk -> assertNull(chunk.getMetadata().get(DocumentChunker.META_OVERLAP_CHARS)));
+        assertEquals(content.toString(), collapse(chunks));
+    }
+
+    @Test
+    void nonContiguousPiecesKeepOverlapAndMarkGap() {
+        String content = "数学游戏设计模式：\n- " + sentence(40);
+        List<VectorStore.Document> chunks = chunker(300, 60).chunk("doc", content, TYPE, null);
+
+        String merged = DocumentChunker.collapse(List.of(chunks.get(2), chunks.get(0)), 1).get(0).getContent();
+        String body0 = chunks.get(0).getContent();
+        String body2 = chunks.get(2).getContent().substring("数学游戏设计模式：\n".length());
+        assertEquals(body0 + "\n" + DocumentChunker.GAP_MARKER + "\n" + body2, merged);
+    }
+
+    private static DocumentChunker chunker(int maxChars, int overlapChars) {
+        DocumentChunker chunker = new DocumentChunker();
+        ReflectionTestUtils.setField(chunker, "maxChars", maxChars);
+        ReflectionTestUtils.setField(chunker, DocumentChunker.META_OVERLAP_CHARS, overlapChars);
+        return chunker;
+    }
+
+    /**
+     * 按相关度乱序召回全部片段后合并
+     */
+    private static String collapse(List<VectorStore.Document> chunks) {
+        List<VectorStore.Document> shuffled = new ArrayList<>(chunks);
+        Collections.reverse(shuffled);
+        List<VectorStore.Document> merged = DocumentChunker.collapse(shuffled, 1);
+        assertEquals(1, merged.size());
+        assertEquals(chunks.size(), merged.get(0).getMetadata().get("matchedChunks"));
+        return merged.get(0).getContent();
+    }
+
+    /**
+     * 各句子不同，重复内容不会被误判为重叠
+     */
+    private static String sentence(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("第").append(i).append("句：孩子们在游戏中练习加减法，答对得").append(i * 3 + 1).append("分。");
+        }
+        return text.toString();
+    }
+}
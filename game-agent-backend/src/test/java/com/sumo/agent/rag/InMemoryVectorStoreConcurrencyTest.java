@@ -0,0 +1,281 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 内存向量库并发读写测试
+ * 多个写线程各自在不相交的 id 范围内保存、覆盖、删除，多个读线程同时检索与按id查询；
+ * 读线程只校验单次读取到的状态自洽，结束后与各写线程记录的期望结果逐一比对。
+ *
+ * 读写混合吞吐基准带 benchmark 标签，默认不执行：
+ * mvn test -Dtest=InMemoryVectorStoreConcurrencyTest -Dsurefire.excludedGroups= -Dgroups=benchmark
+ */
+@Slf4j
+class InMemoryVectorStoreConcurrencyTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int IDS_PER_WRITER = 300;
+    private static final int OPS_PER_WRITER = 4000;
+
+    private static final VectorStore.DocumentType TYPE = VectorStore.DocumentType.GAME_TEMPLATE;
+
+    /**
+     * 不经过 Spring 创建，快照默认关闭
+     */
+    private final InMemoryVectorStore store = new InMemoryVectorStore();
+
+    @Test
+    void concurrentWritesAndReadsKeepStoreConsistent() throws Exception {
+        List<Map<String, String>> expected = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            expected.add(new HashMap<>());
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    write(writer, expected.get(writer));
+                    return null;
+                }));
+            }
+            List<Future<Long>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    return read(writing);
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<Long> reader : readers) {
+                assertTrue(reader.get(60, TimeUnit.SECONDS) > 0, "读线程没有完成任何读取");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<String, String> all = new HashMap<>();
+        expected.forEach(all::putAll);
+
+        // 存活文档数与期望一致
+        assertEquals(all.size(), store.getStats().get("totalDocuments"));
+
+        // 遍历结果：无重复、无丢失、无已删除文档复活
+        List<VectorStore.Document> scanned = store.findAllWithMetadata("writer");
+        Set<String> scannedIds = new HashSet<>();
+        for (VectorStore.Document doc : scanned) {
+            assertTrue(scannedIds.add(doc.getId()), "遍历结果中重复的id: " + doc.getId());
+        }
+        assertEquals(all.keySet(), scannedIds);
+
+        // 按过滤条件检索全部文档，与按id查询的结果一致
+        List<VectorStore.Document> searched = store.search(SearchRequest.builder()
+            .topK(all.size() + 100)
+            .types(EnumSet.of(TYPE))
+            .build());
+        Set<String> searchedIds = new HashSet<>();
+        for (VectorStore.Document doc : searched) {
+            assertTrue(searchedIds.add(doc.getId()), "检索结果中重复的id: " + doc.getId());
+            VectorStore.Document byId = store.findById(doc.getId());
+            assertNotNull(byId, "检索到但按id查询不到: " + doc.getId());
+            assertEquals(byId.getContent(), doc.getContent());
+        }
+        assertEquals(all.keySet(), searchedIds);
+
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < IDS_PER_WRITER; i++) {
+                String id = id(w, i);
+                VectorStore.Document doc = store.findById(id);
+                String content = all.get(id);
+                if (content == null) {
+                    assertNull(doc, "已删除的文档仍可查询: " + id);
+                    continue;
+                }
+                assertNotNull(doc, "文档丢失: " + id);
+                assertEquals(content, doc.getContent());
+
+                // 按唯一关键词检索只命中该文档的最新版本
+                List<VectorStore.Document> hits = store.search(token(w, i), 5);
+                assertEquals(1, hits.size(), "关键词检索结果数: " + id);
+                assertEquals(id, hits.get(0).getId());
+                assertEquals(content, hits.get(0).getContent());
+            }
+        }
+    }
+
+    /**
+     * 读写混合吞吐基准：预加载后固定时长内 90% 读（关键词检索 / 按id查询各半）、10% 覆盖写
+     */
+    @Test
+    @Tag("benchmark")
+    void readWriteMixThroughput() throws Exception {
+        int documents = 20_000;
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        long durationMillis = 5_000;
+
+        List<VectorStore.Document> preload = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            preload.add(document(0, i, 0));
+        }
+        store.saveAll(preload);
+
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        int i = random.nextInt(documents);
+                        int op = random.nextInt(100);
+                        if (op < 10) {
+                            store.save(document(0, i, random.nextInt(1000)));
+                            writes.increment();
+                        } else if (op < 55) {
+                            store.search(token(0, i) + " 数学", 5);
+                            reads.increment();
+                        } else {
+                            store.findById(id(0, i));
+                            reads.increment();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Thread.sleep(durationMillis);
+            running.set(false);
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = durationMillis / 1000.0;
+        log.info("📈 内存向量库读写混合吞吐: {} 个文档, {} 线程, 读 {}/s, 写 {}/s, 段数 {}",
+            documents, threads, (long) (reads.sum() / seconds), (long) (writes.sum() / seconds),
+            store.getStats().get("segments"));
+        assertEquals(documents, store.getStats().get("totalDocuments"));
+    }
+
+    /**
+     * 写线程：随机保存（新增或覆盖）、批量保存、删除自己范围内的文档，并记录期望的最终内容
+     */
+    private void write(int writer, Map<String, String> expected) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int op = 0; op < OPS_PER_WRITER; op++) {
+            int i = random.nextInt(IDS_PER_WRITER);
+            int action = random.nextInt(10);
+            if (action < 5) {
+                VectorStore.Document doc = document(writer, i, op);
+                store.save(doc);
+                expected.put(doc.getId(), doc.getContent());
+            } else if (action < 7) {
+                List<VectorStore.Document> batch = new ArrayList<>();
+                for (int k = 0; k < 8; k++) {
+                    batch.add(document(writer, (i + k) % IDS_PER_WRITER, op));
+                }
+                store.saveAll(batch);
+                batch.forEach(doc -> expected.put(doc.getId(), doc.getContent()));
+            } else {
+                store.delete(id(writer, i));
+                expected.remove(id(writer, i));
+            }
+        }
+    }
+
+    /**
+     * 读线程：每次读取的结果必须自洽（无重复id，内容属于该id）
+     *
+     * @return 完成的读取次数
+     */
+    private long read(AtomicBoolean writing) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Boolean> seen = new ConcurrentHashMap<>();
+        long count = 0;
+        while (writing.get()) {
+            int w = random.nextInt(WRITERS);
+            int i = random.nextInt(IDS_PER_WRITER);
+            String id = id(w, i);
+
+            VectorStore.Document doc = store.findById(id);
+            if (doc != null) {
+                assertEquals(id, doc.getId());
+                assertTrue(doc.getContent().startsWith(token(w, i) + " "), "内容与id不符: " + id);
+            }
+
+            List<VectorStore.Document> hits = store.search(token(w, i), 5);
+            assertTrue(hits.size() <= 1, "关键词检索命中多个版本: " + id);
+            hits.forEach(hit -> assertEquals(id, hit.getId()));
+
+            if (count % 50 == 0) {
+                List<VectorStore.Document> all = store.search(SearchRequest.builder()
+                    .topK(WRITERS * IDS_PER_WRITER + 100)
+                    .types(EnumSet.of(TYPE))
+                    .build());
+                seen.clear();
+                for (VectorStore.Document hit : all) {
+                    assertNull(seen.put(hit.getId(), Boolean.TRUE), "检索结果中重复的id: " + hit.getId());
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static VectorStore.Document document(int writer, int i, int version) {
+        VectorStore.Document doc = new VectorStore.Document(id(writer, i),
+            token(writer, i) + " v" + version + " 数学 游戏", TYPE);
+        doc.getMetadata().put("writer", writer);
+        return doc;
+    }
+
+    private static String id(int writer, int i) {
+        return "w" + writer + "-" + i;
+    }
+
+    private static String token(int writer, int i) {
+        return "key" + writer + "x" + i;
+    }
+}
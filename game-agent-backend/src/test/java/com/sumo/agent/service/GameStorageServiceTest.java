@@ -0,0 +1,161 @@
+/*
+ * @since: 2025/8/11
+ * @author: sumo
+ */
+package com.sumo.agent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumo.agent.analyzer.IntentAnalyzer;
+import com.sumo.agent.core.GameArtifact;
+import com.sumo.agent.core.GameConfig;
+import com.sumo.agent.core.GameGeneratorAgent;
+import com.sumo.agent.games.MathGameAgent;
+import com.sumo.agent.games.MemoryGameAgent;
+import com.sumo.agent.model.SavedGame;
+import com.sumo.agent.template.GameRuntimeAssets;
+import com.sumo.agent.template.GameTemplateRenderer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 游戏存储测试：可按种子复现的页面只保存元数据，其余情况保存完整HTML
+ */
+@SpringJUnitConfig({GameRuntimeAssets.class, GameTemplateRenderer.class, MathGameAgent.class, MemoryGameAgent.class,
+    IntentAnalyzer.class, GameGeneratorAgent.class, GameStorageService.class})
+class GameStorageServiceTest {
+
+    private static final Path STORAGE_DIR = createStorageDir();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("game.storage.path", STORAGE_DIR::toString);
+        registry.add("agent.game.pool.enabled", () -> "false");
+    }
+
+    @Autowired
+    private GameGeneratorAgent gameGeneratorAgent;
+
+    @Autowired
+    private GameStorageService gameStorageService;
+
+    @Autowired
+    private MathGameAgent mathGameAgent;
+
+    @Autowired
+    private MemoryGameAgent memoryGameAgent;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void registerAgents() {
+        gameGeneratorAgent.registerAgent("mathAgent", mathGameAgent);
+        gameGeneratorAgent.registerAgent("memoryGameAgent", memoryGameAgent);
+    }
+
+    @Test
+    void reproducibleGameIsStoredAsSeedOnly() throws IOException {
+        for (GameConfig.GameType type : new GameConfig.GameType[]{GameConfig.GameType.MATH, GameConfig.GameType.MEMORY}) {
+            GameConfig config = config(type);
+            String html = generate(config, 42L, null);
+
+            SavedGame saved = gameStorageService.saveGame(savedGame(config, 42L, html));
+            assertNull(saved.getFileName(), type + " 应只保存种子");
+            assertEquals(0, saved.getFileSize());
+            assertNotNull(saved.getRenderVersion());
+
+            SavedGame loaded = gameStorageService.getGame(saved.getId());
+            assertEquals(html, loaded.getHtml());
+            assertEquals(42L, loaded.getSeed());
+            assertNull(loaded.getRenderStale());
+        }
+    }
+
+    @Test
+    void nonDefaultRuntimeModeStoresHtml() throws IOException {
+        GameConfig config = config(GameConfig.GameType.MATH);
+        String html = generate(config, 7L, Map.of("runtime", "external"));
+
+        SavedGame saved = gameStorageService.saveGame(savedGame(config, 7L, html));
+        assertNotNull(saved.getFileName());
+        assertTrue(Files.exists(STORAGE_DIR.resolve(saved.getFileName())));
+        assertEquals(html, gameStorageService.getGame(saved.getId()).getHtml());
+    }
+
+    @Test
+    void editedPageStoresHtml() throws IOException {
+        GameConfig config = config(GameConfig.GameType.MEMORY);
+        String html = generate(config, 7L, null).replace("</body>", "<!-- 老师修改 --></body>");
+
+        SavedGame saved = gameStorageService.saveGame(savedGame(config, 7L, html));
+        assertNotNull(saved.getFileName());
+        assertEquals(html, gameStorageService.getGame(saved.getId()).getHtml());
+    }
+
+    @Test
+    void changedRenderVersionFlagsRecord() throws IOException {
+        GameConfig config = config(GameConfig.GameType.MATH);
+        SavedGame saved = gameStorageService.saveGame(savedGame(config, 9L, generate(config, 9L, null)));
+
+        try (var files = Files.list(STORAGE_DIR)) {
+            Path meta = files.filter(path -> path.getFileName().toString().startsWith(saved.getId() + "_")).findFirst().orElseThrow();
+            String json = Files.readString(meta, StandardCharsets.UTF_8);
+            Files.writeString(meta, json.replace(saved.getRenderVersion(), "0-000000000000"), StandardCharsets.UTF_8);
+        }
+
+        SavedGame loaded = gameStorageService.getGame(saved.getId());
+        assertEquals(Boolean.TRUE, loaded.getRenderStale());
+        assertNotNull(loaded.getHtml());
+    }
+
+    private String generate(GameConfig config, long seed, Map<String, Object> options) {
+        GameGeneratorAgent.GameGenerationResult result = gameGeneratorAgent.replay(config, seed, options);
+        assertTrue(result.success(), result.error());
+        GameArtifact artifact = result.artifact();
+        return artifact.html().asString();
+    }
+
+    private SavedGame savedGame(GameConfig config, long seed, String html) throws IOException {
+        SavedGame game = new SavedGame();
+        game.setTitle(config.getTitle());
+        game.setType(config.getGameType().name().toLowerCase());
+        game.setHtml(html);
+        game.setSeed(seed);
+        game.setConfig(objectMapper.writeValueAsString(config));
+        return game;
+    }
+
+    private static GameConfig config(GameConfig.GameType type) {
+        return GameConfig.builder()
+            .gameType(type)
+            .ageGroup("6-8")
+            .difficulty(GameConfig.DifficultyLevel.MEDIUM)
+            .theme("space")
+            // 文件名包含标题，用 ASCII 标题避免依赖运行环境的文件名编码
+            .title("storage-test")
+            .build();
+    }
+
+    private static Path createStorageDir() {
+        try {
+            return Files.createTempDirectory("saved-games");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -16,6 +16,7 @@ export interface ServerSavedGame {
   theme?: string
   html: string
   config?: string
+  seed?: number
   createdAt?: string
   updatedAt?: string
   fileName?: string
@@ -47,7 +48,9 @@ class ServerStorageService {
         difficulty: gameData.gameData?.difficulty || gameData.config?.difficulty,
         theme: gameData.gameData?.theme || gameData.config?.theme,
         html: gameData.html,
-        config: JSON.stringify(gameData.config || gameData.gameData || {})
+        config: JSON.stringify(gameData.config || gameData.gameData || {}),
+        // 可复现的游戏（数学、记忆）带种子，服务端校验后只保存配置与种子
+        seed: gameData.seed
       }
 
       const response = await axios.post(`${this.baseUrl}/save`, saveData)